@@ -0,0 +1,144 @@
+package se.thced.api;
+
+import se.thced.api.example.Cache;
+import se.thced.api.handler.EntityValidationHandler;
+import se.thced.api.handler.EntityValidator;
+import se.thced.eventbus.Codecs;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.openapi.RouterBuilder;
+import io.vertx.json.schema.Schema;
+import io.vertx.json.schema.SchemaParser;
+import io.vertx.json.schema.SchemaRouter;
+import io.vertx.json.schema.SchemaRouterOptions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Entities validated by the generic validation of the OpenAPI contract, or by the fast path of the
+ * compiled validator, both compiled from the same 'Entity' schema of the contract.
+ *
+ * <p>The validation alone is what the generic path does with a body: parse it, validate the tree
+ * with the compiled schema, and parse it once more into the entity in the handler. The fast path
+ * parses the body once, into the entity.
+ *
+ * <p>Added entities are posted to the {@link ApiRouter} over loopback, and the cache only replies.
+ * Vert.x runs on a single event loop, shared by the server and the client, so every operation is
+ * bound by the CPU of that thread: the time of an operation divided by its requests is the CPU cost
+ * of a request, of which the validation is the part that differs.
+ *
+ * @author thced
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+public class EntityValidationBenchmark {
+
+  @Param({"false", "true"})
+  private boolean fastValidation;
+
+  @Param({"1", "16"})
+  private int concurrency;
+
+  private final Buffer entity =
+      new JsonObject().put("name", "MyName").put("gender", "female").put("age", 38).toBuffer();
+
+  private Vertx vertx;
+  private Schema schema;
+  private EntityValidator validator;
+  private Context context;
+  private HttpClient client;
+  private int port;
+
+  @Setup
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(1));
+    Codecs.register(vertx.eventBus());
+    vertx.eventBus().consumer(Cache.ADD_TO_CACHE, message -> message.reply("OK"));
+
+    JsonObject contract =
+        RouterBuilder.create(vertx, "schema/openapi.yaml")
+            .map(builder -> builder.getOpenAPI().getOpenAPI())
+            .toCompletionStage()
+            .toCompletableFuture()
+            .get(10, TimeUnit.SECONDS);
+    JsonObject entitySchema =
+        contract.getJsonObject("components").getJsonObject("schemas").getJsonObject("Entity");
+    validator = EntityValidator.compile(entitySchema.copy());
+    schema =
+        SchemaParser.createOpenAPI3SchemaParser(
+                SchemaRouter.create(vertx, new SchemaRouterOptions()))
+            .parse(entitySchema.copy());
+
+    JsonObject config =
+        new JsonObject().put(EntityValidationHandler.FAST_VALIDATION, fastValidation);
+    port =
+        ApiRouter.router(vertx, config)
+            .compose(router -> vertx.createHttpServer().requestHandler(router).listen(0))
+            .map(HttpServer::actualPort)
+            .toCompletionStage()
+            .toCompletableFuture()
+            .get(10, TimeUnit.SECONDS);
+
+    client = vertx.createHttpClient(new HttpClientOptions().setMaxPoolSize(concurrency));
+    context = vertx.getOrCreateContext();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+
+  /** The validation of one body, and the entity it produces */
+  @Benchmark
+  public JsonObject validate() {
+    if (fastValidation) {
+      return validator.validate(entity);
+    }
+    schema.validateSync(Json.decodeValue(entity));
+    return new JsonObject(entity);
+  }
+
+  /** The requests are sent from the event loop, as the handlers of the API would */
+  @Benchmark
+  public Object addEntities() throws Exception {
+    Promise<CompositeFuture> done = Promise.promise();
+    context.runOnContext(v -> send().onComplete(done));
+    return done.future().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+
+  @SuppressWarnings("rawtypes")
+  private CompositeFuture send() {
+    List<Future> responses = new ArrayList<>(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      responses.add(
+          client
+              .request(HttpMethod.POST, port, "localhost", "/api")
+              .compose(
+                  request ->
+                      request
+                          .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                          .send(entity))
+              .compose(HttpClientResponse::body));
+    }
+    return CompositeFuture.all(responses);
+  }
+}
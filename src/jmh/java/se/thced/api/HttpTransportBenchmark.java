@@ -0,0 +1,145 @@
+package se.thced.api;
+
+import se.thced.api.handler.CompressionThresholdHandler;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Round trips of a page of entities to the HTTP server of the {@link ApiRouter}, over loopback,
+ * with each of the transport options of the server.
+ *
+ * <p>Every operation is a number of concurrent requests. Over HTTP/1.1 they are spread over a pool
+ * of as many connections, over h2c they are multiplexed on one connection. Compressed responses are
+ * not decompressed by the client, and the responses below the threshold are not compressed at all.
+ * On loopback only the time to compress shows, the bytes it saves on a real network do not.
+ *
+ * @author thced
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpTransportBenchmark {
+
+  public enum Transport {
+    HTTP_1_1,
+    H2C,
+    COMPRESSED,
+    NATIVE
+  }
+
+  @Param({"HTTP_1_1", "H2C", "COMPRESSED", "NATIVE"})
+  private Transport transport;
+
+  @Param({"10", "500"})
+  private int entities;
+
+  @Param({"1", "16"})
+  private int concurrency;
+
+  private Vertx vertx;
+  private Context context;
+  private HttpClient client;
+  private int port;
+
+  @Setup
+  public void setUp() throws Exception {
+    vertx =
+        Vertx.vertx(new VertxOptions().setPreferNativeTransport(transport == Transport.NATIVE));
+    if (transport == Transport.NATIVE && !vertx.isNativeTransportEnabled()) {
+      throw new IllegalStateException("The native transport is not available");
+    }
+
+    JsonObject config = new JsonObject().put("API_HTTP_PORT", 0);
+    if (transport == Transport.COMPRESSED) {
+      config.put(ApiRouter.COMPRESSION, true);
+    } else if (transport == Transport.NATIVE) {
+      config.put(ApiRouter.TCP_FAST_OPEN, true).put(ApiRouter.REUSE_PORT, true);
+    }
+
+    Buffer page = page(entities);
+    Router router = Router.router(vertx);
+    router
+        .route()
+        .handler(CompressionThresholdHandler.create(CompressionThresholdHandler.DEFAULT_THRESHOLD));
+    router.get("/api").handler(ctx -> ctx.response().end(page));
+
+    port =
+        vertx
+            .createHttpServer(ApiRouter.serverOptions(config))
+            .requestHandler(router)
+            .listen()
+            .map(HttpServer::actualPort)
+            .toCompletionStage()
+            .toCompletableFuture()
+            .get(10, TimeUnit.SECONDS);
+
+    HttpClientOptions options =
+        new HttpClientOptions().setMaxPoolSize(concurrency).setTcpNoDelay(true);
+    if (transport == Transport.H2C) {
+      options.setProtocolVersion(HttpVersion.HTTP_2).setHttp2ClearTextUpgrade(false);
+    }
+    client = vertx.createHttpClient(options);
+    context = vertx.getOrCreateContext();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+
+  /** The requests are sent from an event loop, as the handlers of the API would */
+  @Benchmark
+  public Object roundTrips() throws Exception {
+    Promise<CompositeFuture> done = Promise.promise();
+    context.runOnContext(v -> send().onComplete(done));
+    return done.future().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+
+  @SuppressWarnings("rawtypes")
+  private CompositeFuture send() {
+    List<Future> responses = new ArrayList<>(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      responses.add(
+          client
+              .request(HttpMethod.GET, port, "localhost", "/api")
+              .compose(
+                  request ->
+                      request
+                          .putHeader(HttpHeaders.ACCEPT_ENCODING, HttpHeaders.DEFLATE_GZIP)
+                          .send())
+              .compose(HttpClientResponse::body));
+    }
+    return CompositeFuture.all(responses);
+  }
+
+  /** @return A page of entities, encoded the way the ReturnEntitiesHandler responds */
+  private static Buffer page(int entities) {
+    JsonArray array = new JsonArray();
+    for (int i = 0; i < entities; i++) {
+      array.add(new JsonObject().put("name", "Name" + i).put("gender", "female").put("age", i));
+    }
+    return array.toBuffer();
+  }
+}
@@ -0,0 +1,76 @@
+package se.thced.api.example;
+
+import io.vertx.core.json.JsonObject;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the {@link Cache} implementations on a single thread, which is how the {@link
+ * CacheVerticle} uses them.
+ *
+ * <p>The cache is filled to 'size' entities before measuring, but {@link SmallCache} and {@link
+ * LargeCache} never hold more than their fixed capacity. The {@link OffHeapCache} is sized to about
+ * 'size' entities, in bytes.
+ *
+ * @author thced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheBenchmark {
+
+  @Param({"SmallCache", "LargeCache", "ConcurrentCache", "OffHeapCache"})
+  private String implementation;
+
+  @Param({"100", "100000"})
+  private int size;
+
+  private Cache<JsonObject> cache;
+  private JsonObject entity;
+
+  @Setup
+  public void setUp() {
+    cache = create(implementation, size);
+    for (int i = 0; i < size; i++) {
+      cache.add(new JsonObject().put("name", "Name" + i).put("age", i));
+    }
+    entity = new JsonObject().put("name", "Justin").put("age", 15);
+  }
+
+  /** Steady state add, where every add evicts the eldest entity */
+  @Benchmark
+  public Object add() {
+    return cache.add(entity);
+  }
+
+  /** The first page, as returned by GET /api by default */
+  @Benchmark
+  public Object retrievePage() {
+    return cache.retrieve(Cache.DEFAULT_LIMIT, null).result();
+  }
+
+  /** All entities, which is what the cost of every page used to be */
+  @Benchmark
+  public Object retrieveAll() {
+    return cache.retrieve().result();
+  }
+
+  static Cache<JsonObject> create(String implementation, int size) {
+    switch (implementation) {
+      case "SmallCache":
+        return new SmallCache();
+      case "LargeCache":
+        return new LargeCache();
+      case "ConcurrentCache":
+        return new ConcurrentCache(size);
+      case "OffHeapCache":
+        // The entities are about 30 bytes each, slabs are 64 KiB
+        return new OffHeapCache(size * 32, 64 * 1024);
+      default:
+        throw new IllegalArgumentException("Unknown cache: " + implementation);
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package se.thced.api.example;
+
+import io.vertx.core.json.JsonObject;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Concurrent reads and writes on the thread-safe {@link ConcurrentCache}, as with direct access
+ * (see {@link SharedCaches}), where many event loops read while the cache verticle writes.
+ *
+ * @author thced
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentCacheBenchmark {
+
+  @Param({"1000", "100000"})
+  private int size;
+
+  private Cache<JsonObject> cache;
+  private JsonObject entity;
+
+  @Setup
+  public void setUp() {
+    cache = new ConcurrentCache(size);
+    for (int i = 0; i < size; i++) {
+      cache.add(new JsonObject().put("name", "Name" + i).put("age", i));
+    }
+    entity = new JsonObject().put("name", "Justin").put("age", 15);
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(3)
+  public Object read() {
+    return cache.retrieve(Cache.DEFAULT_LIMIT, null).result();
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(1)
+  public Object write() {
+    return cache.add(entity);
+  }
+}
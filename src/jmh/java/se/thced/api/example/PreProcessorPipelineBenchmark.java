@@ -0,0 +1,69 @@
+package se.thced.api.example;
+
+import static java.util.stream.Collectors.toList;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.ServiceHelper;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The pre-processors found on the classpath, applied by the {@link PreProcessorPipeline} compared
+ * to starting them all at once with a future each, as the {@link CacheVerticle} used to.
+ *
+ * @author thced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PreProcessorPipelineBenchmark {
+
+  private Vertx vertx;
+  private Collection<PreProcessor> processors;
+  private PreProcessorPipeline pipeline;
+  private JsonObject entity;
+
+  @Setup
+  public void setUp() {
+    vertx = Vertx.vertx();
+    processors = ServiceHelper.loadFactories(PreProcessor.class);
+    pipeline = new PreProcessorPipeline(vertx, processors);
+    entity = new JsonObject();
+  }
+
+  @TearDown
+  public void tearDown() {
+    pipeline.close();
+    vertx.close();
+  }
+
+  @Benchmark
+  public Object process() {
+    return pipeline.process(reset());
+  }
+
+  @Benchmark
+  public Object apply() {
+    return pipeline.apply(reset()).result();
+  }
+
+  @Benchmark
+  public Object allAtOnce() {
+    JsonObject reset = reset();
+    return CompositeFuture.all(
+            processors.stream().map(processor -> processor.apply(reset)).collect(toList()))
+        .map(reset)
+        .result();
+  }
+
+  /** Reset the entity, since the processors modify it. Costs the same in all benchmarks. */
+  private JsonObject reset() {
+    return entity.put("name", "Justin").put("age", 15);
+  }
+}
@@ -0,0 +1,120 @@
+package se.thced.api.handler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The {@link CorrelationIdDecoratingHandler}, which runs first on every request. The handler has
+ * to run on a Vert.x thread, since it keeps the correlation id in the context local data, so every
+ * invocation runs the handler {@link #CALLS} times on an event loop and waits for it. The cost of
+ * the hand-over to the event loop is then shared by all calls.
+ *
+ * <p>The routing context is a dynamic proxy, which has a cost of its own. Compare with the
+ * 'baseline' benchmark, which calls the same methods on the proxy but does nothing else.
+ *
+ * <p>The ids are generated by each of the {@link CorrelationIdGenerator}s, see {@link #generator}.
+ *
+ * @author thced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(CorrelationIdDecoratingHandlerBenchmark.CALLS)
+public class CorrelationIdDecoratingHandlerBenchmark {
+
+  static final int CALLS = 1_000;
+
+  @Param({"TimeOrderedCorrelationIdGenerator", "UuidCorrelationIdGenerator"})
+  public String generator;
+
+  private Vertx vertx;
+  private Context context;
+  private Handler<RoutingContext> handler;
+  private Handler<RoutingContext> baseline;
+  private RoutingContext withoutId;
+  private RoutingContext withId;
+
+  @Setup
+  public void setUp() {
+    vertx = Vertx.vertx();
+    context = vertx.getOrCreateContext();
+    handler = CorrelationIdDecoratingHandler.create(generator);
+    baseline =
+        ctx -> {
+          ctx.request().headers();
+          ctx.addHeadersEndHandler(v -> {});
+          ctx.next();
+        };
+    withoutId = routingContext(MultiMap.caseInsensitiveMultiMap());
+    withId =
+        routingContext(
+            MultiMap.caseInsensitiveMultiMap()
+                .add(CorrelationIdDecoratingHandler.CORRELATION_ID, "a-correlation-id"));
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public void baseline() throws Exception {
+    run(baseline, withoutId);
+  }
+
+  /** The correlation id is generated */
+  @Benchmark
+  public void generated() throws Exception {
+    run(handler, withoutId);
+  }
+
+  /** The correlation id is passed in by the client */
+  @Benchmark
+  public void propagated() throws Exception {
+    run(handler, withId);
+  }
+
+  private void run(Handler<RoutingContext> handler, RoutingContext ctx) throws Exception {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    context.runOnContext(
+        v -> {
+          for (int i = 0; i < CALLS; i++) {
+            handler.handle(ctx);
+          }
+          done.complete(null);
+        });
+    done.get();
+  }
+
+  /** A routing context with only what the handler uses */
+  private static RoutingContext routingContext(MultiMap headers) {
+    HttpServerRequest request = proxy(HttpServerRequest.class, "headers", headers);
+    return proxy(RoutingContext.class, "request", request);
+  }
+
+  private static <T> T proxy(Class<T> type, String method, Object result) {
+    Object proxy =
+        Proxy.newProxyInstance(
+            type.getClassLoader(),
+            new Class<?>[] {type},
+            (instance, invoked, args) -> {
+              if (method.equals(invoked.getName())) {
+                return result;
+              }
+              // e.g the id of a headers end handler
+              return invoked.getReturnType() == int.class ? 0 : null;
+            });
+    return type.cast(proxy);
+  }
+}
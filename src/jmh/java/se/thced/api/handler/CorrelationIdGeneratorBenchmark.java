@@ -0,0 +1,44 @@
+package se.thced.api.handler;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The {@link CorrelationIdGenerator}s on their own. The 'contended' benchmark generates ids from
+ * several threads at once, the way the event loops of the ApiRouters do, which shows the cost of
+ * the shared {@link java.security.SecureRandom} behind the random UUIDs.
+ *
+ * @author thced
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CorrelationIdGeneratorBenchmark {
+
+  @Param({"TimeOrderedCorrelationIdGenerator", "UuidCorrelationIdGenerator"})
+  public String generator;
+
+  private CorrelationIdGenerator instance;
+
+  @Setup
+  public void setUp() {
+    instance =
+        generator.equals("UuidCorrelationIdGenerator")
+            ? new UuidCorrelationIdGenerator()
+            : new TimeOrderedCorrelationIdGenerator();
+  }
+
+  @Benchmark
+  public String generate() {
+    return instance.generate();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public String contended() {
+    return instance.generate();
+  }
+}
@@ -0,0 +1,58 @@
+package se.thced.api.handler;
+
+import se.thced.api.example.Page;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The encodings of the entities that the {@link ReturnEntitiesHandler} can respond with.
+ *
+ * @author thced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingBenchmark {
+
+  @Param({"10", "100", "1000"})
+  private int entities;
+
+  private JsonArray array;
+  private Page page;
+
+  @Setup
+  public void setUp() {
+    array = new JsonArray();
+    for (int i = 0; i < entities; i++) {
+      array.add(new JsonObject().put("name", "Name" + i).put("gender", "female").put("age", i));
+    }
+    page = new Page(array, new long[entities], null);
+    page.encoded();
+  }
+
+  @Benchmark
+  public Object encode() {
+    return array.encode();
+  }
+
+  @Benchmark
+  public Object toBuffer() {
+    return array.toBuffer();
+  }
+
+  @Benchmark
+  public Object encodePrettily() {
+    return array.encodePrettily();
+  }
+
+  /** A page that was already encoded, as the snapshot of the first page is */
+  @Benchmark
+  public Object preEncoded() {
+    return page.encoded();
+  }
+}
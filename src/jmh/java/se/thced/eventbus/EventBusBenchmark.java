@@ -0,0 +1,117 @@
+package se.thced.eventbus;
+
+import se.thced.api.example.Cache;
+import se.thced.api.example.CacheVerticle;
+import se.thced.api.example.Page;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Eventbus round trips, the way the handlers talk to the {@link CacheVerticle}.
+ *
+ * <p>Adds are measured against a consumer that replies right away, since the cache verticle adds a
+ * random delay to every add. Retrieves are measured against a real cache verticle.
+ *
+ * @author thced
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventBusBenchmark {
+
+  private static final String ADD = "benchmark.add";
+  private static final String PAGE_COPIED = "benchmark.page.copied";
+  private static final String PAGE_BY_REFERENCE = "benchmark.page.by-reference";
+
+  /** The size of the pages of the page benchmarks */
+  private static final int PAGE_SIZE = 1000;
+
+  private Vertx vertx;
+  private EventBus eventBus;
+  private JsonObject entity;
+  private DeliveryOptions byReference;
+  private DeliveryOptions page;
+
+  @Setup
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    eventBus = vertx.eventBus();
+    Codecs.register(eventBus);
+    eventBus.consumer(ADD, message -> message.reply("OK"));
+
+    JsonArray entities = new JsonArray();
+    long[] keys = new long[PAGE_SIZE];
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      entities.add(
+          new JsonObject().put("name", "Justin " + i).put("gender", "male").put("age", 15));
+      keys[i] = i;
+    }
+    Page reply = new Page(entities, keys, null);
+    JsonObject replyJson = reply.toJson();
+    eventBus.consumer(PAGE_COPIED, message -> message.reply(replyJson));
+    eventBus.consumer(PAGE_BY_REFERENCE, message -> message.reply(reply));
+    vertx
+        .deployVerticle(new CacheVerticle())
+        .toCompletionStage()
+        .toCompletableFuture()
+        .get(10, TimeUnit.SECONDS);
+
+    entity = new JsonObject().put("name", "Justin").put("gender", "male").put("age", 15);
+    byReference = new DeliveryOptions().setCodecName(EntityCodec.NAME);
+    page = new DeliveryOptions().addHeader(Cache.LIMIT, String.valueOf(Cache.DEFAULT_LIMIT));
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  /** The entity is copied, as with the default codec */
+  @Benchmark
+  public Object addCopied() throws Exception {
+    return eventBus.request(ADD, entity).toCompletionStage().toCompletableFuture().get();
+  }
+
+  /** The entity is passed by reference, as the AddEntityHandler does */
+  @Benchmark
+  public Object addByReference() throws Exception {
+    return eventBus
+        .request(ADD, entity, byReference)
+        .toCompletionStage()
+        .toCompletableFuture()
+        .get();
+  }
+
+  /** A page of 1000 entities is replied as JSON, which the default codec copies */
+  @Benchmark
+  public Object replyPageCopied() throws Exception {
+    return eventBus.request(PAGE_COPIED, null).toCompletionStage().toCompletableFuture().get();
+  }
+
+  /** A page of 1000 entities is replied by reference, through the {@link PageCodec} */
+  @Benchmark
+  public Object replyPageByReference() throws Exception {
+    return eventBus
+        .request(PAGE_BY_REFERENCE, null)
+        .toCompletionStage()
+        .toCompletableFuture()
+        .get();
+  }
+
+  @Benchmark
+  public Object retrievePage() throws Exception {
+    return eventBus
+        .request(Cache.RETRIEVE_FROM_CACHE, null, page)
+        .toCompletionStage()
+        .toCompletableFuture()
+        .get();
+  }
+}
@@ -4,13 +4,19 @@ import static io.vertx.core.impl.cpu.CpuCoreSensor.availableProcessors;
 import static java.util.Arrays.asList;
 
 import se.thced.api.ApiRouter;
+import se.thced.api.example.CacheShards;
 import se.thced.api.example.CacheVerticle;
+import se.thced.eventbus.Codecs;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.json.JsonObject;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,23 +37,75 @@ public class Application extends AbstractVerticle {
    */
   private static final Integer INSTANCES = availableProcessors();
 
+  /** Available in config.properties */
+  private static final String API_INSTANCES = "API_INSTANCES";
+
   @Override
   public void start(Promise<Void> startPromise) {
-    ConfigurationRetriever.configuration(vertx).compose(this::deploy).onComplete(startPromise);
+    // Pass entities and pages between verticles by reference, instead of copying them
+    Codecs.register(vertx.eventBus());
+
+    ConfigurationRetriever.configuration(vertx)
+        // Configuration given when deploying the application takes precedence, e.g in tests
+        .map(retrieved -> retrieved.mergeIn(config()))
+        .compose(this::deploy)
+        .onComplete(startPromise);
   }
 
   private Future<Void> deploy(JsonObject config) {
-    DeploymentOptions options = new DeploymentOptions().setConfig(config).setInstances(INSTANCES);
+    DeploymentOptions options =
+        new DeploymentOptions()
+            .setConfig(config)
+            .setInstances(config.getInteger(API_INSTANCES, INSTANCES));
     DeploymentOptions singleton = new DeploymentOptions(options).setInstances(1);
 
     return CompositeFuture.all(
             asList(
-                vertx.deployVerticle(CacheVerticle::new, singleton),
-                vertx.deployVerticle(ApiRouter::new, options)
+                deployCache(singleton, config.getInteger(CacheShards.SHARDS, 1)),
+                deployApi(options)
                 // .. potentially more verticles here..
                 ))
         .onSuccess(ignore -> log.debug("All verticles successfully deployed"))
         .onFailure(throwable -> log.error("Not all verticles could be deployed", throwable))
         .mapEmpty();
   }
+
+  /**
+   * Deploy the API. The OpenAPI contract is loaded, and compiled into a router, once in this
+   * startup stage, and the router is shared by all instances, instead of every instance loading
+   * the contract on its own.
+   *
+   * @param options The options to deploy the API with
+   * @return A future that completes when all instances are deployed, or a failure
+   */
+  private Future<String> deployApi(DeploymentOptions options) {
+    long start = System.nanoTime();
+    return ApiRouter.router(vertx, options.getConfig())
+        .onSuccess(
+            router ->
+                log.debug(
+                    "API contract loaded in {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)))
+        .compose(router -> vertx.deployVerticle(() -> new ApiRouter(router), options));
+  }
+
+  /**
+   * Deploy the cache, either as a singleton or partitioned into a number of shards where each
+   * shard is a singleton of its own, running on its own event loop.
+   *
+   * @param singleton The options to deploy each shard with
+   * @param shards The number of shards
+   * @return A future that completes when all shards are deployed, or a failure
+   */
+  @SuppressWarnings("rawtypes")
+  private Future<Void> deployCache(DeploymentOptions singleton, int shards) {
+    List<Future> deployments =
+        IntStream.range(0, shards)
+            .mapToObj(shard -> vertx.deployVerticle(() -> new CacheVerticle(shard), singleton))
+            .collect(Collectors.toList());
+
+    return CompositeFuture.all(deployments)
+        .onSuccess(ignore -> log.debug("Cache deployed with {} shard(s)", shards))
+        .mapEmpty();
+  }
 }
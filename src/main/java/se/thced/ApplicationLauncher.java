@@ -1,17 +1,27 @@
 package se.thced;
 
+import static se.thced.MetricsSupport.addEventBusMetrics;
 import static se.thced.MetricsSupport.addMetricsConfiguration;
+import static se.thced.MetricsSupport.addStartupMetrics;
 import static java.lang.System.setProperty;
 
 import se.thced.api.handler.CorrelationIdDecoratingHandler;
 import se.thced.eventbus.InboundCorrelationIdHandler;
+import se.thced.eventbus.InboundTracingHandler;
 import se.thced.eventbus.OutboundCorrelationIdHandler;
+import se.thced.eventbus.OutboundTracingHandler;
 import io.vertx.core.Launcher;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
 import io.vertx.spi.cluster.hazelcast.ConfigUtil;
 import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Objects;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Launcher for Vert.x application.
@@ -20,6 +30,8 @@ import java.util.Objects;
  */
 public class ApplicationLauncher extends Launcher {
 
+  private static final Logger log = LoggerFactory.getLogger(ApplicationLauncher.class);
+
   /*
    Note: All configuration constants should be put where they are used. Every
    verticle should present all its related configurations as constants.
@@ -29,10 +41,19 @@ public class ApplicationLauncher extends Launcher {
   private static final String DEFAULT_HAZELCAST_LEVEL = "SILENT";
   private static final String HAZELCAST_LOG_TYPE = "hazelcast.logging.type";
 
+  /** Available in config.properties, read before Vert.x starts */
+  private static final String NATIVE_TRANSPORT = "API_NATIVE_TRANSPORT";
+
+  /** Available in config.properties, read before Vert.x starts */
+  private static final String HTTP2 = "API_HTTP2";
+
+  private static final String DISABLE_H2C = "vertx.disableH2c";
+
   private static final CharSequence CORRELATION_ID = CorrelationIdDecoratingHandler.CORRELATION_ID;
 
   /** Start up the Vert.x application. */
   public static void main(String[] args) {
+    StartupTimer.shared().started();
     new ApplicationLauncher().dispatch(args);
   }
 
@@ -42,11 +63,20 @@ public class ApplicationLauncher extends Launcher {
 
     configureClustering(options);
     configureMetricsSupport(options);
+    configureTransport(options);
   }
 
   @Override
   public void afterStartingVertx(Vertx vertx) {
+    if (vertx.isNativeTransportEnabled()) {
+      log.info("Using the native transport");
+    } else if (Boolean.parseBoolean(startupSetting(NATIVE_TRANSPORT))) {
+      log.warn("The native transport is not available, falling back to NIO");
+    }
     configureContextualLogging(vertx);
+    configureTracing(vertx);
+    addEventBusMetrics(vertx);
+    addStartupMetrics();
   }
 
   /**
@@ -75,6 +105,55 @@ public class ApplicationLauncher extends Launcher {
     addMetricsConfiguration(options);
   }
 
+  /**
+   * Configure the transport of Vert.x, and of HTTP/2 over cleartext (h2c) for all HTTP servers.
+   * These apply to the whole JVM, and must be set before Vert.x starts, so they are read from the
+   * envVars, system properties or config.properties right away. The per-server options are set in
+   * the {@link se.thced.api.ApiRouter}.
+   *
+   * <p>The native transport (epoll on Linux) has fewer allocations and system calls per request
+   * than NIO, and is required for TCP fast open and reuse port. Vert.x falls back to NIO if it is
+   * not available on the platform.
+   *
+   * @param options The {@link VertxOptions} instance that Vert.x will be instantiated with
+   */
+  private void configureTransport(VertxOptions options) {
+    options.setPreferNativeTransport(Boolean.parseBoolean(startupSetting(NATIVE_TRANSPORT)));
+
+    String http2 = startupSetting(HTTP2);
+    if (Objects.nonNull(http2) && !Boolean.parseBoolean(http2)) {
+      setProperty(DISABLE_H2C, Boolean.TRUE.toString());
+    }
+  }
+
+  /**
+   * @param key The configuration key
+   * @return The value of the key, by envVar, system property or config.properties, or null
+   */
+  private static String startupSetting(String key) {
+    String value = System.getenv(key);
+    if (Objects.isNull(value)) {
+      value = System.getProperty(key);
+    }
+    if (Objects.isNull(value)) {
+      value = configProperties().getProperty(key);
+    }
+    return value;
+  }
+
+  private static Properties configProperties() {
+    Properties properties = new Properties();
+    ClassLoader classLoader = ApplicationLauncher.class.getClassLoader();
+    try (InputStream in = classLoader.getResourceAsStream(ConfigurationRetriever.CONFIG_FILE)) {
+      if (Objects.nonNull(in)) {
+        properties.load(in);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return properties;
+  }
+
   /**
    * Configure contextual logging. This will propagate correlation id over the event bus
    * communication via interceptors.
@@ -85,4 +164,15 @@ public class ApplicationLauncher extends Launcher {
     vertx.eventBus().addInboundInterceptor(new InboundCorrelationIdHandler<>());
     vertx.eventBus().addOutboundInterceptor(new OutboundCorrelationIdHandler<>());
   }
+
+  /**
+   * Configure tracing. This will propagate sampled traces over the event bus communication via
+   * interceptors, the same way as the correlation id.
+   *
+   * @param vertx The Vert.x instance
+   */
+  private void configureTracing(Vertx vertx) {
+    vertx.eventBus().addInboundInterceptor(new InboundTracingHandler<>());
+    vertx.eventBus().addOutboundInterceptor(new OutboundTracingHandler<>());
+  }
 }
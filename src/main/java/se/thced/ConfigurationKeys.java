@@ -2,5 +2,31 @@ package se.thced;
 
 /** The available environment keys that should be readable by this application */
 public enum ConfigurationKeys {
-  API_HTTP_PORT
+  API_HTTP_PORT,
+  API_INSTANCES,
+  API_HTTP2,
+  API_HTTP2_MAX_CONCURRENT_STREAMS,
+  API_COMPRESSION,
+  API_COMPRESSION_LEVEL,
+  API_COMPRESSION_THRESHOLD,
+  API_NATIVE_TRANSPORT,
+  API_TCP_NO_DELAY,
+  API_TCP_FAST_OPEN,
+  API_REUSE_PORT,
+  API_ACCEPT_BACKLOG,
+  API_FAST_VALIDATION,
+  CORRELATION_ID_GENERATOR,
+  TRACING_SAMPLE_RATE,
+  CACHE_IMPLEMENTATION,
+  CACHE_MAX_WEIGHT,
+  CACHE_ADMISSION,
+  CACHE_MAX_BYTES,
+  CACHE_DISTRIBUTED_CAPACITY,
+  CACHE_NEAR_CACHE_CAPACITY,
+  CACHE_SHARDS,
+  CACHE_DIRECT_ACCESS,
+  CACHE_INGEST_CAPACITY,
+  CACHE_INGEST_ACK,
+  CACHE_SNAPSHOT_DIR,
+  CACHE_SNAPSHOT_INTERVAL
 }
@@ -23,6 +23,7 @@ public final class ConfigurationRetriever {
   public static final String CONFIG_TYPE_ENV = "env";
   public static final String CONFIG_FORMAT_PROPERTIES = "properties";
   public static final String CONFIG_FILE_PATH = "path";
+  public static final String CONFIG_FILE = "conf/config.properties";
 
   /** '0' means no scanning */
   private static final int SCAN_PERIOD = 0;
@@ -52,7 +53,7 @@ public final class ConfigurationRetriever {
         new ConfigStoreOptions()
             .setType(CONFIG_TYPE_FILE)
             .setFormat(CONFIG_FORMAT_PROPERTIES)
-            .setConfig(new JsonObject().put(CONFIG_FILE_PATH, "conf/config.properties")));
+            .setConfig(new JsonObject().put(CONFIG_FILE_PATH, CONFIG_FILE)));
 
     // -- Container / PaaS friendly to override defaults
     JsonArray whiteListedKeys = new JsonArray();
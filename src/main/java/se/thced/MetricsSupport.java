@@ -1,8 +1,11 @@
 package se.thced;
 
+import se.thced.eventbus.EventBusInstrumentation;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Slf4jReporter;
+import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
 import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
 import java.util.concurrent.TimeUnit;
@@ -16,6 +19,7 @@ public final class MetricsSupport {
 
   // -- Metrics constants
   public static final String DEFAULT_REGISTRY_NAME = "registry";
+  public static final String STARTUP_METRIC = "startup.first-request-millis";
 
   public static void addMetricsConfiguration(VertxOptions vertxOptions) {
     MetricRegistry registry = SharedMetricRegistries.getOrCreate(DEFAULT_REGISTRY_NAME);
@@ -34,4 +38,24 @@ public final class MetricsSupport {
 
     vertxOptions.setMetricsOptions(metricsOptions);
   }
+
+  /**
+   * Add latency, in-flight and failure metrics per eventbus address to the shared registry, see
+   * {@link EventBusInstrumentation}
+   *
+   * @param vertx The Vert.x instance
+   */
+  public static void addEventBusMetrics(Vertx vertx) {
+    MetricRegistry registry = SharedMetricRegistries.getOrCreate(DEFAULT_REGISTRY_NAME);
+    EventBusInstrumentation.install(vertx, registry);
+  }
+
+  /**
+   * Add the startup time of the application to the shared registry, see {@link StartupTimer}. It
+   * is -1 until the first request is served.
+   */
+  public static void addStartupMetrics() {
+    MetricRegistry registry = SharedMetricRegistries.getOrCreate(DEFAULT_REGISTRY_NAME);
+    registry.gauge(STARTUP_METRIC, () -> (Gauge<Long>) StartupTimer.shared()::startupMillis);
+  }
 }
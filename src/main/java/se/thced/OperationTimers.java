@@ -0,0 +1,176 @@
+package se.thced;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.WriterReaderPhaser;
+
+/**
+ * Latency timers per API operation (the OpenAPI 'operationId') and status class, backed by
+ * HdrHistogram.
+ *
+ * <p>Recording is wait-free: it only does atomic increments, guarded by a {@link
+ * WriterReaderPhaser} the same way as a HdrHistogram Recorder, and the timers of an operation are
+ * created once, with a compare-and-set, on the first request. Nothing is locked on the event loops
+ * that record. Reading is done by a single reader at a time, see {@link #forEach(BiConsumer)}.
+ *
+ * <p>The latencies and their sum are recorded, and flipped to the reader, together. The count,
+ * percentiles and sum of a timer are therefore always of the same latencies.
+ *
+ * @author thced
+ */
+public final class OperationTimers {
+
+  /** The highest latency that can be recorded, higher latencies are recorded as this */
+  private static final long MAX_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+  private static final int SIGNIFICANT_DIGITS = 2;
+
+  /** Status classes 1xx to 5xx, index 0 is for anything else */
+  private static final int STATUS_CLASSES = 6;
+
+  private static final OperationTimers SHARED = new OperationTimers();
+
+  private final Map<String, AtomicReferenceArray<Timer>> operations = new ConcurrentHashMap<>();
+
+  /** @return The timers that are shared by all verticles on this node */
+  public static OperationTimers shared() {
+    return SHARED;
+  }
+
+  /**
+   * Record the latency of a request
+   *
+   * @param operationId The operation that handled the request
+   * @param statusCode The status code of the response
+   * @param nanos The latency in nanoseconds
+   */
+  public void record(String operationId, int statusCode, long nanos) {
+    AtomicReferenceArray<Timer> timers = operations.get(operationId);
+    if (timers == null) {
+      timers =
+          operations.computeIfAbsent(
+              operationId, id -> new AtomicReferenceArray<>(STATUS_CLASSES));
+    }
+
+    int statusClass = statusCode / 100 < STATUS_CLASSES ? statusCode / 100 : 0;
+    Timer timer = timers.get(statusClass);
+    if (timer == null) {
+      timers.compareAndSet(statusClass, null, new Timer(statusClass));
+      timer = timers.get(statusClass);
+    }
+    timer.record(nanos);
+  }
+
+  /**
+   * Visit all timers. The latencies recorded since the last visit are added to the totals of each
+   * timer first.
+   *
+   * <p>Note! There must only be one reader at a time, e.g a single-threaded executor.
+   *
+   * @param visitor Gets the operation id and the timer of every operation and status class
+   */
+  public void forEach(BiConsumer<String, Timer> visitor) {
+    operations.forEach(
+        (operationId, timers) -> {
+          for (int i = 0; i < timers.length(); i++) {
+            Timer timer = timers.get(i);
+            if (timer != null) {
+              visitor.accept(operationId, timer.update());
+            }
+          }
+        });
+  }
+
+  /** The latencies of one operation and status class */
+  public static final class Timer {
+
+    private final String statusClass;
+    private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+
+    /** The latencies recorded since the last visit */
+    private volatile Interval active = new Interval();
+
+    /** The latencies recorded up to the last visit, not recorded to, only touched by the reader */
+    private Interval inactive = new Interval();
+
+    /** All latencies recorded up to the last visit, only touched by the reader */
+    private final Histogram total = new Histogram(MAX_LATENCY, SIGNIFICANT_DIGITS);
+
+    /** The sum of all latencies recorded up to the last visit, only touched by the reader */
+    private long totalNanos;
+
+    private Timer(int statusClass) {
+      this.statusClass = statusClass == 0 ? "other" : statusClass + "xx";
+    }
+
+    private void record(long nanos) {
+      long phase = phaser.writerCriticalSectionEnter();
+      try {
+        Interval interval = active;
+        interval.histogram.recordValue(
+            Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_LATENCY));
+        interval.nanos.add(nanos);
+      } finally {
+        phaser.writerCriticalSectionExit(phase);
+      }
+    }
+
+    private Timer update() {
+      phaser.readerLock();
+      try {
+        Interval recorded = active;
+        inactive.reset();
+        active = inactive;
+        // Wait for the writers to the recorded interval to leave it
+        phaser.flipPhase();
+        inactive = recorded;
+      } finally {
+        phaser.readerUnlock();
+      }
+      total.add(inactive.histogram);
+      totalNanos += inactive.nanos.sum();
+      return this;
+    }
+
+    /** @return The status class, e.g '2xx' */
+    public String statusClass() {
+      return statusClass;
+    }
+
+    /** @return The number of recorded latencies */
+    public long count() {
+      return total.getTotalCount();
+    }
+
+    /** @return The sum of all recorded latencies, in seconds */
+    public double sum() {
+      return totalNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * @param percentile The percentile, e.g 99.9
+     * @return The latency at the percentile, in seconds
+     */
+    public double percentile(double percentile) {
+      return total.getValueAtPercentile(percentile) / (double) TimeUnit.SECONDS.toMicros(1);
+    }
+  }
+
+  /** The latencies, and their sum, recorded between two visits */
+  private static final class Interval {
+
+    private final Histogram histogram = new ConcurrentHistogram(MAX_LATENCY, SIGNIFICANT_DIGITS);
+    private final LongAdder nanos = new LongAdder();
+
+    private void reset() {
+      histogram.reset();
+      nanos.reset();
+    }
+  }
+}
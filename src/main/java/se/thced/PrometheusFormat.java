@@ -0,0 +1,138 @@
+package se.thced;
+
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Writes metrics in the <a
+ * href="https://prometheus.io/docs/instrumenting/exposition_formats/#text-based-format">Prometheus
+ * text format</a>, so that they can be scraped.
+ *
+ * @author thced
+ */
+public final class PrometheusFormat {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  /** The latencies of the API operations, see {@link OperationTimers} */
+  private static final String OPERATION_DURATION = "api_operation_duration_seconds";
+
+  private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+  private static final String QUANTILE = "quantile";
+
+  private static final Pattern INVALID_CHARACTERS = Pattern.compile("[^a-zA-Z0-9_:]");
+
+  private PrometheusFormat() {
+    // No instantiation
+  }
+
+  /**
+   * Write the timers of the API operations as one summary, labeled by operation and status class
+   *
+   * @param timers The timers to write
+   * @param out Where to write
+   */
+  public static void write(OperationTimers timers, StringBuilder out) {
+    type(out, OPERATION_DURATION, "summary");
+    timers.forEach(
+        (operationId, timer) -> {
+          String labels = label(label("", "operation", operationId), "status", timer.statusClass());
+          for (double quantile : QUANTILES) {
+            sample(
+                out,
+                OPERATION_DURATION,
+                label(labels, QUANTILE, quantile),
+                timer.percentile(quantile * 100));
+          }
+          sample(out, OPERATION_DURATION + "_count", labels, timer.count());
+          sample(out, OPERATION_DURATION + "_sum", labels, timer.sum());
+        });
+  }
+
+  /**
+   * Write all metrics in a Dropwizard registry, e.g the Vert.x metrics. Timers are written in
+   * seconds.
+   *
+   * @param registry The registry to write
+   * @param out Where to write
+   */
+  public static void write(MetricRegistry registry, StringBuilder out) {
+    registry
+        .getGauges()
+        .forEach(
+            (name, gauge) -> {
+              Object value = gauge.getValue();
+              if (value instanceof Number) {
+                gauge(out, sanitize(name), ((Number) value).doubleValue());
+              }
+            });
+    // Dropwizard counters go both up and down, which makes them gauges in Prometheus terms
+    registry
+        .getCounters()
+        .forEach((name, counter) -> gauge(out, sanitize(name), counter.getCount()));
+    registry.getMeters().forEach((name, meter) -> counter(out, sanitize(name), meter));
+    registry
+        .getHistograms()
+        .forEach(
+            (name, histogram) ->
+                summary(out, sanitize(name), histogram, histogram.getSnapshot(), 1));
+    registry
+        .getTimers()
+        .forEach(
+            (name, timer) ->
+                summary(
+                    out,
+                    sanitize(name) + "_seconds",
+                    timer,
+                    timer.getSnapshot(),
+                    TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  private static void gauge(StringBuilder out, String name, double value) {
+    type(out, name, "gauge");
+    sample(out, name, "", value);
+  }
+
+  private static void counter(StringBuilder out, String name, Meter meter) {
+    type(out, name + "_total", "counter");
+    sample(out, name + "_total", "", meter.getCount());
+  }
+
+  private static void summary(
+      StringBuilder out, String name, Counting counting, Snapshot snapshot, double divisor) {
+    type(out, name, "summary");
+    for (double quantile : QUANTILES) {
+      sample(out, name, label("", QUANTILE, quantile), snapshot.getValue(quantile) / divisor);
+    }
+    sample(out, name + "_count", "", counting.getCount());
+  }
+
+  private static void type(StringBuilder out, String name, String type) {
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, double value) {
+    out.append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(value).append('\n');
+  }
+
+  /** Add a label to a list of labels */
+  private static String label(String labels, String name, Object value) {
+    String label = name + "=\"" + value + "\"";
+    return labels.isEmpty() ? label : labels + "," + label;
+  }
+
+  /** Metric names may only contain letters, digits, underscores and colons */
+  static String sanitize(String name) {
+    String sanitized = INVALID_CHARACTERS.matcher(name).replaceAll("_");
+    return Character.isDigit(sanitized.charAt(0)) ? "_" + sanitized : sanitized;
+  }
+}
@@ -0,0 +1,60 @@
+package se.thced;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the startup time of the application, from the start of 'main' until the first request
+ * is served. This is the time a node takes to be of use after a (rolling) deploy, including the
+ * time for Vert.x, the cluster and all verticles to start, and for the first request to come in.
+ *
+ * <p>The start is marked by the {@link ApplicationLauncher}. If it is never marked, e.g when the
+ * application is deployed by a test, the start of the JVM is used instead.
+ *
+ * <p>Every request to the API marks that it is served, but only the first one is measured. After
+ * that, marking costs a single volatile read.
+ *
+ * @author thced
+ */
+public final class StartupTimer {
+
+  private static final Logger log = LoggerFactory.getLogger(StartupTimer.class);
+
+  private static final StartupTimer SHARED = new StartupTimer();
+
+  private final AtomicBoolean served = new AtomicBoolean();
+
+  private volatile long started;
+  private volatile long startupMillis = -1;
+
+  StartupTimer() {
+    long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+    this.started = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(uptime);
+  }
+
+  /** @return The timer that is shared by all verticles on this node */
+  public static StartupTimer shared() {
+    return SHARED;
+  }
+
+  /** Mark the start of the application, as early as possible in 'main' */
+  public void started() {
+    started = System.nanoTime();
+  }
+
+  /** Mark that a request is served, the first one completes the measurement */
+  public void served() {
+    if (startupMillis < 0 && served.compareAndSet(false, true)) {
+      startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+      log.info("First request served {} ms after start", startupMillis);
+    }
+  }
+
+  /** @return The milliseconds from the start until the first request was served, or -1 */
+  public long startupMillis() {
+    return startupMillis;
+  }
+}
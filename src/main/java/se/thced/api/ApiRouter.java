@@ -3,25 +3,56 @@ package se.thced.api;
 import static io.vertx.ext.healthchecks.HealthCheckHandler.createWithHealthChecks;
 import static java.util.Objects.nonNull;
 
+import se.thced.StartupTimer;
+import se.thced.api.example.CacheShards;
+import se.thced.api.example.SharedCaches;
+import se.thced.api.handler.AddEntitiesHandler;
 import se.thced.api.handler.AddEntityHandler;
+import se.thced.api.handler.CompressionThresholdHandler;
 import se.thced.api.handler.CorrelationIdDecoratingHandler;
+import se.thced.api.handler.EntityValidationHandler;
+import se.thced.api.handler.EntityValidator;
+import se.thced.api.handler.MetricsHandler;
+import se.thced.api.handler.OperationMetricsHandler;
+import se.thced.api.handler.QueryEntitiesHandler;
 import se.thced.api.handler.ReturnEntitiesHandler;
+import se.thced.api.handler.TracesHandler;
+import se.thced.api.handler.TracingHandler;
 import se.thced.api.handler.health.HealthChecksProvider;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.Http2Settings;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.healthchecks.HealthCheckHandler;
+import io.vertx.ext.web.Route;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.common.WebEnvironment;
+import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.ErrorHandler;
 import io.vertx.ext.web.handler.LoggerFormat;
 import io.vertx.ext.web.handler.LoggerHandler;
+import io.vertx.ext.web.handler.ResponseContentTypeHandler;
 import io.vertx.ext.web.handler.ResponseTimeHandler;
 import io.vertx.ext.web.impl.BlockingHandlerDecorator;
+import io.vertx.ext.web.openapi.Operation;
 import io.vertx.ext.web.openapi.RouterBuilder;
+import io.vertx.json.schema.Schema;
+import io.vertx.json.schema.SchemaParser;
+import io.vertx.json.schema.SchemaRouter;
+import io.vertx.json.schema.SchemaRouterOptions;
+import io.vertx.json.schema.ValidationException;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +67,11 @@ public class ApiRouter extends AbstractVerticle {
 
   private static final Logger log = LoggerFactory.getLogger(ApiRouter.class);
   private static final String SCHEMA_OPENAPI_YAML = "schema/openapi.yaml";
+  private static final String ADD_ENTITY = "add.entity";
+  private static final String ENTITY_SCHEMA = "Entity";
+
+  /** Paths of the operations that stream their request body, see {@link #bodyHandler()} */
+  private static final Set<String> STREAMING_PATHS = Set.of("/api/bulk");
 
   /**
    * If we have a lot of Routers then all of them will print all of their routes, we only need one
@@ -48,9 +84,52 @@ public class ApiRouter extends AbstractVerticle {
   /** Available in config.properties */
   private static final String PORT = "API_HTTP_PORT";
 
+  /** Available in config.properties */
+  static final String HTTP2_MAX_CONCURRENT_STREAMS = "API_HTTP2_MAX_CONCURRENT_STREAMS";
+
+  /** Available in config.properties */
+  static final String COMPRESSION = "API_COMPRESSION";
+
+  /** Available in config.properties */
+  static final String COMPRESSION_LEVEL = "API_COMPRESSION_LEVEL";
+
+  /** Available in config.properties */
+  static final String TCP_NO_DELAY = "API_TCP_NO_DELAY";
+
+  /** Available in config.properties */
+  static final String TCP_FAST_OPEN = "API_TCP_FAST_OPEN";
+
+  /** Available in config.properties */
+  static final String REUSE_PORT = "API_REUSE_PORT";
+
+  /** Available in config.properties */
+  static final String ACCEPT_BACKLOG = "API_ACCEPT_BACKLOG";
+
+  /** Streams per HTTP/2 connection, as many as a client would reasonably multiplex */
+  static final long DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS = 100;
+
+  private final Router sharedRouter;
+
+  /** An API router that loads the OpenAPI contract, and sets up a router of its own, on start */
+  public ApiRouter() {
+    this(null);
+  }
+
+  /**
+   * An API router that serves a router that is shared by all instances, so the OpenAPI contract is
+   * only loaded and compiled once, see {@link #router(Vertx, JsonObject)}
+   *
+   * @param router The shared router, or null to set up a router of its own
+   */
+  public ApiRouter(Router router) {
+    this.sharedRouter = router;
+  }
+
   @Override
   public void start(Promise<Void> startPromise) {
-    router()
+    Future<Router> router =
+        nonNull(sharedRouter) ? Future.succeededFuture(sharedRouter) : router(vertx, config());
+    router
         .compose(this::startServer)
         .onSuccess(
             port -> {
@@ -69,28 +148,104 @@ public class ApiRouter extends AbstractVerticle {
    * @return The future containing the port of the server, or a failure
    */
   private Future<Integer> startServer(Router router) {
-    HttpServerOptions options = new HttpServerOptions().setPort(config().getInteger(PORT, 8080));
     return vertx
-        .createHttpServer(options)
-        .requestHandler(router)
+        .createHttpServer(serverOptions(config()))
+        .requestHandler(
+            request -> {
+              StartupTimer.shared().served();
+              router.handle(request);
+            })
         .listen()
         .map(HttpServer::actualPort);
   }
 
   /**
-   * Setup the API router
+   * The options of the HTTP API server. HTTP/2 over cleartext (h2c) is accepted, both by upgrade
+   * and with prior knowledge, unless disabled in the {@link se.thced.ApplicationLauncher}. The
+   * TCP options fast open and reuse port require the native transport, and are ignored otherwise.
+   *
+   * @param config The configuration
+   * @return The server options
+   */
+  static HttpServerOptions serverOptions(JsonObject config) {
+    return new HttpServerOptions()
+        .setPort(config.getInteger(PORT, 8080))
+        .setInitialSettings(
+            new Http2Settings()
+                .setMaxConcurrentStreams(
+                    config.getLong(
+                        HTTP2_MAX_CONCURRENT_STREAMS, DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS)))
+        .setCompressionSupported(config.getBoolean(COMPRESSION, false))
+        .setCompressionLevel(
+            config.getInteger(COMPRESSION_LEVEL, HttpServerOptions.DEFAULT_COMPRESSION_LEVEL))
+        .setTcpNoDelay(config.getBoolean(TCP_NO_DELAY, HttpServerOptions.DEFAULT_TCP_NO_DELAY))
+        .setTcpFastOpen(
+            config.getBoolean(TCP_FAST_OPEN, HttpServerOptions.DEFAULT_TCP_FAST_OPEN))
+        .setReusePort(config.getBoolean(REUSE_PORT, HttpServerOptions.DEFAULT_REUSE_PORT))
+        .setAcceptBacklog(
+            config.getInteger(ACCEPT_BACKLOG, HttpServerOptions.DEFAULT_ACCEPT_BACKLOG));
+  }
+
+  /**
+   * Setup the API router. Loading the OpenAPI contract, i.e parsing the YAML, resolving it and
+   * validating it against the OpenAPI schema, takes most of the startup time of a router, so the
+   * application sets up one router that all instances share.
+   *
+   * <p>Note! The router handles the requests of all the event loops, so all its handlers must be
+   * thread-safe. The handlers of this application keep no state between requests, and the
+   * validation handlers only read their compiled schemas.
    *
+   * @param vertx The Vert.x instance
+   * @param config The configuration
    * @return A future containing the final, complete, router, or a failure
    */
-  private Future<Router> router() {
+  public static Future<Router> router(Vertx vertx, JsonObject config) {
+    // Shared by the operation of the contract and its fast path, see createRouter
+    ErrorHandler errorHandler = errorHandler(vertx);
+    AddEntityHandler addEntity = new AddEntityHandler(config.getInteger(CacheShards.SHARDS, 1));
     return RouterBuilder.create(vertx, SCHEMA_OPENAPI_YAML)
-        .map(builder -> builder.rootHandler(CorrelationIdDecoratingHandler.create()))
+        .map(builder -> builder.rootHandler(OperationMetricsHandler.create()))
+        .map(builder -> addCompressionThreshold(builder, config))
+        .map(builder -> builder.bodyHandler(null).rootHandler(bodyHandler()))
+        .map(builder -> builder.rootHandler(correlationIdHandler(config)))
+        .map(builder -> builder.rootHandler(tracingHandler(config)))
         .map(builder -> builder.rootHandler(LoggerHandler.create(LoggerFormat.DEFAULT)))
         .map(builder -> builder.rootHandler(ResponseTimeHandler.create()))
-        .map(this::addHandlers)
-        .map(RouterBuilder::createRouter)
-        .map(this::addNonApiHandlers)
-        .map(this::printRoutes);
+        .map(builder -> addHandlers(builder, vertx, config, addEntity, errorHandler))
+        .map(builder -> createRouter(builder, config, addEntity, errorHandler))
+        .map(router -> addNonApiHandlers(router, vertx))
+        .map(ApiRouter::printRoutes);
+  }
+
+  /**
+   * Leave small responses uncompressed when compression is enabled, where the saved bytes are not
+   * worth the time to compress them
+   *
+   * @param builder The router builder
+   * @param config The configuration
+   * @return The router builder, with the threshold handler if compression is enabled
+   */
+  private static RouterBuilder addCompressionThreshold(RouterBuilder builder, JsonObject config) {
+    if (!config.getBoolean(COMPRESSION, false)) {
+      return builder;
+    }
+    return builder.rootHandler(
+        CompressionThresholdHandler.create(
+            config.getInteger(
+                CompressionThresholdHandler.THRESHOLD,
+                CompressionThresholdHandler.DEFAULT_THRESHOLD)));
+  }
+
+  /** @return The correlation id handler, with the configured generator */
+  private static CorrelationIdDecoratingHandler correlationIdHandler(JsonObject config) {
+    return CorrelationIdDecoratingHandler.create(
+        config.getString(CorrelationIdDecoratingHandler.GENERATOR));
+  }
+
+  /** @return The tracing handler, with the configured sample rate */
+  private static TracingHandler tracingHandler(JsonObject config) {
+    return TracingHandler.create(
+        config.getDouble(TracingHandler.SAMPLE_RATE, TracingHandler.DEFAULT_SAMPLE_RATE));
   }
 
   /**
@@ -99,18 +254,38 @@ public class ApiRouter extends AbstractVerticle {
    * <p>Note! If you need to do blocking execution, use the handy {@link BlockingHandlerDecorator}
    *
    * @param builder The router builder
+   * @param vertx The Vert.x instance
+   * @param config The configuration
+   * @param addEntity The handler of the entities that are added one at a time
+   * @param errorHandler The failure handler of all operations
    * @return The router builder populated with all handlers
    */
-  private RouterBuilder addHandlers(RouterBuilder builder) {
+  private static RouterBuilder addHandlers(
+      RouterBuilder builder,
+      Vertx vertx,
+      JsonObject config,
+      AddEntityHandler addEntity,
+      ErrorHandler errorHandler) {
 
-    ErrorHandler errorHandler = errorHandler();
+    int shards = config.getInteger(CacheShards.SHARDS, 1);
+    boolean directAccess = config.getBoolean(SharedCaches.DIRECT_ACCESS, false);
 
     builder
         .operation("return.entities")
-        .handler(new ReturnEntitiesHandler())
+        .handler(new ReturnEntitiesHandler(shards, directAccess))
         .failureHandler(errorHandler);
 
-    builder.operation("add.entity").handler(new AddEntityHandler()).failureHandler(errorHandler);
+    builder
+        .operation("query.entities")
+        .handler(new QueryEntitiesHandler(shards))
+        .failureHandler(errorHandler);
+
+    builder.operation(ADD_ENTITY).handler(addEntity).failureHandler(errorHandler);
+
+    builder
+        .operation("add.entities")
+        .handler(new AddEntitiesHandler(shards, entityValidation(builder, vertx, config)))
+        .failureHandler(errorHandler);
 
     /* An alternative approach could be to do the following..
     Map.of(
@@ -124,7 +299,150 @@ public class ApiRouter extends AbstractVerticle {
     return builder;
   }
 
-  private ErrorHandler errorHandler() {
+  /**
+   * The validation of an entity by the 'Entity' schema of the contract, for the operations that
+   * stream their body and can not have it validated by the contract. Unless disabled, the schema
+   * is compiled to the fast path of an {@link EntityValidator}, and else validated generically.
+   *
+   * @param builder The router builder
+   * @param vertx The Vert.x instance
+   * @param config The configuration
+   * @return The validation of an entity
+   */
+  private static Predicate<JsonObject> entityValidation(
+      RouterBuilder builder, Vertx vertx, JsonObject config) {
+    JsonObject schema =
+        builder
+            .getOpenAPI()
+            .getOpenAPI()
+            .getJsonObject("components")
+            .getJsonObject("schemas")
+            .getJsonObject(ENTITY_SCHEMA)
+            .copy();
+    if (config.getBoolean(EntityValidationHandler.FAST_VALIDATION, true)) {
+      try {
+        return EntityValidator.compile(schema)::isValid;
+      } catch (IllegalArgumentException e) {
+        log.warn("Streamed entities are validated by the generic path", e);
+      }
+    }
+    Schema generic =
+        SchemaParser.createOpenAPI3SchemaParser(
+                SchemaRouter.create(vertx, new SchemaRouterOptions()))
+            .parse(schema);
+    return entity -> {
+      try {
+        generic.validateSync(entity);
+        return true;
+      } catch (ValidationException e) {
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Create the router of the operations, and, unless disabled, replace the generic validation of
+   * the entities that are added with the fast path of a validator compiled from their schema. The
+   * schema is compiled before the router is created, since that annotates the cached schemas.
+   *
+   * @param builder The router builder, populated with all handlers
+   * @param config The configuration
+   * @param addEntity The handler of the operation, the same as in the generic route
+   * @param errorHandler The failure handler of the operation, the same as in the generic route
+   * @return The router of all operations
+   */
+  private static Router createRouter(
+      RouterBuilder builder,
+      JsonObject config,
+      AddEntityHandler addEntity,
+      ErrorHandler errorHandler) {
+    if (!config.getBoolean(EntityValidationHandler.FAST_VALIDATION, true)) {
+      return builder.createRouter();
+    }
+
+    Operation operation = builder.operation(ADD_ENTITY);
+    EntityValidator validator;
+    try {
+      validator = EntityValidator.compile(bodySchema(builder, operation));
+    } catch (IllegalArgumentException e) {
+      log.warn("Entities are validated by the generic path, the fast path is not possible", e);
+      return builder.createRouter();
+    }
+
+    Router router = builder.createRouter();
+    List<Route> generic =
+        router.getRoutes().stream()
+            .filter(route -> operation.getOpenAPIPath().equals(route.getPath()))
+            .filter(route -> nonNull(route.methods()))
+            .filter(route -> route.methods().contains(operation.getHttpMethod()))
+            .collect(Collectors.toList());
+    generic.forEach(Route::remove);
+
+    Route route =
+        router
+            .route(operation.getHttpMethod(), operation.getOpenAPIPath())
+            .setName(generic.isEmpty() ? ADD_ENTITY : generic.get(0).getName());
+    produces(operation).forEach(route::produces);
+    route
+        .handler(ResponseContentTypeHandler.create())
+        .handler(EntityValidationHandler.create(validator))
+        .handler(addEntity)
+        .failureHandler(errorHandler);
+    return router;
+  }
+
+  /**
+   * The schema of the JSON body of an operation, which must be all there is to validate in its
+   * requests for the fast path to replace the generic validation
+   *
+   * @throws IllegalArgumentException If the operation has parameters, or other bodies than JSON
+   */
+  private static JsonObject bodySchema(RouterBuilder builder, Operation operation) {
+    JsonObject model = operation.getOperationModel();
+    if (!model.getJsonArray("parameters", new JsonArray()).isEmpty()) {
+      throw new IllegalArgumentException("Parameters are not supported");
+    }
+    JsonObject content =
+        builder
+            .getOpenAPI()
+            .solveIfNeeded(model.getJsonObject("requestBody", new JsonObject()))
+            .getJsonObject("content", new JsonObject());
+    if (!Set.of("application/json").equals(content.fieldNames())) {
+      throw new IllegalArgumentException("Content types not supported: " + content.fieldNames());
+    }
+    return builder
+        .getOpenAPI()
+        .solveIfNeeded(content.getJsonObject("application/json").getJsonObject("schema"));
+  }
+
+  /** @return The content types of the responses of an operation, as produced by its route */
+  private static Set<String> produces(Operation operation) {
+    JsonObject responses = operation.getOperationModel().getJsonObject("responses");
+    return responses.fieldNames().stream()
+        .map(responses::getJsonObject)
+        .map(response -> response.getJsonObject("content", new JsonObject()))
+        .flatMap(content -> content.fieldNames().stream())
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * The body handler buffers the whole request body before the operation is handled. Operations
+   * that stream their body must bypass it, or they would lose all their benefits.
+   *
+   * @return The body handler for all but the streaming operations
+   */
+  private static Handler<RoutingContext> bodyHandler() {
+    BodyHandler bodyHandler = BodyHandler.create();
+    return ctx -> {
+      if (STREAMING_PATHS.contains(ctx.normalizedPath())) {
+        ctx.next();
+      } else {
+        bodyHandler.handle(ctx);
+      }
+    };
+  }
+
+  private static ErrorHandler errorHandler(Vertx vertx) {
     // True when the sysProp/envVar 'vertxweb.environment'/'VERTXWEB_ENVIRONMENT' is set to 'dev'
     boolean development = WebEnvironment.development();
     // Display/return exceptions during development only
@@ -138,12 +456,17 @@ public class ApiRouter extends AbstractVerticle {
    * <p>Note! If you need to do blocking execution, use the handy {@link BlockingHandlerDecorator}
    *
    * @param router The router that handles all requests
+   * @param vertx The Vert.x instance
    * @return The router populated with non-API handlers
    */
-  private Router addNonApiHandlers(Router router) {
+  private static Router addNonApiHandlers(Router router, Vertx vertx) {
     // Create the "alive" endpoint
     router.get("/alive").handler(HealthCheckHandler.create(vertx));
     router.get("/health").handler(createWithHealthChecks(HealthChecksProvider.create(vertx)));
+    // Metrics in Prometheus text format, to be scraped
+    router.get("/metrics").handler(MetricsHandler.create(vertx));
+    // The recently finished spans of sampled requests, for debugging
+    router.get("/debug/traces").handler(TracesHandler.create());
 
     return router;
   }
@@ -154,7 +477,7 @@ public class ApiRouter extends AbstractVerticle {
    * @param router The router instance
    * @return The same router instance when done logging
    */
-  private Router printRoutes(Router router) {
+  private static Router printRoutes(Router router) {
     if (logSemaphore.compareAndSet(true, false)) {
       router.getRoutes().stream()
           .filter(r -> nonNull(r.getName())) // base route does not have a name
@@ -1,28 +1,25 @@
 package se.thced.api.example;
 
-import static io.vertx.core.Future.succeededFuture;
-
-import io.vertx.core.Future;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.auth.VertxContextPRNG;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Add a random amount, between 25-35, to age of the entity.
  *
  * @author thced
  */
-public class AddRandomYearToAgePreProcessor implements PreProcessor {
+public class AddRandomYearToAgePreProcessor implements SynchronousPreProcessor {
 
   /** The key to the 'age' field */
   private static final String AGE = "age";
 
   @Override
-  public Future<JsonObject> apply(JsonObject entity) {
+  public JsonObject process(JsonObject entity) {
     if (entity.containsKey(AGE)) {
-      // This will throw exceptions if run by other than Vert.x threads!
-      int additionalAge = VertxContextPRNG.current().nextInt(11) + 25;
+      // Thread-agnostic, so the processor can run on any execution mode
+      int additionalAge = ThreadLocalRandom.current().nextInt(25, 36);
       entity.put(AGE, entity.getInteger(AGE) + additionalAge);
     }
-    return succeededFuture(entity);
+    return entity;
   }
 }
@@ -2,6 +2,8 @@ package se.thced.api.example;
 
 import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.Collection;
 
 /**
  * Example interface to demonstrate <a
@@ -14,8 +16,141 @@ public interface Cache<V> {
 
   String ADD_TO_CACHE = "add.to.cache";
   String RETRIEVE_FROM_CACHE = "retrieve.from.cache";
+  String ADD_ALL_TO_CACHE = "add.all.to.cache";
+  String QUERY_CACHE = "query.cache";
+  String VERSION_OF_CACHE = "version.of.cache";
 
-  Future<JsonArray> retrieve();
+  /** Eventbus header with the maximum number of entities to retrieve */
+  String LIMIT = "limit";
+
+  /** Eventbus header with the cursor to continue retrieving from */
+  String CURSOR = "cursor";
+
+  /** Eventbus header with the epoch of a version, see {@link #epoch()} */
+  String EPOCH = "epoch";
+
+  /** The number of entities returned when the caller does not ask for a specific amount */
+  int DEFAULT_LIMIT = 10;
+
+  /**
+   * Configure the cache before it is used. Implementations are instantiated by SPI, with a no-arg
+   * constructor, so the ones that can be tuned override this to read their settings.
+   *
+   * @param config The configuration of the verticle that owns the cache, with the index of the
+   *     shard that the cache serves, see {@link CacheShards#SHARD}
+   */
+  default void configure(JsonObject config) {
+    // Nothing to configure
+  }
+
+  /**
+   * Whether the entities are shared by all nodes of the cluster, and thereby also change by adds on
+   * other nodes, and outlive this node
+   *
+   * @return True if the cache is distributed over the cluster
+   */
+  default boolean isDistributed() {
+    return false;
+  }
+
+  /**
+   * Whether every read by a client must reach the cache, since the reads take part in what it
+   * keeps, e.g by an eviction policy by frequency. Such a cache must not have its reads answered
+   * from a snapshot, see {@link SnapshotCache}.
+   *
+   * @return True if the reads are part of the state of the cache
+   */
+  default boolean countsReads() {
+    return false;
+  }
+
+  /**
+   * Retrieve all entities in the cache
+   *
+   * @return The future containing all entities, or a failure
+   */
+  default Future<JsonArray> retrieve() {
+    return retrieve(Integer.MAX_VALUE, null).map(Page::entities);
+  }
+
+  /**
+   * Retrieve a page of entities. Implementations should stop iterating once the limit is reached,
+   * so that the cost of a page does not depend on the size of the cache.
+   *
+   * @param limit The maximum number of entities to retrieve
+   * @param cursor The cursor from a previous page to continue after, or null to start from the
+   *     beginning
+   * @return The future containing the page, or a failure
+   */
+  Future<Page> retrieve(int limit, String cursor);
+
+  /**
+   * Read a page of entities for the bookkeeping of the application, e.g to write them to disk,
+   * rather than for a client. Unlike {@link #retrieve(int, String)}, the read is not counted, and
+   * does not change what the cache keeps.
+   *
+   * @param limit The maximum number of entities to read
+   * @param cursor The cursor from a previous page to continue after, or null to start from the
+   *     beginning
+   * @return The future containing the page, or a failure
+   */
+  default Future<Page> entities(int limit, String cursor) {
+    return retrieve(limit, cursor);
+  }
+
+  /**
+   * Query a page of entities by their fields. Implementations that support queries answer them from
+   * secondary indexes where they can, see {@link EntityIndex}, instead of scanning all entities.
+   *
+   * @param query The conditions the entities must match
+   * @param limit The maximum number of entities to retrieve
+   * @param cursor The cursor from a previous page to continue after, or null to start from the
+   *     beginning
+   * @return The future containing the page of matching entities in insertion order, or a failure
+   *     with an {@link UnsupportedOperationException} if the implementation has no indexes
+   */
+  default Future<Page> query(Query query, int limit, String cursor) {
+    String implementation = getClass().getSimpleName();
+    return Future.failedFuture(
+        new UnsupportedOperationException(implementation + " does not support queries"));
+  }
+
+  /**
+   * The version of the entities in the cache. It never decreases, and it increases with every
+   * change of the entities, once the change can be retrieved. Entities retrieved after the version
+   * is read are thereby at least as new as the version, and as long as the version stays the same,
+   * a retrieve returns the same entities.
+   *
+   * @return The future containing the version, or a failure
+   */
+  Future<Long> version();
+
+  /**
+   * The epoch of the version. Versions start over when the entities do, so a version only tells the
+   * entities apart within its epoch. The entities of a distributed cache outlive the nodes, and so
+   * does their epoch, which is the same on all nodes of the cluster.
+   *
+   * @return The epoch, once the version has been read, or null if the version starts over with
+   *     every instance of the cache
+   */
+  default String epoch() {
+    return null;
+  }
 
   Future<Void> add(V entity);
+
+  /**
+   * Add a batch of entities. Implementations can override this when a batch can be added cheaper
+   * than one entity at a time.
+   *
+   * @param entities The entities to add, in order
+   * @return The future that completes when all entities are added, or a failure
+   */
+  default Future<Void> addAll(Collection<V> entities) {
+    Future<Void> added = Future.succeededFuture();
+    for (V entity : entities) {
+      added = added.compose(ignore -> add(entity));
+    }
+    return added;
+  }
 }
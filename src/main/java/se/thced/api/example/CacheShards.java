@@ -0,0 +1,133 @@
+package se.thced.api.example;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+
+/**
+ * Support for running the cache partitioned over several {@link CacheVerticle} shards, each with
+ * its own {@link Cache} instance, event loop and set of eventbus addresses.
+ *
+ * <p>With a single shard (the default) the plain addresses in {@link Cache} are used, which means
+ * that the cache behaves exactly as an un-partitioned singleton.
+ *
+ * @author thced
+ */
+public final class CacheShards {
+
+  /** Available in config.properties */
+  public static final String SHARDS = "CACHE_SHARDS";
+
+  /** The index of the shard a cache serves, in the configuration it is configured with */
+  public static final String SHARD = "cache.shard";
+
+  /** The key that decides which shard an entity belongs to */
+  private static final String NAME = "name";
+
+  /** Separates the cursors of the shards in a composite cursor */
+  private static final String CURSOR_SEPARATOR = ".";
+
+  /** The cursor of a shard that has not been read from yet */
+  private static final String START = "0";
+
+  private CacheShards() {
+    // No instantiation
+  }
+
+  /**
+   * The eventbus address of a shard
+   *
+   * @param address The base address, e.g {@link Cache#ADD_TO_CACHE}
+   * @param shard The index of the shard
+   * @param shards The total number of shards
+   * @return The address the shard listens on
+   */
+  public static String address(String address, int shard, int shards) {
+    return shards > 1 ? address + "." + shard : address;
+  }
+
+  /**
+   * Route an entity to a shard by the hash of its key (the name)
+   *
+   * @param entity The entity to route
+   * @param shards The total number of shards
+   * @return The index of the shard that owns the entity
+   */
+  public static int shardOf(JsonObject entity, int shards) {
+    return shards > 1 ? Math.floorMod(Objects.hashCode(entity.getValue(NAME)), shards) : 0;
+  }
+
+  /**
+   * Split a cursor into the cursors of each shard. A cursor over several shards is composed of the
+   * cursors of all shards.
+   *
+   * @param cursor The cursor, or null to start from the beginning
+   * @param shards The total number of shards
+   * @return The cursor of each shard, ordered by shard
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  public static List<String> cursors(String cursor, int shards) {
+    if (cursor == null) {
+      return Collections.nCopies(shards, null);
+    }
+    List<String> cursors = Arrays.asList(cursor.split(Pattern.quote(CURSOR_SEPARATOR), -1));
+    if (cursors.size() != shards) {
+      throw new IllegalArgumentException("Cursor does not match " + shards + " shard(s)");
+    }
+    cursors.forEach(Page::position);
+    return cursors;
+  }
+
+  /**
+   * Gather the pages from all shards into one page, respecting the limit. Entities are taken from
+   * the shards in turn, and the resulting cursor remembers how far into each shard we got.
+   *
+   * @param pages The pages from each of the shards, ordered by shard
+   * @param cursors The cursors that the pages were retrieved with, ordered by shard
+   * @param limit The maximum number of entities to return
+   * @return The gathered page
+   */
+  public static Page gather(List<Page> pages, List<String> cursors, int limit) {
+    if (pages.size() == 1 && pages.get(0).size() <= limit) {
+      return pages.get(0);
+    }
+
+    int shards = pages.size();
+    int[] taken = new int[shards];
+    JsonArray entities = new JsonArray();
+    LongStream.Builder keys = LongStream.builder();
+
+    boolean progress = true;
+    while (progress && entities.size() < limit) {
+      progress = false;
+      for (int shard = 0; shard < shards && entities.size() < limit; shard++) {
+        Page page = pages.get(shard);
+        if (taken[shard] < page.size()) {
+          entities.add(page.entities().getValue(taken[shard]));
+          keys.add(page.key(taken[shard]));
+          taken[shard]++;
+          progress = true;
+        }
+      }
+    }
+
+    boolean more = false;
+    String[] next = new String[shards];
+    for (int shard = 0; shard < shards; shard++) {
+      Page page = pages.get(shard);
+      more |= taken[shard] < page.size() || page.hasMore();
+      next[shard] =
+          taken[shard] > 0
+              ? String.valueOf(page.key(taken[shard] - 1))
+              : Objects.toString(cursors.get(shard), START);
+    }
+
+    String cursor = more ? String.join(CURSOR_SEPARATOR, next) : null;
+    return new Page(entities, keys.build().toArray(), cursor);
+  }
+}
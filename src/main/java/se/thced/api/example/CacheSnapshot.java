@@ -0,0 +1,266 @@
+package se.thced.api.example;
+
+import static io.vertx.core.Future.succeededFuture;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A snapshot of the entities of a {@link Cache} on disk, so that a restarted cache can be warmed
+ * up from the snapshot instead of being refilled from scratch.
+ *
+ * <p>The snapshot is a binary file, where the entities are split into chunks that can be read in
+ * parallel:
+ *
+ * <pre>
+ *   int    magic, 'CSNP'
+ *   int    format version
+ *   int    number of chunks
+ *   per chunk:
+ *     long offset, int length (bytes), int number of entities
+ *   chunks, where every entity is an int length followed by the entity as JSON
+ * </pre>
+ *
+ * <p>A snapshot is written to a temporary file that replaces the snapshot when it is complete, so
+ * a crash while writing never leaves a broken snapshot behind. All file access is done on worker
+ * threads.
+ *
+ * @author thced
+ */
+final class CacheSnapshot {
+
+  /** Available in config.properties */
+  static final String DIRECTORY = "CACHE_SNAPSHOT_DIR";
+
+  /** Available in config.properties */
+  static final String INTERVAL = "CACHE_SNAPSHOT_INTERVAL";
+
+  static final long DEFAULT_INTERVAL = 60_000;
+
+  /** The number of entities per chunk, i.e per parallel read */
+  static final int CHUNK_SIZE = 4_096;
+
+  private static final int MAGIC = 0x43534e50;
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_LENGTH = 3 * Integer.BYTES;
+  private static final int INDEX_ENTRY_LENGTH = Long.BYTES + 2 * Integer.BYTES;
+
+  private final Vertx vertx;
+  private final Path path;
+
+  /**
+   * @param vertx The vertx instance, to read and write on worker threads
+   * @param path The file of the snapshot
+   */
+  CacheSnapshot(Vertx vertx, Path path) {
+    this.vertx = vertx;
+    this.path = path;
+  }
+
+  Path path() {
+    return path;
+  }
+
+  /**
+   * Write a snapshot, replacing the previous one
+   *
+   * @param entities The entities to write, in order. They must not be modified while written.
+   * @return A future that completes when the snapshot is written, or a failure
+   */
+  Future<Void> write(List<JsonObject> entities) {
+    return vertx.executeBlocking(
+        promise -> {
+          try {
+            writeBlocking(entities);
+            promise.complete();
+          } catch (IOException e) {
+            promise.fail(e);
+          }
+        },
+        false);
+  }
+
+  /**
+   * Read the snapshot, one chunk per worker thread
+   *
+   * @return The future containing the entities of the snapshot in order, an empty list if there is
+   *     no snapshot, or a failure
+   */
+  @SuppressWarnings("rawtypes")
+  Future<List<JsonObject>> read() {
+    return vertx
+        .<FileChannel>executeBlocking(
+            promise -> {
+              try {
+                promise.complete(FileChannel.open(path, StandardOpenOption.READ));
+              } catch (NoSuchFileException e) {
+                promise.complete(null);
+              } catch (IOException e) {
+                promise.fail(e);
+              }
+            },
+            false)
+        .compose(
+            channel -> {
+              if (channel == null) {
+                return succeededFuture(List.of());
+              }
+              return index(channel)
+                  .compose(
+                      index -> {
+                        List<Future> chunks = new ArrayList<>(index.length);
+                        for (Chunk chunk : index) {
+                          chunks.add(readChunk(channel, chunk));
+                        }
+                        return CompositeFuture.all(chunks);
+                      })
+                  .map(CacheSnapshot::flatten)
+                  .onComplete(ignore -> close(channel));
+            });
+  }
+
+  private void writeBlocking(List<JsonObject> entities) throws IOException {
+    Files.createDirectories(path.toAbsolutePath().getParent());
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    int chunks = (entities.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+    try (FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      Buffer index =
+          Buffer.buffer(HEADER_LENGTH + chunks * INDEX_ENTRY_LENGTH)
+              .appendInt(MAGIC)
+              .appendInt(FORMAT_VERSION)
+              .appendInt(chunks);
+
+      long offset = HEADER_LENGTH + (long) chunks * INDEX_ENTRY_LENGTH;
+      for (int start = 0; start < entities.size(); start += CHUNK_SIZE) {
+        int end = Math.min(start + CHUNK_SIZE, entities.size());
+        List<JsonObject> slice = entities.subList(start, end);
+        Buffer chunk = Buffer.buffer();
+        for (JsonObject entity : slice) {
+          Buffer encoded = entity.toBuffer();
+          chunk.appendInt(encoded.length()).appendBuffer(encoded);
+        }
+        writeFully(channel, chunk.getByteBuf().nioBuffer(), offset);
+        index.appendLong(offset).appendInt(chunk.length()).appendInt(slice.size());
+        offset += chunk.length();
+      }
+
+      // The index goes in front of the chunks, once their offsets are known
+      writeFully(channel, index.getByteBuf().nioBuffer(), 0);
+      channel.force(true);
+    }
+    Files.move(
+        temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Read the header and the index of the chunks */
+  private Future<Chunk[]> index(FileChannel channel) {
+    return vertx.executeBlocking(
+        promise -> {
+          try {
+            ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+              throw new IOException("Not a cache snapshot, or an unknown format: " + path);
+            }
+            int chunks = header.getInt();
+            ByteBuffer entries = readFully(channel, HEADER_LENGTH, chunks * INDEX_ENTRY_LENGTH);
+            Chunk[] index = new Chunk[chunks];
+            for (int i = 0; i < chunks; i++) {
+              index[i] = new Chunk(entries.getLong(), entries.getInt(), entries.getInt());
+            }
+            promise.complete(index);
+          } catch (IOException | RuntimeException e) {
+            promise.fail(e);
+          }
+        },
+        false);
+  }
+
+  /** Read and decode one chunk, on a worker thread of its own */
+  private Future<List<JsonObject>> readChunk(FileChannel channel, Chunk chunk) {
+    return vertx.executeBlocking(
+        promise -> {
+          try {
+            ByteBuffer bytes = readFully(channel, chunk.offset, chunk.length);
+            List<JsonObject> entities = new ArrayList<>(chunk.entities);
+            for (int i = 0; i < chunk.entities; i++) {
+              byte[] encoded = new byte[bytes.getInt()];
+              bytes.get(encoded);
+              entities.add(new JsonObject(Buffer.buffer(encoded)));
+            }
+            promise.complete(entities);
+          } catch (IOException | RuntimeException e) {
+            promise.fail(e);
+          }
+        },
+        false);
+  }
+
+  private static List<JsonObject> flatten(CompositeFuture chunks) {
+    List<JsonObject> entities = new ArrayList<>();
+    for (int i = 0; i < chunks.size(); i++) {
+      entities.addAll(chunks.resultAt(i));
+    }
+    return entities;
+  }
+
+  /** Positional reads are safe to do in parallel on the same channel */
+  private static ByteBuffer readFully(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("The cache snapshot is truncated");
+      }
+    }
+    return buffer.flip();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    long written = 0;
+    while (buffer.hasRemaining()) {
+      written += channel.write(buffer, position + written);
+    }
+  }
+
+  private static void close(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // Nothing left to read, nothing to do
+    }
+  }
+
+  /** Where a chunk is in the file */
+  private static final class Chunk {
+
+    private final long offset;
+    private final int length;
+    private final int entities;
+
+    private Chunk(long offset, int length, int entities) {
+      this.offset = offset;
+      this.length = length;
+      this.entities = entities;
+    }
+  }
+}
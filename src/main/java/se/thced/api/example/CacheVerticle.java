@@ -1,22 +1,37 @@
 package se.thced.api.example;
 
+import static io.vertx.core.Future.failedFuture;
 import static io.vertx.core.Future.succeededFuture;
 import static java.util.Objects.nonNull;
 import static java.util.stream.Collectors.toList;
 
+import se.thced.MetricsSupport;
+import se.thced.tracing.Span;
+import se.thced.tracing.Tracer;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.SharedMetricRegistries;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.ServiceHelper;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
 import io.vertx.ext.auth.VertxContextPRNG;
 import io.vertx.ext.web.common.WebEnvironment;
 import io.vertx.serviceproxy.HelperUtils;
-import java.util.Collection;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,9 +45,61 @@ public class CacheVerticle extends AbstractVerticle {
 
   private static final Logger log = LoggerFactory.getLogger(CacheVerticle.class);
 
+  /** The maximum number of entities taken from the ingest queue per round, see {@link #drain()} */
+  static final int DRAIN_SIZE = 500;
+
+  /** Available in config.properties */
+  static final String IMPLEMENTATION = "CACHE_IMPLEMENTATION";
+
+  /** The prefix of the ingest queue metrics */
+  private static final String INGEST_METRICS = "cache.ingest.";
+
+  private static final String DEPTH = "depth";
+  private static final String DRAINED = "drained";
+  private static final String REJECTED = "rejected";
+
+  /** The index of the shard this verticle serves, see {@link CacheShards} */
+  private final int shard;
+
   private Cache<JsonObject> entityCache;
 
-  private Collection<PreProcessor> preProcessors;
+  /** True if the cache is shared by all nodes of the cluster */
+  private boolean distributed;
+
+  private PreProcessorPipeline preProcessors;
+
+  private IngestQueue ingestQueue;
+
+  private IngestQueue.Ack ack;
+
+  /** True while a round of draining the ingest queue is in progress */
+  private boolean draining;
+
+  /** The snapshot on disk, or null if snapshots are disabled */
+  private CacheSnapshot snapshot;
+
+  /** True if entities were added since the last snapshot */
+  private boolean dirty;
+
+  /** The latest snapshot that was written, or is being written, or null */
+  private Future<Void> writing;
+
+  private long snapshotTimer = -1;
+
+  private Meter drained;
+
+  private Meter rejected;
+
+  /** The metrics of the cache, or null if it has none */
+  private MetricSet cacheMetrics;
+
+  public CacheVerticle() {
+    this(0);
+  }
+
+  public CacheVerticle(int shard) {
+    this.shard = shard;
+  }
 
   @Override
   public void start(Promise<Void> startPromise) {
@@ -42,125 +109,540 @@ public class CacheVerticle extends AbstractVerticle {
       the interface seeked.
       See 'resources/META-INF/services' to switch between the available cache implementations
     */
-    Cache<JsonObject> cache = ServiceHelper.loadFactoryOrNull(Cache.class);
+    Cache<JsonObject> cache = loadCache(config().getString(IMPLEMENTATION));
 
     if (nonNull(cache)) {
-      log.debug("Cache implementation found: {}", cache.getClass().getSimpleName());
-      this.entityCache = cache;
+      cache.configure(config().copy().put(CacheShards.SHARD, shard));
+      log.debug(
+          "Cache implementation found for shard {}: {}", shard, cache.getClass().getSimpleName());
+      // Keep a pre-encoded snapshot of the first page, for the many reads between the adds. The
+      // entities of a distributed cache also change by adds on other nodes, which would leave the
+      // snapshot stale, and it keeps a near-cache of its own. A cache that counts reads must see
+      // every one of them.
+      this.distributed = cache.isDistributed();
+      this.entityCache = distributed || cache.countsReads() ? cache : new SnapshotCache(cache);
     } else {
       startPromise.fail(new NoClassDefFoundError("No Cache implementation found on classpath"));
       return;
     }
 
-    this.preProcessors = ServiceHelper.loadFactories(PreProcessor.class);
+    this.preProcessors =
+        new PreProcessorPipeline(vertx, ServiceHelper.loadFactories(PreProcessor.class));
 
-    registerEventBusHandlers().onComplete(startPromise);
+    this.ingestQueue =
+        new IngestQueue(config().getInteger(IngestQueue.CAPACITY, IngestQueue.DEFAULT_CAPACITY));
+    this.ack =
+        IngestQueue.Ack.valueOf(config().getString(IngestQueue.ACK, IngestQueue.Ack.COMMIT.name()));
+    registerMetrics(cache);
+
+    String directory = config().getString(CacheSnapshot.DIRECTORY);
+    // The entities of a distributed cache outlive a node, and would be restored once per node
+    if (nonNull(directory) && !directory.isBlank() && !distributed) {
+      String name = CacheShards.address("cache", shard, config().getInteger(CacheShards.SHARDS, 1));
+      this.snapshot = new CacheSnapshot(vertx, Paths.get(directory, name + ".snapshot"));
+    }
+
+    // The cache is warmed up from the snapshot before anyone can reach it
+    restoreSnapshot()
+        .compose(
+            ignore -> {
+              if (config().getBoolean(SharedCaches.DIRECT_ACCESS, false)) {
+                publishCache(cache);
+              }
+              return registerEventBusHandlers();
+            })
+        .onSuccess(ignore -> scheduleSnapshots())
+        .onComplete(startPromise);
+  }
+
+  /**
+   * Load a cache implementation
+   *
+   * @param implementation The simple class name of the implementation, or null for the first one
+   *     found
+   * @return The cache, or null if there is no such implementation
+   */
+  @SuppressWarnings("unchecked")
+  private static Cache<JsonObject> loadCache(String implementation) {
+    if (implementation == null || implementation.isBlank()) {
+      return ServiceHelper.loadFactoryOrNull(Cache.class);
+    }
+    return ServiceHelper.loadFactories(Cache.class).stream()
+        .filter(cache -> cache.getClass().getSimpleName().equals(implementation))
+        .findFirst()
+        .orElse(null);
+  }
+
+  @Override
+  public void stop(Promise<Void> stopPromise) {
+    SharedCaches.withdraw(vertx, shard);
+    preProcessors.close();
+    Stream.of(DEPTH, DRAINED, REJECTED).map(this::metricName).forEach(metrics()::remove);
+    removeCacheMetrics();
+    if (!ingestQueue.isEmpty()) {
+      log.warn("Shard {} stopped with {} entities left in the queue", shard, ingestQueue.depth());
+    }
+
+    // Wait for a periodic snapshot that is being written, then write the last one
+    vertx.cancelTimer(snapshotTimer);
+    Future<Void> previous = writing == null ? succeededFuture() : writing;
+    previous
+        .transform(ignore -> writeSnapshot())
+        .onComplete(ignore -> stopPromise.complete());
+  }
+
+  /**
+   * Add the entities of the snapshot to the cache, if there is one. The snapshot is read in
+   * parallel chunks on worker threads, and added in order. A snapshot that can not be read is
+   * skipped, and the cache starts empty.
+   *
+   * @return A future that completes when the cache is restored
+   */
+  private Future<Void> restoreSnapshot() {
+    if (snapshot == null) {
+      return succeededFuture();
+    }
+    long start = System.nanoTime();
+    return snapshot
+        .read()
+        .compose(entities -> entityCache.addAll(entities).map(entities.size()))
+        .onSuccess(
+            restored ->
+                log.info(
+                    "Shard {} restored {} entities from {} in {} ms",
+                    shard,
+                    restored,
+                    snapshot.path(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)))
+        .<Void>mapEmpty()
+        .recover(
+            throwable -> {
+              log.warn("Shard {} could not restore {}", shard, snapshot.path(), throwable);
+              return succeededFuture();
+            });
+  }
+
+  /** Write a snapshot periodically, when entities were added since the last one */
+  private void scheduleSnapshots() {
+    if (snapshot != null) {
+      long interval = config().getLong(CacheSnapshot.INTERVAL, CacheSnapshot.DEFAULT_INTERVAL);
+      snapshotTimer =
+          vertx.setPeriodic(
+              interval,
+              timerId -> {
+                if (writing == null || writing.isComplete()) {
+                  writeSnapshot();
+                }
+              });
+    }
+  }
+
+  /**
+   * Write a snapshot of all entities in the cache, unless nothing was added since the last one.
+   * Only the entities are collected on the event loop, they are encoded and written on a worker.
+   *
+   * @return A future that completes when the snapshot is written, or a failure
+   */
+  private Future<Void> writeSnapshot() {
+    if (snapshot == null || !dirty) {
+      return succeededFuture();
+    }
+    dirty = false;
+    writing =
+        collect(new ArrayList<>(), null)
+            .compose(snapshot::write)
+            .onSuccess(ignore -> log.debug("Shard {} wrote {}", shard, snapshot.path()))
+            .onFailure(
+                throwable -> {
+                  // Try again next time
+                  dirty = true;
+                  log.warn("Shard {} could not write {}", shard, snapshot.path(), throwable);
+                });
+    return writing;
+  }
+
+  /**
+   * Collect all entities in the cache, a chunk at a time. Other events on the event loop run
+   * between the chunks, since retrieving the entities may be costly, e.g decoding them from an
+   * {@link OffHeapCache}. Entities added meanwhile are collected as well, since they are added
+   * after the cursor.
+   *
+   * @param collected The entities collected so far
+   * @param cursor The cursor to continue after, or null to start from the beginning
+   * @return The future containing all entities in order, or a failure
+   */
+  private Future<List<JsonObject>> collect(List<JsonObject> collected, String cursor) {
+    return entityCache
+        .entities(CacheSnapshot.CHUNK_SIZE, cursor)
+        .compose(
+            page -> {
+              page.entities().forEach(entity -> collected.add((JsonObject) entity));
+              if (!page.hasMore()) {
+                return succeededFuture(collected);
+              }
+              Promise<List<JsonObject>> next = Promise.promise();
+              context.runOnContext(v -> collect(collected, page.cursor()).onComplete(next));
+              return next.future();
+            });
+  }
+
+  /**
+   * Expose the depth of the ingest queue, and the rates that entities are drained and rejected at.
+   * The names carry the shard, e.g 'cache.ingest.depth.0', when the cache is partitioned.
+   */
+  private void registerMetrics(Cache<JsonObject> cache) {
+    MetricRegistry registry = metrics();
+    String depth = metricName(DEPTH);
+    registry.remove(depth);
+    registry.register(depth, (Gauge<Integer>) ingestQueue::depth);
+    this.drained = registry.meter(metricName(DRAINED));
+    this.rejected = registry.meter(metricName(REJECTED));
+
+    // Caches that count their hits and evictions export them as 'cache[.shard].<name>'
+    if (cache instanceof MetricSet) {
+      this.cacheMetrics = (MetricSet) cache;
+      removeCacheMetrics();
+      registry.register(cacheMetricsPrefix(), cacheMetrics);
+    }
+  }
+
+  private void removeCacheMetrics() {
+    if (cacheMetrics != null) {
+      String prefix = cacheMetricsPrefix();
+      cacheMetrics.getMetrics().keySet().forEach(name -> metrics().remove(prefix + "." + name));
+    }
+  }
+
+  private String cacheMetricsPrefix() {
+    return CacheShards.address("cache", shard, config().getInteger(CacheShards.SHARDS, 1));
+  }
+
+  private String metricName(String name) {
+    return CacheShards.address(
+        INGEST_METRICS + name, shard, config().getInteger(CacheShards.SHARDS, 1));
+  }
+
+  private static MetricRegistry metrics() {
+    return SharedMetricRegistries.getOrCreate(MetricsSupport.DEFAULT_REGISTRY_NAME);
+  }
+
+  /**
+   * Let handlers on this node read from the cache in-process, without the eventbus hop. This is
+   * only possible when the cache implementation is thread-safe.
+   *
+   * @param implementation The cache implementation, that must be thread-safe to be published
+   */
+  private void publishCache(Cache<JsonObject> implementation) {
+    if (implementation instanceof Shareable) {
+      SharedCaches.publish(vertx, shard, (SnapshotCache) entityCache);
+      log.debug("Cache for shard {} is accessible in-process", shard);
+    } else {
+      log.warn(
+          "Direct access requested, but {} is not thread-safe; falling back to the eventbus",
+          implementation.getClass().getSimpleName());
+    }
   }
 
   /**
    * Register consumers, eventbus handlers, that listen on addresses (e.g topics). A consumer can be
    * cluster-wide (reachable from all nodes), or it can be local (localConsumer).
    *
+   * <p>When the cache is partitioned, every shard listens on its own set of addresses.
+   *
    * <p>A good/practical convention is to always return futures, as it makes all code behave
    * "similar".
    *
    * @return A future containing the result, or a failure
    */
   private Future<Void> registerEventBusHandlers() {
-    vertx.eventBus().consumer(Cache.ADD_TO_CACHE, this::addToCache);
-    vertx.eventBus().consumer(Cache.RETRIEVE_FROM_CACHE, this::retrieveFromCache);
+    int shards = config().getInteger(CacheShards.SHARDS, 1);
+    vertx
+        .eventBus()
+        .consumer(CacheShards.address(Cache.ADD_TO_CACHE, shard, shards), this::addToCache);
+    vertx
+        .eventBus()
+        .consumer(
+            CacheShards.address(Cache.RETRIEVE_FROM_CACHE, shard, shards),
+            this::retrieveFromCache);
+    vertx
+        .eventBus()
+        .consumer(CacheShards.address(Cache.ADD_ALL_TO_CACHE, shard, shards), this::addAllToCache);
+    vertx
+        .eventBus()
+        .consumer(CacheShards.address(Cache.QUERY_CACHE, shard, shards), this::queryCache);
+    vertx
+        .eventBus()
+        .consumer(
+            CacheShards.address(Cache.VERSION_OF_CACHE, shard, shards), this::versionOfCache);
     return succeededFuture();
   }
 
-  /** @param message The eventbus message */
+  /**
+   * Reply with the version of the entities, which is much cheaper than to retrieve them, for the
+   * handlers to tell if the entities a client has already seen are still the latest
+   *
+   * @param message The eventbus message, without a body of relevance, answered with the epoch of
+   *     the version in a header if the cache has one, see {@link Cache#epoch()}
+   */
+  private void versionOfCache(Message<JsonObject> message) {
+    entityCache
+        .version()
+        .onSuccess(
+            version -> {
+              DeliveryOptions options = new DeliveryOptions();
+              if (nonNull(entityCache.epoch())) {
+                options.addHeader(Cache.EPOCH, entityCache.epoch());
+              }
+              message.reply(version, options);
+            })
+        .onFailure(throwable -> message.fail(500, throwable.getMessage()));
+  }
+
+  /**
+   * Retrieve a page of entities. The limit is pushed down to the cache, so that only the entities
+   * on the page are ever copied.
+   *
+   * @param message The eventbus message
+   */
   private void retrieveFromCache(Message<JsonObject> message) {
     // In this method, we dont send anything of relevance upon retrieve in the message body
 
-    String maxString = Optional.ofNullable(message.headers().get("max")).orElse("10");
-    int max = Integer.parseInt(maxString);
+    int limit =
+        Optional.ofNullable(message.headers().get(Cache.LIMIT))
+            .map(Integer::parseInt)
+            .orElse(Cache.DEFAULT_LIMIT);
+    String cursor = message.headers().get(Cache.CURSOR);
 
-    entityCache
-        .retrieve()
-        .map(JsonArray::stream)
-        .map(stream -> stream.limit(max).collect(JsonArray::new, JsonArray::add, JsonArray::addAll))
-        .onSuccess(slice -> message.reply(slice)); // no lambda, for clarity
+    Future<Page> page;
+    try {
+      page = entityCache.retrieve(limit, cursor);
+    } catch (IllegalArgumentException e) {
+      message.fail(400, e.getMessage());
+      return;
+    }
+
+    // The page is passed by reference to the handler, see PageCodec
+    page.onSuccess(slice -> message.reply(slice)) // no lambda, for clarity
+        .onFailure(throwable -> message.fail(500, throwable.getMessage()));
   }
 
   /**
-   * A Handler method that adds an entity to our cache.
+   * Query a page of entities, from the indexes of the cache. The query is the message body, and the
+   * limit and cursor are headers, like for a retrieve.
    *
-   * <p>In this example, a small random delay is introduced to show some resemblance to a real
-   * system.
+   * @param message The eventbus message
+   */
+  private void queryCache(Message<JsonObject> message) {
+    int limit =
+        Optional.ofNullable(message.headers().get(Cache.LIMIT))
+            .map(Integer::parseInt)
+            .orElse(Cache.DEFAULT_LIMIT);
+    String cursor = message.headers().get(Cache.CURSOR);
+
+    Future<Page> page;
+    try {
+      page = entityCache.query(new Query(message.body()), limit, cursor);
+    } catch (IllegalArgumentException | ClassCastException e) {
+      message.fail(400, e.getMessage());
+      return;
+    }
+
+    page.onSuccess(message::reply)
+        .onFailure(
+            throwable ->
+                message.fail(
+                    throwable instanceof UnsupportedOperationException ? 501 : 500,
+                    throwable.getMessage()));
+  }
+
+  /**
+   * A Handler method that adds an entity to our cache.
    *
-   * <p>Another important part is the way the method is broken down to ease readability, which
-   * otherwise suffer from the callbacks stacking up.
+   * <p>The entity is queued for pre-processing, see {@link #ingest(Message, List, Object)}.
    *
    * @param message The eventbus message
    */
   private void addToCache(Message<JsonObject> message) {
-    JsonObject entity = message.body();
+    /*
+      Note that we can reply with any other object-type than handler received.
+      With great power comes great responsibility.
 
+      JsonObject is a convenient convention to pass around!
+    */
     String successMessage = "OK - this will not reach the HTTP client.. we ignore it in Handler";
 
+    ingest(message, List.of(message.body()), successMessage);
+  }
+
+  /**
+   * A Handler method that adds a batch of entities to our cache. The whole batch is queued, and
+   * replied to, as one.
+   *
+   * @param message The eventbus message, with the batch of entities
+   */
+  private void addAllToCache(Message<JsonArray> message) {
+    List<JsonObject> entities =
+        message.body().stream().map(JsonObject.class::cast).collect(toList());
+
+    ingest(message, entities, entities.size());
+  }
+
+  /**
+   * Queue entities for pre-processing and insertion. If the queue is full, the message is failed
+   * right away with 503, so that the sender can back off instead of waiting for a timeout.
+   *
+   * <p>Depending on the acknowledgement mode, the sender gets the reply as soon as the entities
+   * are queued (write-behind), or once they are added to the cache.
+   *
+   * @param message The eventbus message to reply to
+   * @param entities The entities to add
+   * @param reply The reply on success
+   */
+  private void ingest(Message<?> message, List<JsonObject> entities, Object reply) {
+    // Traced from queued to committed, when the message is part of a sampled trace
+    Span span = Tracer.shared().span("cache.ingest");
+    IngestQueue.Batch batch = new IngestQueue.Batch(entities, span);
+    if (!ingestQueue.offer(batch)) {
+      rejected.mark(entities.size());
+      if (span != null) {
+        span.tag("rejected", true).end();
+      }
+      message.fail(503, "The ingest queue is full, retry later");
+      return;
+    }
+
+    if (ack == IngestQueue.Ack.ENQUEUE) {
+      message.reply(reply);
+      batch
+          .committed()
+          .future()
+          .onFailure(
+              throwable -> log.error("Lost {} acknowledged entities", entities.size(), throwable));
+    } else {
+      batch
+          .committed()
+          .future()
+          .onSuccess(ignore -> message.reply(reply))
+          /*
+          You CAN fail the usual way, with message.fail(..), and most of the time that is
+          sufficient. This shows an alternative approach, where you can add debug information back
+          in the response. Message will still end up failed, but you can get custom info
+          back from the error when you inspect the reply..
+          Tip; import static.. or method to return Handler<Throwable> ?
+           */
+          .onFailure(
+              throwable ->
+                  HelperUtils.manageFailure(message, throwable, WebEnvironment.development()));
+    }
+
+    drain();
+  }
+
+  /**
+   * Drain the queue, one round at a time. Every round takes up to {@link #DRAIN_SIZE} entities from
+   * the queue, and then the next round starts when they are added to the cache. Only one round is
+   * in progress at any time.
+   *
+   * <p>In this example, a small random delay is introduced per round to show some resemblance to a
+   * real system.
+   */
+  private void drain() {
+    if (draining || ingestQueue.isEmpty()) {
+      return;
+    }
+    draining = true;
+    List<IngestQueue.Batch> batches = ingestQueue.poll(DRAIN_SIZE);
+
     vertx.setTimer(
         delay(),
         timerId ->
-            apply(preProcessors, entity)
-                // If all went well, add the result to cache
-                // The result is the composite result of all futures we got from all pre-processors
-                .onSuccess(compositeIgnored -> entityCache.add(entity))
-                .onSuccess(
-                    compositeIgnored ->
-                        /*
-                          Note that we can reply with any other object-type than handler received.
-                          With great power comes great responsibility.
-
-                          JsonObject is a convenient convention to pass around!
-                        */
-                        message.reply(successMessage))
-                .onFailure(throwable -> message.fail(500, throwable.getMessage()))
-                /*
-                You CAN fail the usual way, as above, and most of the time that is sufficient.
-                This shows an alternative approach, where you can add debug information back
-                in the response. Message will still end up failed, but you can get custom info
-                back from the error when you inspect the reply..
-                Tip; import static.. or method to return Handler<Throwable> ?
-                 */
-                .onFailure(
-                    throwable ->
-                        HelperUtils.manageFailure(
-                            message, throwable, WebEnvironment.development())));
-  }
-
-  /**
-   * This method has side-effects (modifying 'entity'), but in Vert.x this is thread-safe since the
-   * very same thread will always execute the code in a verticle.
-   *
-   * @param entity The entity to process
-   * @return The processed entity
-   */
-  private Future<JsonObject> apply(Collection<PreProcessor> processors, JsonObject entity) {
-    return CompositeFuture.all(
-            // Apply all pre-processors to our entity
-            processors.stream()
-                .map(processor -> applyProcessor(processor, entity))
-                .collect(toList()))
-        .map(entity);
-  }
-
-  /**
-   * Apply a single processor to the entity
-   *
-   * @param processor The processor to apply
-   * @param entity The entity to apply processing to
-   * @return The future containing the result of the processing, or a failure
-   */
-  private Future<JsonObject> applyProcessor(PreProcessor processor, JsonObject entity) {
-    return processor
-        .apply(entity)
-        .onSuccess(
-            ignore ->
-                log.info("Applied processor {} to entity", processor.getClass().getSimpleName()));
+            commit(batches)
+                .onComplete(
+                    ignore -> {
+                      draining = false;
+                      drain();
+                    }));
+  }
+
+  /**
+   * Pre-process and add the batches to the cache. The batches are committed one by one, so that a
+   * failure in one batch does not fail the others.
+   *
+   * @param batches The batches to commit
+   * @return A future that completes when all batches are committed, successfully or not
+   */
+  @SuppressWarnings("rawtypes")
+  private Future<Void> commit(List<IngestQueue.Batch> batches) {
+    List<Future> commits = new ArrayList<>(batches.size());
+    for (IngestQueue.Batch batch : batches) {
+      Future<Integer> commit =
+          batch.span() == null
+              ? process(batch.entities())
+                  // If all went well, add the result to cache
+                  .compose(entities -> entityCache.addAll(entities).map(entities.size()))
+              : traced(batch.entities(), batch.span());
+      commits.add(
+          commit
+              .onSuccess(drained::mark)
+              .onSuccess(ignore -> dirty = true)
+              .<Void>mapEmpty()
+              .onComplete(batch.committed()));
+    }
+    return CompositeFuture.join(commits).mapEmpty();
+  }
+
+  /**
+   * Commit a traced batch. The time in the queue, including the delay, the pre-processing of the
+   * first entity and the add to the cache are traced in spans of their own.
+   *
+   * @param entities The entities to commit
+   * @param span The span of the batch, that is ended once the batch is committed
+   * @return A future containing the number of committed entities, or a failure
+   */
+  @SuppressWarnings("rawtypes")
+  private Future<Integer> traced(List<JsonObject> entities, Span span) {
+    span.child("cache.queued", span.startNanos()).end();
+
+    // Only the first entity is traced, which is all of them for a single add
+    List<Future> processed = new ArrayList<>(entities.size());
+    for (int i = 0; i < entities.size(); i++) {
+      processed.add(preProcessors.apply(entities.get(i), i == 0 ? span : null));
+    }
+
+    return CompositeFuture.all(processed)
+        .map(CompositeFuture::<JsonObject>list)
+        .compose(
+            list -> {
+              Span add = span.child("cache.add");
+              return entityCache.addAll(list).onComplete(ignore -> add.end()).map(list.size());
+            })
+        .onComplete(result -> span.tag("entities", entities.size()).end());
+  }
+
+  /**
+   * Apply the pre-processors to a batch of entities. When all processors are synchronous, this is
+   * done in a plain loop, otherwise every entity goes through the pipeline on its own.
+   *
+   * @param entities The entities to process
+   * @return The future containing the processed entities, in order, or a failure
+   */
+  private Future<List<JsonObject>> process(List<JsonObject> entities) {
+    if (preProcessors.isSynchronous()) {
+      try {
+        List<JsonObject> processed = new ArrayList<>(entities.size());
+        for (JsonObject entity : entities) {
+          processed.add(preProcessors.process(entity));
+        }
+        return succeededFuture(processed);
+      } catch (RuntimeException e) {
+        return failedFuture(e);
+      }
+    }
+
+    @SuppressWarnings("rawtypes")
+    List<Future> processed = entities.stream().map(preProcessors::apply).collect(toList());
+    // The result is the composite result of all futures we got from the pipeline
+    return CompositeFuture.all(processed).map(CompositeFuture::list);
   }
 
   /** @return a random long between 100 and 350. */
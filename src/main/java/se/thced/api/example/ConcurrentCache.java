@@ -0,0 +1,72 @@
+package se.thced.api.example;
+
+import static io.vertx.core.Future.succeededFuture;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe implementation of a cache, that can be shared by all verticles on the same node
+ *
+ * <p>Entities are kept in insertion order in a lock-free skip list, and the oldest entities are
+ * evicted once the capacity is exceeded. Since the cache is {@link Shareable} it can be put on a
+ * Vert.x local map and accessed in-process, without the eventbus hop, see {@link SharedCaches}.
+ *
+ * <p>Queries are answered by skipping the entities that do not match, from the cursor on, rather
+ * than from secondary indexes, since those could not be kept up to date without a lock. The cost
+ * of a query is thereby bounded by the capacity, which is small.
+ *
+ * @see Cache
+ * @author thced
+ */
+public class ConcurrentCache implements Cache<JsonObject>, Shareable {
+
+  private static final int CAPACITY = 1_000;
+
+  private final AtomicLong counter = new AtomicLong(1);
+  private final AtomicLong version = new AtomicLong();
+  private final AtomicInteger size = new AtomicInteger();
+  private final ConcurrentNavigableMap<Long, JsonObject> cache = new ConcurrentSkipListMap<>();
+  private final int capacity;
+
+  public ConcurrentCache() {
+    this(CAPACITY);
+  }
+
+  ConcurrentCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public Future<Page> retrieve(int limit, String cursor) {
+    return succeededFuture(Page.slice(cache, limit, cursor));
+  }
+
+  @Override
+  public Future<Page> query(Query query, int limit, String cursor) {
+    return succeededFuture(Page.slice(cache, query::matches, limit, cursor));
+  }
+
+  @Override
+  public Future<Long> version() {
+    return succeededFuture(version.get());
+  }
+
+  @Override
+  public Future<Void> add(JsonObject entity) {
+    cache.put(counter.getAndIncrement(), entity);
+    // Every add evicts at most one (the eldest) entry, which keeps the size at the capacity also
+    // when there are concurrent writers
+    if (size.incrementAndGet() > capacity && cache.pollFirstEntry() != null) {
+      size.decrementAndGet();
+    }
+    // Bumped once the entity can be retrieved, the key is taken before that
+    version.incrementAndGet();
+    return succeededFuture();
+  }
+}
@@ -0,0 +1,201 @@
+package se.thced.api.example;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.LongFunction;
+import java.util.stream.LongStream;
+
+/**
+ * Secondary indexes of the entities in a cache, that answer a {@link Query} without scanning the
+ * cache: a hash index on 'gender' and one on 'name', and a sorted index on 'age'. Every index maps
+ * a value to the keys of the entities with that value, in key order, i.e insertion order.
+ *
+ * <p>A query is driven by the index that is expected to yield the fewest keys, and the other
+ * conditions are checked on the entities it yields. The keys are iterated from the cursor on, and
+ * the iteration stops at the limit, so the cost of a query grows with the size of the result and
+ * the selectivity of its best index, not with the size of the cache. The age index yields the keys
+ * of all ages in the range, merged into key order.
+ *
+ * <p>The cache must keep the indexes up to date, by adding every entity that it adds, and removing
+ * every entity that it evicts.
+ *
+ * <p>Note! The index is not thread-safe, it is owned by the cache.
+ *
+ * @author thced
+ */
+final class EntityIndex {
+
+  private final Map<String, NavigableSet<Long>> genders = new HashMap<>();
+  private final Map<String, NavigableSet<Long>> names = new HashMap<>();
+  private final NavigableMap<Integer, NavigableSet<Long>> ages = new TreeMap<>();
+
+  /**
+   * @param key The key of an entity that is added to the cache
+   * @param entity The entity
+   */
+  void add(long key, JsonObject entity) {
+    Object gender = entity.getValue(Query.GENDER);
+    if (gender instanceof String) {
+      genders.computeIfAbsent((String) gender, value -> new TreeSet<>()).add(key);
+    }
+    Object name = entity.getValue(Query.NAME);
+    if (name instanceof String) {
+      names.computeIfAbsent((String) name, value -> new TreeSet<>()).add(key);
+    }
+    Object age = entity.getValue(Query.AGE);
+    if (age instanceof Number) {
+      ages.computeIfAbsent(((Number) age).intValue(), value -> new TreeSet<>()).add(key);
+    }
+  }
+
+  /**
+   * @param key The key of an entity that is evicted from the cache
+   * @param entity The entity, as it was added
+   */
+  void remove(long key, JsonObject entity) {
+    Object gender = entity.getValue(Query.GENDER);
+    if (gender instanceof String) {
+      remove(genders, (String) gender, key);
+    }
+    Object name = entity.getValue(Query.NAME);
+    if (name instanceof String) {
+      remove(names, (String) name, key);
+    }
+    Object age = entity.getValue(Query.AGE);
+    if (age instanceof Number) {
+      remove(ages, ((Number) age).intValue(), key);
+    }
+  }
+
+  /**
+   * Query the entities
+   *
+   * @param query The query, which must not be empty. Empty queries are answered by retrieve.
+   * @param limit The maximum number of entities on the page
+   * @param cursor The cursor to continue after, or null to start from the beginning
+   * @param entities Looks up the entity of a key in the cache
+   * @return The page of matching entities, in key order
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  Page query(Query query, int limit, String cursor, LongFunction<JsonObject> entities) {
+    long after = Page.position(cursor);
+    Iterator<Long> keys = plan(query, after);
+
+    JsonArray slice = new JsonArray();
+    LongStream.Builder matches = LongStream.builder();
+    long last = 0L;
+    while (slice.size() < limit && keys.hasNext()) {
+      long key = keys.next();
+      JsonObject entity = entities.apply(key);
+      if (entity != null && query.matches(entity)) {
+        slice.add(entity);
+        last = key;
+        matches.add(key);
+      }
+    }
+
+    // There may be more keys than matches left, so the last page can be empty
+    String next = !slice.isEmpty() && keys.hasNext() ? String.valueOf(last) : null;
+    return new Page(slice, matches.build().toArray(), next);
+  }
+
+  /** @return The keys after the cursor from the most selective index, in key order */
+  private Iterator<Long> plan(Query query, long after) {
+    NavigableSet<Long> best = null;
+    if (query.gender() != null) {
+      best = genders.getOrDefault(query.gender(), Collections.emptyNavigableSet());
+    }
+    if (query.name() != null) {
+      NavigableSet<Long> byName = names.getOrDefault(query.name(), Collections.emptyNavigableSet());
+      best = best == null || byName.size() < best.size() ? byName : best;
+    }
+
+    if (query.hasAge() && query.minAge() <= query.maxAge()) {
+      NavigableMap<Integer, NavigableSet<Long>> range =
+          ages.subMap(query.minAge(), true, query.maxAge(), true);
+      // Counting the keys of the range costs one step per age, not per entity
+      if (best == null || count(range, best.size()) < best.size()) {
+        return new MergingIterator(range, after);
+      }
+    } else if (query.hasAge()) {
+      return Collections.emptyIterator();
+    }
+    return best.tailSet(after, false).iterator();
+  }
+
+  /** @return The number of keys in the range, or the bound if there are more */
+  private static long count(NavigableMap<Integer, NavigableSet<Long>> range, int bound) {
+    long count = 0;
+    for (NavigableSet<Long> keys : range.values()) {
+      count += keys.size();
+      if (count >= bound) {
+        return count;
+      }
+    }
+    return count;
+  }
+
+  private static <V> void remove(Map<V, NavigableSet<Long>> index, V value, long key) {
+    NavigableSet<Long> keys = index.get(value);
+    if (keys != null && keys.remove(key) && keys.isEmpty()) {
+      index.remove(value);
+    }
+  }
+
+  /** Merges the keys of many index entries, each in key order, into one iteration in key order */
+  private static final class MergingIterator implements Iterator<Long> {
+
+    private final PriorityQueue<Cursor> cursors =
+        new PriorityQueue<>((left, right) -> Long.compare(left.head, right.head));
+
+    private MergingIterator(NavigableMap<Integer, NavigableSet<Long>> entries, long after) {
+      for (NavigableSet<Long> keys : entries.values()) {
+        Iterator<Long> iterator = keys.tailSet(after, false).iterator();
+        if (iterator.hasNext()) {
+          cursors.add(new Cursor(iterator));
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !cursors.isEmpty();
+    }
+
+    @Override
+    public Long next() {
+      Cursor cursor = cursors.poll();
+      if (cursor == null) {
+        throw new NoSuchElementException();
+      }
+      long key = cursor.head;
+      if (cursor.iterator.hasNext()) {
+        cursor.head = cursor.iterator.next();
+        cursors.add(cursor);
+      }
+      return key;
+    }
+  }
+
+  /** The next key of one index entry */
+  private static final class Cursor {
+
+    private final Iterator<Long> iterator;
+    private long head;
+
+    private Cursor(Iterator<Long> iterator) {
+      this.iterator = iterator;
+      this.head = iterator.next();
+    }
+  }
+}
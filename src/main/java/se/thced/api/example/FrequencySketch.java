@@ -0,0 +1,112 @@
+package se.thced.api.example;
+
+/**
+ * A Count-Min sketch that estimates how often an item was seen recently, for the TinyLFU admission
+ * of {@link TinyLfuCache}
+ *
+ * <p>Every item is counted in four 4-bit counters, picked by four hash functions, and its
+ * frequency is the lowest of them. Sixteen counters are packed into each long, so the sketch takes
+ * half a byte per counter. When the number of increments reaches ten times the size of the table,
+ * all counters are halved. Old popularity thereby fades out, and the counters never saturate for
+ * long.
+ *
+ * <p>Note! The sketch is not thread-safe.
+ *
+ * @author thced
+ */
+final class FrequencySketch {
+
+  /** The highest count a counter can hold */
+  static final int MAX_FREQUENCY = 15;
+
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+
+  /** Clears the highest bit of every counter, after a shift right by one */
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private static final int MIN_SIZE = 16;
+
+  private long[] table = new long[0];
+  private int sampleSize;
+  private int additions;
+
+  /** @param expectedItems The number of distinct items that are expected to be counted */
+  FrequencySketch(int expectedItems) {
+    ensureCapacity(expectedItems);
+  }
+
+  /**
+   * Grow the sketch for more items. The counts are lost when it grows.
+   *
+   * @param expectedItems The number of distinct items that are expected to be counted
+   */
+  void ensureCapacity(int expectedItems) {
+    int size = Integer.highestOneBit(Math.max(MIN_SIZE, expectedItems) - 1) << 1;
+    if (table.length >= size) {
+      return;
+    }
+    table = new long[size];
+    sampleSize = 10 * size;
+    additions = 0;
+  }
+
+  /**
+   * @param hash The hash code of the item
+   * @return The estimated number of times the item was seen, at most {@link #MAX_FREQUENCY}
+   */
+  int frequency(int hash) {
+    int spread = spread(hash);
+    int start = (spread & 3) << 2;
+    int frequency = MAX_FREQUENCY;
+    for (int i = 0; i < SEEDS.length; i++) {
+      int shift = (start + i) << 2;
+      frequency = Math.min(frequency, (int) ((table[indexOf(spread, i)] >>> shift) & 0xf));
+    }
+    return frequency;
+  }
+
+  /**
+   * Count one occurrence of an item
+   *
+   * @param hash The hash code of the item
+   */
+  void increment(int hash) {
+    int spread = spread(hash);
+    int start = (spread & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      int index = indexOf(spread, i);
+      int shift = (start + i) << 2;
+      if (((table[index] >>> shift) & 0xf) < MAX_FREQUENCY) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++additions == sampleSize) {
+      reset();
+    }
+  }
+
+  /** Halve all counters, so that the sketch favours what was seen recently */
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions /= 2;
+  }
+
+  private int indexOf(int item, int i) {
+    long hash = (item + SEEDS[i]) * SEEDS[i];
+    hash += hash >>> 32;
+    return (int) hash & (table.length - 1);
+  }
+
+  /** Spread poor hash codes, e.g of small integers, over all bits */
+  private static int spread(int hash) {
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    return (hash >>> 16) ^ hash;
+  }
+}
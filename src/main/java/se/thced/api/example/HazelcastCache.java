@@ -0,0 +1,462 @@
+package se.thced.api.example;
+
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+
+import com.hazelcast.config.IndexType;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastJsonValue;
+import com.hazelcast.cp.IAtomicLong;
+import com.hazelcast.cp.IAtomicReference;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+import com.hazelcast.query.QueryConstants;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Implementation of a cache that is distributed over the cluster, so that all nodes see the same
+ * entities whichever node they were added on
+ *
+ * <p>The entities are kept as JSON in a partitioned Hazelcast map, keyed by a cluster-wide
+ * sequence. The keys are thereby dense and in insertion order, which makes a page a range of keys,
+ * and eviction a matter of removing the key that falls out of the capacity when a new one is added.
+ *
+ * <p>Reads are served from a bounded local near-cache, and only the entities missing from it are
+ * fetched from the cluster. Every node listens to the map, and the events are used both to learn
+ * about entities added on other nodes and to invalidate removed ones. The events are delivered
+ * asynchronously, so the contents are eventually consistent: an entity added on another node shows
+ * up once its event has arrived, which takes no more than a network hop.
+ *
+ * <p>Queries are run by the members of the cluster, on the entities of their partitions, from
+ * indexes of the map on the same fields as {@link EntityIndex}. Only the keys of the matching
+ * entities are returned, and the entities on the page are then read like those of a retrieve.
+ *
+ * <p>When the cache is partitioned, every shard has a map and a sequence of its own, so that an
+ * entity is only in the shard it is routed to. The capacities are configured from the verticle
+ * configuration, see {@link #configure(JsonObject)}.
+ *
+ * <p>The cache uses the Hazelcast instance of the cluster manager, and is only usable when Vert.x
+ * runs clustered with Hazelcast. It connects to the cluster on first use.
+ *
+ * @see Cache
+ * @author thced
+ */
+public class HazelcastCache implements Cache<JsonObject> {
+
+  /** Available in config.properties */
+  static final String CAPACITY = "CACHE_DISTRIBUTED_CAPACITY";
+
+  /** Available in config.properties */
+  static final String NEAR_CACHE_CAPACITY = "CACHE_NEAR_CACHE_CAPACITY";
+
+  static final String MAP = "cache.entities";
+
+  static final String SEQUENCE = "cache.sequence";
+
+  /** The epoch of the versions of all shards, which lives as long as the sequences */
+  static final String EPOCH = "cache.epoch";
+
+  static final int DEFAULT_CAPACITY = 1_000;
+
+  static final int DEFAULT_NEAR_CACHE_CAPACITY = 256;
+
+  private int capacity;
+  private int nearCacheCapacity;
+
+  /** The names of the map and the sequence of the shard */
+  private String mapName = MAP;
+
+  private String sequenceName = SEQUENCE;
+
+  /** The entities recently read or added on this node, by key */
+  private final ConcurrentNavigableMap<Long, JsonObject> nearCache = new ConcurrentSkipListMap<>();
+
+  /** The highest key known to this node */
+  private final AtomicLong latest = new AtomicLong();
+
+  /** The epoch of the cluster, once connected */
+  private volatile String epoch;
+
+  private HazelcastInstance instance;
+  private IMap<Long, HazelcastJsonValue> map;
+  private IAtomicLong sequence;
+  private volatile Future<Void> connected;
+
+  public HazelcastCache() {
+    this(null, DEFAULT_CAPACITY, DEFAULT_NEAR_CACHE_CAPACITY);
+  }
+
+  /**
+   * @param instance The Hazelcast instance, or null for the one of the cluster manager
+   * @param capacity The maximum number of entities in the cluster
+   * @param nearCacheCapacity The maximum number of entities kept locally
+   */
+  HazelcastCache(HazelcastInstance instance, int capacity, int nearCacheCapacity) {
+    this.instance = instance;
+    this.capacity = capacity;
+    this.nearCacheCapacity = nearCacheCapacity;
+  }
+
+  /**
+   * Configure the capacities, and the shard, which must be done before the cache is used
+   *
+   * @param config The configuration of the verticle that owns the cache
+   */
+  @Override
+  public void configure(JsonObject config) {
+    if (connected != null) {
+      throw new IllegalStateException("The cache is already connected");
+    }
+    capacity = config.getInteger(CAPACITY, capacity);
+    nearCacheCapacity = config.getInteger(NEAR_CACHE_CAPACITY, nearCacheCapacity);
+    int shard = config.getInteger(CacheShards.SHARD, 0);
+    int shards = config.getInteger(CacheShards.SHARDS, 1);
+    mapName = CacheShards.address(MAP, shard, shards);
+    sequenceName = CacheShards.address(SEQUENCE, shard, shards);
+  }
+
+  @Override
+  public boolean isDistributed() {
+    return true;
+  }
+
+  @Override
+  public Future<Page> retrieve(int limit, String cursor) {
+    long after;
+    try {
+      after = Page.position(cursor);
+    } catch (IllegalArgumentException e) {
+      return failedFuture(e);
+    }
+    return connect().compose(ignore -> page(limit, after));
+  }
+
+  /**
+   * Query the entities of the cluster. The members are queried on a worker thread, since Hazelcast
+   * only queries a map synchronously.
+   */
+  @Override
+  public Future<Page> query(Query query, int limit, String cursor) {
+    if (query.isEmpty()) {
+      return retrieve(limit, cursor);
+    }
+    long after;
+    try {
+      after = Page.position(cursor);
+    } catch (IllegalArgumentException e) {
+      return failedFuture(e);
+    }
+    return connect()
+        .compose(ignore -> blocking(() -> map.keySet(predicate(query, after))))
+        .compose(
+            matching -> {
+              // The keys before the capacity are about to be removed
+              long eldest = eldest(latest.get());
+              List<Long> keys =
+                  matching.stream()
+                      .filter(key -> key >= eldest)
+                      .sorted()
+                      .limit(limit + 1L)
+                      .collect(Collectors.toList());
+              if (keys.size() <= limit) {
+                return entities(keys, null);
+              }
+              keys = keys.subList(0, limit);
+              return entities(keys, Long.toString(keys.get(limit - 1)));
+            });
+  }
+
+  /**
+   * The highest key known to this node, which is the same cluster-wide once the events have
+   * arrived. An entity whose event arrives after one of a later key, or that is still being put,
+   * shows up without a new version, like it shows up late in a retrieve.
+   */
+  @Override
+  public Future<Long> version() {
+    return connect().map(ignore -> latest.get());
+  }
+
+  /**
+   * The epoch is set by the first node that connects, and lasts until the whole cluster is shut
+   * down, when the sequences start over
+   */
+  @Override
+  public String epoch() {
+    return epoch;
+  }
+
+  @Override
+  public Future<Void> add(JsonObject entity) {
+    return connect()
+        .compose(ignore -> future(sequence.incrementAndGetAsync()))
+        .compose(key -> put(Map.of(key, entity), key));
+  }
+
+  /** Reserves the keys of the whole batch at once, and puts the entities in one operation */
+  @Override
+  public Future<Void> addAll(Collection<JsonObject> entities) {
+    if (entities.isEmpty()) {
+      return succeededFuture();
+    }
+    return connect()
+        .compose(ignore -> future(sequence.addAndGetAsync(entities.size())))
+        .compose(
+            last -> {
+              Map<Long, JsonObject> batch = new HashMap<>();
+              long key = last - entities.size();
+              for (JsonObject entity : entities) {
+                batch.put(++key, entity);
+              }
+              return put(batch, last);
+            });
+  }
+
+  /** @return The number of entities in the near-cache */
+  int nearCacheSize() {
+    return nearCache.size();
+  }
+
+  private Future<Void> put(Map<Long, JsonObject> entities, long last) {
+    Map<Long, HazelcastJsonValue> encoded = new HashMap<>();
+    entities.forEach((key, entity) -> encoded.put(key, new HazelcastJsonValue(entity.encode())));
+    return future(map.putAllAsync(encoded))
+        .onSuccess(
+            ignore -> {
+              // The keys that fell out of the capacity, whichever node added them
+              for (long key : entities.keySet()) {
+                if (key > capacity) {
+                  map.removeAsync(key - capacity);
+                }
+              }
+              advance(last);
+              entities.forEach(this::cacheLocally);
+            });
+  }
+
+  private Future<Page> page(int limit, long after) {
+    long end = latest.get();
+    long from = Math.max(after + 1, eldest(end));
+    long to = Math.min(end, from + limit - 1);
+    List<Long> keys = LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    return entities(keys, to < end ? Long.toString(to) : null);
+  }
+
+  /**
+   * Read the entities of a page
+   *
+   * @param keys The keys of the entities, in order
+   * @param next The cursor to the next page, or null if this is the last page
+   * @return The future containing the page, without the entities that are missing
+   */
+  @SuppressWarnings("rawtypes")
+  private Future<Page> entities(List<Long> keys, String next) {
+    // Only the entities that are not cached locally are fetched, all at once
+    List<Future> entities = new ArrayList<>();
+    for (long key : keys) {
+      JsonObject cached = nearCache.get(key);
+      entities.add(cached != null ? succeededFuture(cached) : fetch(key));
+    }
+
+    return CompositeFuture.all(entities)
+        .map(
+            all -> {
+              JsonArray page = new JsonArray();
+              LongStream.Builder found = LongStream.builder();
+              for (int i = 0; i < all.size(); i++) {
+                JsonObject entity = all.resultAt(i);
+                // Missing if evicted meanwhile, or if the add of the key failed
+                if (entity != null) {
+                  page.add(entity);
+                  found.add(keys.get(i));
+                }
+              }
+              return new Page(page, found.build().toArray(), next);
+            });
+  }
+
+  private Future<JsonObject> fetch(long key) {
+    return future(map.getAsync(key))
+        .map(
+            json -> {
+              if (json == null) {
+                return null;
+              }
+              JsonObject entity = new JsonObject(json.toString());
+              cacheLocally(key, entity);
+              return entity;
+            });
+  }
+
+  private void cacheLocally(long key, JsonObject entity) {
+    if (key < eldest(latest.get())) {
+      return;
+    }
+    nearCache.put(key, entity);
+    // The size of a skip list is counted, but the near-cache is small. Pages are read from the
+    // eldest entity, so the newest entities are the ones that make room.
+    while (nearCache.size() > nearCacheCapacity) {
+      nearCache.pollLastEntry();
+    }
+  }
+
+  /** A key was added somewhere in the cluster, the entities before the capacity are evicted */
+  private void advance(long key) {
+    long end = latest.accumulateAndGet(key, Math::max);
+    nearCache.headMap(eldest(end)).clear();
+  }
+
+  private long eldest(long end) {
+    return Math.max(1, end - capacity + 1);
+  }
+
+  /**
+   * Connect to the cluster on first use, and learn about the entities that are already there. The
+   * cache is only used from the event loop of its verticle, but setting up the map waits on the
+   * cluster, so that is done on a worker.
+   */
+  private Future<Void> connect() {
+    if (connected == null) {
+      HazelcastInstance cluster = instance != null ? instance : clusterInstance();
+      if (cluster == null) {
+        return failedFuture(
+            new IllegalStateException("No Hazelcast instance, Vert.x must run clustered by it"));
+      }
+      String proposed = Long.toHexString(ThreadLocalRandom.current().nextLong());
+      connected =
+          blocking(() -> setUp(cluster))
+              .compose(
+                  epochs ->
+                      future(sequence.getAsync())
+                          .onSuccess(this::advance)
+                          .compose(ignore -> future(epochs.compareAndSetAsync(null, proposed)))
+                          .compose(ignore -> future(epochs.getAsync())))
+              .onSuccess(agreed -> epoch = agreed)
+              .mapEmpty();
+    }
+    return connected;
+  }
+
+  /**
+   * Set up the map, with its indexes and listener, and the sequence, which waits on the cluster
+   *
+   * @param cluster The Hazelcast instance
+   * @return The epoch of the cluster, which is set by the first node that connects
+   */
+  private IAtomicReference<String> setUp(HazelcastInstance cluster) {
+    instance = cluster;
+    map = cluster.getMap(mapName);
+    // Indexes are kept by the members, adding one that exists already is a no-op
+    map.addIndex(IndexType.HASH, Query.GENDER);
+    map.addIndex(IndexType.HASH, Query.NAME);
+    map.addIndex(IndexType.SORTED, Query.AGE);
+    map.addEntryListener(new Invalidation(), false);
+    sequence = cluster.getCPSubsystem().getAtomicLong(sequenceName);
+    return cluster.getCPSubsystem().getAtomicReference(EPOCH);
+  }
+
+  /** @return The Hazelcast instance of the cluster manager of the calling Vert.x, if any */
+  private static HazelcastInstance clusterInstance() {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      return null;
+    }
+    ClusterManager clusterManager = ((VertxInternal) context.owner()).getClusterManager();
+    return clusterManager instanceof HazelcastClusterManager
+        ? ((HazelcastClusterManager) clusterManager).getHazelcastInstance()
+        : null;
+  }
+
+  /** @return The matching keys after the cursor, all conditions of the query being given */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static Predicate<Long, HazelcastJsonValue> predicate(Query query, long after) {
+    List<Predicate> conditions = new ArrayList<>();
+    conditions.add(Predicates.greaterThan(QueryConstants.KEY_ATTRIBUTE_NAME.value(), after));
+    if (query.gender() != null) {
+      conditions.add(Predicates.equal(Query.GENDER, query.gender()));
+    }
+    if (query.name() != null) {
+      conditions.add(Predicates.equal(Query.NAME, query.name()));
+    }
+    if (query.hasAge()) {
+      conditions.add(Predicates.between(Query.AGE, query.minAge(), query.maxAge()));
+    }
+    return Predicates.and(conditions.toArray(new Predicate[0]));
+  }
+
+  /** Run a synchronous call on a worker thread of the caller, or right away without a context */
+  private static <T> Future<T> blocking(Callable<T> call) {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      try {
+        return succeededFuture(call.call());
+      } catch (Exception e) {
+        return failedFuture(e);
+      }
+    }
+    return context.executeBlocking(
+        promise -> {
+          try {
+            promise.complete(call.call());
+          } catch (Exception e) {
+            promise.fail(e);
+          }
+        },
+        false);
+  }
+
+  /** Complete on the context of the caller, since the stages complete on Hazelcast threads */
+  private static <T> Future<T> future(CompletionStage<T> stage) {
+    Context context = Vertx.currentContext();
+    return context != null
+        ? Future.fromCompletionStage(stage, context)
+        : Future.fromCompletionStage(stage);
+  }
+
+  /** Keeps the near-cache in line with the map, on the event threads of Hazelcast */
+  private final class Invalidation
+      implements EntryAddedListener<Long, HazelcastJsonValue>,
+          EntryRemovedListener<Long, HazelcastJsonValue>,
+          EntryEvictedListener<Long, HazelcastJsonValue> {
+
+    @Override
+    public void entryAdded(EntryEvent<Long, HazelcastJsonValue> event) {
+      advance(event.getKey());
+    }
+
+    @Override
+    public void entryRemoved(EntryEvent<Long, HazelcastJsonValue> event) {
+      nearCache.remove(event.getKey());
+    }
+
+    @Override
+    public void entryEvicted(EntryEvent<Long, HazelcastJsonValue> event) {
+      nearCache.remove(event.getKey());
+    }
+  }
+}
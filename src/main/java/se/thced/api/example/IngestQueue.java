@@ -0,0 +1,131 @@
+package se.thced.api.example;
+
+import se.thced.tracing.Span;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A bounded queue of entities waiting to be pre-processed and added to a {@link Cache}. It sits in
+ * front of the pre-processing in the {@link CacheVerticle}, so that an overloaded cache rejects new
+ * entities right away, instead of letting them pile up until the eventbus times out.
+ *
+ * <p>The queue is bounded by the number of entities, not the number of batches.
+ *
+ * <p>Note! The queue is not thread-safe, it is owned by the event loop of its verticle. Only the
+ * depth may be read from other threads, e.g by a metrics reporter.
+ *
+ * @author thced
+ */
+final class IngestQueue {
+
+  /** Available in config.properties */
+  static final String CAPACITY = "CACHE_INGEST_CAPACITY";
+
+  /** Available in config.properties */
+  static final String ACK = "CACHE_INGEST_ACK";
+
+  static final int DEFAULT_CAPACITY = 10_000;
+
+  /** When the sender of entities is acknowledged */
+  enum Ack {
+    /** As soon as the entities are queued (write-behind) */
+    ENQUEUE,
+    /** Once the entities are added to the cache */
+    COMMIT
+  }
+
+  /** Entities that were queued together, and that are committed together */
+  static final class Batch {
+
+    private final List<JsonObject> entities;
+    private final Promise<Void> committed = Promise.promise();
+    private final Span span;
+
+    Batch(List<JsonObject> entities) {
+      this(entities, null);
+    }
+
+    /**
+     * @param entities The entities of the batch
+     * @param span The span that traces the batch from queued to committed, or null if the batch is
+     *     not traced
+     */
+    Batch(List<JsonObject> entities, Span span) {
+      this.entities = entities;
+      this.span = span;
+    }
+
+    List<JsonObject> entities() {
+      return entities;
+    }
+
+    /** @return The span that traces the batch, or null if the batch is not traced */
+    Span span() {
+      return span;
+    }
+
+    /** @return The promise to complete once the entities are added to the cache, or failed */
+    Promise<Void> committed() {
+      return committed;
+    }
+  }
+
+  private final Deque<Batch> batches = new ArrayDeque<>();
+  private final int capacity;
+
+  /** The number of queued entities */
+  private volatile int depth;
+
+  IngestQueue(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Queue a batch, unless the queue is full. A batch larger than the capacity is only accepted
+   * when the queue is empty, or it would never be accepted.
+   *
+   * @param batch The batch to queue
+   * @return True if the batch was queued
+   */
+  boolean offer(Batch batch) {
+    int size = batch.entities().size();
+    if (depth + size > capacity && depth > 0) {
+      return false;
+    }
+    batches.add(batch);
+    depth += size;
+    return true;
+  }
+
+  /**
+   * Take whole batches from the head of the queue, until at least the given number of entities is
+   * taken or the queue is empty.
+   *
+   * @param entities The number of entities to take
+   * @return The batches taken, in order
+   */
+  List<Batch> poll(int entities) {
+    List<Batch> polled = new ArrayList<>();
+    int taken = 0;
+    while (taken < entities && !batches.isEmpty()) {
+      Batch batch = batches.poll();
+      polled.add(batch);
+      taken += batch.entities().size();
+    }
+    depth -= taken;
+    return polled;
+  }
+
+  boolean isEmpty() {
+    return batches.isEmpty();
+  }
+
+  /** @return The number of queued entities */
+  int depth() {
+    return depth;
+  }
+}
@@ -1,8 +1,5 @@
 package se.thced.api.example;
 
-import static io.vertx.core.Future.succeededFuture;
-
-import io.vertx.core.Future;
 import io.vertx.core.json.JsonObject;
 
 /**
@@ -10,11 +7,11 @@ import io.vertx.core.json.JsonObject;
  *
  * @author thced
  */
-public class NoopPreProcessor implements PreProcessor {
+public class NoopPreProcessor implements SynchronousPreProcessor {
 
   @Override
-  public Future<JsonObject> apply(JsonObject entity) {
-    return succeededFuture(entity);
+  public JsonObject process(JsonObject entity) {
+    return entity;
   }
 
 }
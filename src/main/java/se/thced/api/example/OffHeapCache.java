@@ -0,0 +1,213 @@
+package se.thced.api.example;
+
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Implementation of a cache that keeps the entities off the heap, for caches of millions of
+ * entities
+ *
+ * <p>Entities are serialized as JSON, length-prefixed, and appended to slabs of direct memory. The
+ * slabs form a log in insertion order, and when the cache is full the eldest slab is evicted as a
+ * whole, and reused for new entities. The memory of the cache is thereby bounded by bytes, not by
+ * the number of entities.
+ *
+ * <p>The only thing on the heap per entity is its position in the slabs, a long in a primitive ring
+ * that is indexed by key. The garbage collector never sees the entities, so heap usage and GC
+ * pauses stay flat however large the cache grows. Entities are decoded lazily, only the ones on a
+ * retrieved page.
+ *
+ * <p>Queries are not supported, since secondary indexes would put entries on the heap for every
+ * entity, and a query without them would decode every entity.
+ *
+ * <p>The maximum number of bytes is configured from the verticle configuration, see {@link
+ * #configure(JsonObject)}.
+ *
+ * <p>Note! The cache is not thread-safe, it is owned by the event loop of its verticle.
+ *
+ * @see Cache
+ * @author thced
+ */
+public class OffHeapCache implements Cache<JsonObject> {
+
+  /** Available in config.properties */
+  static final String MAX_BYTES = "CACHE_MAX_BYTES";
+
+  static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+  private static final int SLAB_SIZE = 1024 * 1024;
+
+  private static final int INITIAL_INDEX = 1024;
+
+  private ByteBuffer[] slabs;
+  private final int slabSize;
+
+  /** The sequence number of the slab that is appended to, slab n is kept in n % slabs.length */
+  private long slab;
+
+  /** Where the next entity is appended in the current slab */
+  private int offset;
+
+  /** The sequence number of the eldest slab that still holds entities */
+  private long eldestSlab;
+
+  /**
+   * The positions of the entities by key, a ring of (slab sequence number << 32 | offset). The
+   * position of key k is at (k - firstKey) from the head.
+   */
+  private long[] positions = new long[INITIAL_INDEX];
+
+  private int head;
+  private int size;
+
+  /** The key of the eldest entity */
+  private long firstKey = 1;
+
+  public OffHeapCache() {
+    this(DEFAULT_MAX_BYTES, SLAB_SIZE);
+  }
+
+  /**
+   * @param capacityBytes The maximum number of bytes of the entities, rounded up to whole slabs
+   * @param slabSize The number of bytes per slab, which is also the maximum size of an entity
+   */
+  OffHeapCache(long capacityBytes, int slabSize) {
+    this.slabs = new ByteBuffer[slabs(capacityBytes, slabSize)];
+    this.slabSize = slabSize;
+  }
+
+  /** @return The number of slabs for a capacity, at least two so evicting one never empties it */
+  private static int slabs(long capacityBytes, int slabSize) {
+    long slabs = (capacityBytes + slabSize - 1) / slabSize;
+    if (slabs > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many slabs for " + capacityBytes + " bytes");
+    }
+    return (int) Math.max(2, slabs);
+  }
+
+  /**
+   * Configure the maximum number of bytes, which must be done before the cache is used
+   *
+   * @param config The configuration of the verticle that owns the cache
+   */
+  @Override
+  public void configure(JsonObject config) {
+    if (slab > 0 || offset > 0) {
+      throw new IllegalStateException("The cache is already in use");
+    }
+    this.slabs = new ByteBuffer[slabs(config.getLong(MAX_BYTES, DEFAULT_MAX_BYTES), slabSize)];
+  }
+
+  @Override
+  public Future<Page> retrieve(int limit, String cursor) {
+    long from = Math.max(Page.position(cursor) + 1, firstKey);
+    long end = firstKey + size;
+    int count = (int) Math.max(0, Math.min(limit, end - from));
+
+    JsonArray entities = new JsonArray();
+    long[] keys = new long[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = from + i;
+      entities.add(decode(position(from + i)));
+    }
+
+    long last = from + count - 1;
+    String next = count > 0 && last + 1 < end ? String.valueOf(last) : null;
+    return succeededFuture(new Page(entities, keys, next));
+  }
+
+  /** Every add changes the entities, so the key of the next one doubles as the version */
+  @Override
+  public Future<Long> version() {
+    return succeededFuture(firstKey + size);
+  }
+
+  @Override
+  public Future<Void> add(JsonObject entity) {
+    ByteBuffer encoded = entity.toBuffer().getByteBuf().nioBuffer();
+    int length = Integer.BYTES + encoded.remaining();
+    if (length > slabSize) {
+      return failedFuture(
+          new IllegalArgumentException(
+              "The entity is " + length + " bytes, larger than a slab of " + slabSize));
+    }
+
+    if (offset + length > slabSize) {
+      nextSlab();
+    }
+
+    ByteBuffer current = slab(slab);
+    current.putInt(offset, encoded.remaining());
+    current.position(offset + Integer.BYTES);
+    current.put(encoded);
+    append(slab << 32 | offset);
+    offset += length;
+    return succeededFuture();
+  }
+
+  /** @return The number of entities in the cache */
+  int size() {
+    return size;
+  }
+
+  /** Move on to the next slab, evicting the eldest slab if all slabs are in use */
+  private void nextSlab() {
+    slab++;
+    offset = 0;
+    if (slab - eldestSlab == slabs.length) {
+      evict(eldestSlab++);
+    }
+  }
+
+  /** Drop the entities of a slab, which are the eldest entities in the index */
+  private void evict(long evicted) {
+    while (size > 0 && positions[head] >>> 32 == evicted) {
+      head = (head + 1) & (positions.length - 1);
+      size--;
+      firstKey++;
+    }
+  }
+
+  private void append(long position) {
+    if (size == positions.length) {
+      // Unroll the ring into an array twice the size
+      long[] grown = new long[positions.length * 2];
+      int tail = positions.length - head;
+      System.arraycopy(positions, head, grown, 0, tail);
+      System.arraycopy(positions, 0, grown, tail, head);
+      positions = grown;
+      head = 0;
+    }
+    positions[(head + size) & (positions.length - 1)] = position;
+    size++;
+  }
+
+  private long position(long key) {
+    return positions[(int) ((head + (key - firstKey)) & (positions.length - 1))];
+  }
+
+  private JsonObject decode(long position) {
+    ByteBuffer current = slab(position >>> 32);
+    int start = (int) position;
+    byte[] bytes = new byte[current.getInt(start)];
+    current.position(start + Integer.BYTES);
+    current.get(bytes);
+    // Parsing from a string is cheaper than from a buffer, which is parsed as a stream
+    return new JsonObject(new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  /** @return The slab with a sequence number, which is allocated on first use and then reused */
+  private ByteBuffer slab(long sequence) {
+    int index = (int) (sequence % slabs.length);
+    if (slabs[index] == null) {
+      slabs[index] = ByteBuffer.allocateDirect(slabSize);
+    }
+    return slabs[index];
+  }
+}
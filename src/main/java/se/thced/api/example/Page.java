@@ -0,0 +1,168 @@
+package se.thced.api.example;
+
+import static java.util.Objects.nonNull;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
+
+/**
+ * A page of entities retrieved from a {@link Cache}, together with the cursor to continue from.
+ *
+ * <p>Every entity in a cache has a key that grows with insertion order, and the cursor is the key
+ * of the last entity on the page. The cursor is opaque to clients, who only pass it back to get
+ * the next page.
+ *
+ * <p>A page does not copy the entities it is created with, and the same page may be handed to many
+ * readers at once (see {@link SnapshotCache}) without being copied. The entities are therefore
+ * owned by the page once it is created: neither its creator nor its readers may modify them.
+ *
+ * @author thced
+ */
+public final class Page {
+
+  private static final String ENTITIES = "entities";
+  private static final String KEYS = "keys";
+  private static final String CURSOR = "cursor";
+
+  private final JsonArray entities;
+  private final long[] keys;
+  private final String cursor;
+
+  /** The compact JSON encoding of the entities, encoded at most once */
+  private volatile Buffer encoded;
+
+  /**
+   * @param entities The entities on this page
+   * @param keys The keys of the entities, in the same order
+   * @param cursor The cursor to the next page, or null if this is the last page
+   */
+  public Page(JsonArray entities, long[] keys, String cursor) {
+    this.entities = entities;
+    this.keys = keys;
+    this.cursor = cursor;
+  }
+
+  public Page(JsonObject json) {
+    JsonArray jsonKeys = json.getJsonArray(KEYS);
+    this.entities = json.getJsonArray(ENTITIES);
+    this.keys = new long[jsonKeys.size()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = jsonKeys.getLong(i);
+    }
+    this.cursor = json.getString(CURSOR);
+  }
+
+  public JsonObject toJson() {
+    JsonArray jsonKeys = new JsonArray();
+    for (long key : keys) {
+      jsonKeys.add(key);
+    }
+    // The encoding is left out, since it would carry the entities twice. It is redone on demand
+    return new JsonObject().put(ENTITIES, entities).put(KEYS, jsonKeys).put(CURSOR, cursor);
+  }
+
+  public JsonArray entities() {
+    return entities;
+  }
+
+  /**
+   * The entities encoded as a compact JSON array. The encoding is done once, and then kept for as
+   * long as the page lives.
+   *
+   * @return The encoded entities
+   */
+  public Buffer encoded() {
+    Buffer buffer = encoded;
+    if (buffer == null) {
+      buffer = entities.toBuffer();
+      encoded = buffer;
+    }
+    return buffer;
+  }
+
+  public long key(int index) {
+    return keys[index];
+  }
+
+  public int size() {
+    return keys.length;
+  }
+
+  /** @return The cursor to the next page, or null if there are no more entities */
+  public String cursor() {
+    return cursor;
+  }
+
+  public boolean hasMore() {
+    return nonNull(cursor);
+  }
+
+  /**
+   * Parse a cursor into the key to continue after
+   *
+   * @param cursor The cursor, or null to start from the beginning
+   * @return The key of the last entity already seen
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  public static long position(String cursor) {
+    try {
+      return nonNull(cursor) ? Long.parseLong(cursor) : 0L;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed cursor: " + cursor, e);
+    }
+  }
+
+  /**
+   * Slice a page out of entities kept in key order. The cost only depends on the limit, not on the
+   * size of the map, since the map seeks directly to the cursor and iteration stops at the limit.
+   *
+   * @param entities The entities, ordered by key
+   * @param limit The maximum number of entities on the page
+   * @param cursor The cursor to continue after, or null to start from the beginning
+   * @return The page
+   */
+  public static Page slice(NavigableMap<Long, JsonObject> entities, int limit, String cursor) {
+    return slice(entities, entity -> true, limit, cursor);
+  }
+
+  /**
+   * Slice a page of the matching entities out of entities kept in key order. The entities that do
+   * not match are skipped on the way, so the cost also grows with how many of them there are.
+   *
+   * @param entities The entities, ordered by key
+   * @param filter The entities to keep on the page
+   * @param limit The maximum number of entities on the page
+   * @param cursor The cursor to continue after, or null to start from the beginning
+   * @return The page
+   */
+  public static Page slice(
+      NavigableMap<Long, JsonObject> entities,
+      Predicate<JsonObject> filter,
+      int limit,
+      String cursor) {
+    Iterator<Map.Entry<Long, JsonObject>> iterator =
+        entities.tailMap(position(cursor), false).entrySet().iterator();
+
+    JsonArray slice = new JsonArray();
+    LongStream.Builder keys = LongStream.builder();
+    long last = 0L;
+    while (slice.size() < limit && iterator.hasNext()) {
+      Map.Entry<Long, JsonObject> entry = iterator.next();
+      if (!filter.test(entry.getValue())) {
+        continue;
+      }
+      slice.add(entry.getValue());
+      last = entry.getKey();
+      keys.add(last);
+    }
+
+    String next = !slice.isEmpty() && iterator.hasNext() ? String.valueOf(last) : null;
+    return new Page(slice, keys.build().toArray(), next);
+  }
+}
@@ -7,6 +7,17 @@ import java.util.function.Function;
 /**
  * A preprocessor applies a function to an input, and produces some other (future) output
  *
+ * <p>Processors are applied one after the other, ordered by their {@link #priority()}, where each
+ * processor gets the output of the one before it. See {@link PreProcessorPipeline}.
+ *
+ * <p>Processors that complete right away should implement {@link SynchronousPreProcessor}
+ * instead, as they can then be applied without allocating a future.
+ *
+ * <p>By default a processor is applied on the event loop of the cache, which is fine for anything
+ * cheap. A processor that is expensive or blocking should declare another {@link #execution()},
+ * or it stalls all reads from the cache while it runs. Processors that run off the event loop must
+ * be thread-agnostic, i.e not rely on being called from a Vert.x thread.
+ *
  * @author thced
  */
 @FunctionalInterface
@@ -20,4 +31,44 @@ public interface PreProcessor extends Function<JsonObject, Future<JsonObject>> {
    */
   @Override
   Future<JsonObject> apply(JsonObject entity);
+
+  /**
+   * The order to apply this processor in, processors with a lower priority are applied first.
+   * Processors with the same priority are applied in the order they are found in.
+   *
+   * @return The priority of this processor
+   */
+  default int priority() {
+    return 0;
+  }
+
+  /**
+   * Where this processor is applied. The result is always handed back on the event loop of the
+   * cache, whatever thread the processor ran on.
+   *
+   * @return The execution mode of this processor
+   */
+  default Execution execution() {
+    return Execution.EVENT_LOOP;
+  }
+
+  /**
+   * The name of the dedicated executor, only used with {@link Execution#EXECUTOR}. Processors
+   * that name the same executor share its threads.
+   *
+   * @return The name of the executor to run on
+   */
+  default String executor() {
+    return getClass().getSimpleName();
+  }
+
+  /** The available execution modes of a processor */
+  enum Execution {
+    /** On the event loop of the cache, for cheap and non-blocking processors */
+    EVENT_LOOP,
+    /** On the shared Vert.x worker pool, via executeBlocking */
+    WORKER,
+    /** On a worker executor of its own, see {@link PreProcessor#executor()} */
+    EXECUTOR
+  }
 }
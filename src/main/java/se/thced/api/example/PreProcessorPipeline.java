@@ -0,0 +1,205 @@
+package se.thced.api.example;
+
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+
+import se.thced.tracing.Span;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The pre-processors fused into one ordered pipeline. The processors are sorted by {@link
+ * PreProcessor#priority()} once, and then applied one after the other, each to the output of the
+ * one before it.
+ *
+ * <p>Runs of {@link SynchronousPreProcessor}s on the event loop are applied in a plain loop, and a
+ * future is only composed for processors that really are asynchronous, or that run elsewhere (see
+ * {@link PreProcessor#execution()}). When all processors are synchronous and on the event loop, the
+ * whole pipeline can be applied with {@link #process(JsonObject)}, which allocates nothing on its
+ * own.
+ *
+ * <p>Processors that run off the event loop are handed the entity on a worker thread, and their
+ * result is handed back on the context that applied the pipeline, i.e the event loop of the cache.
+ *
+ * @author thced
+ */
+public final class PreProcessorPipeline {
+
+  private static final Logger log = LoggerFactory.getLogger(PreProcessorPipeline.class);
+
+  private final Vertx vertx;
+
+  private final PreProcessor[] processors;
+
+  /** The names of the processors, for logging */
+  private final String[] names;
+
+  /** The dedicated executors of the processors, by name */
+  private final Map<String, WorkerExecutor> executors = new HashMap<>();
+
+  private final boolean synchronous;
+
+  public PreProcessorPipeline(Vertx vertx, Collection<PreProcessor> processors) {
+    List<PreProcessor> ordered = new ArrayList<>(processors);
+    // The sort is stable, processors with the same priority keep the order they were found in
+    ordered.sort(Comparator.comparingInt(PreProcessor::priority));
+
+    this.vertx = vertx;
+    this.processors = ordered.toArray(new PreProcessor[0]);
+    this.names = ordered.stream().map(p -> p.getClass().getSimpleName()).toArray(String[]::new);
+    this.synchronous = ordered.stream().allMatch(PreProcessorPipeline::isInline);
+
+    for (PreProcessor processor : ordered) {
+      if (processor.execution() == PreProcessor.Execution.EXECUTOR) {
+        executors.computeIfAbsent(processor.executor(), vertx::createSharedWorkerExecutor);
+      }
+    }
+  }
+
+  /**
+   * @return True if all processors are synchronous on the event loop, and {@link #process} can be
+   *     used
+   */
+  public boolean isSynchronous() {
+    return synchronous;
+  }
+
+  /**
+   * Apply all processors, in order
+   *
+   * @param entity The entity to process
+   * @return The future containing the processed entity, or a failure
+   */
+  public Future<JsonObject> apply(JsonObject entity) {
+    return applyFrom(0, entity);
+  }
+
+  /**
+   * Apply all processors, in order, and trace every processor as a child span
+   *
+   * @param entity The entity to process
+   * @param parent The span to trace the processors in, or null to not trace them
+   * @return The future containing the processed entity, or a failure
+   */
+  public Future<JsonObject> apply(JsonObject entity, Span parent) {
+    return parent == null ? apply(entity) : applyTraced(0, entity, parent);
+  }
+
+  /**
+   * Apply all processors, in order, on the calling thread
+   *
+   * @param entity The entity to process
+   * @return The processed entity
+   * @throws IllegalStateException if the pipeline is not synchronous
+   * @throws RuntimeException if a processor fails
+   */
+  public JsonObject process(JsonObject entity) {
+    if (!synchronous) {
+      throw new IllegalStateException("The pipeline contains asynchronous processors");
+    }
+    JsonObject processed = entity;
+    for (int i = 0; i < processors.length; i++) {
+      processed = ((SynchronousPreProcessor) processors[i]).process(processed);
+      applied(i);
+    }
+    return processed;
+  }
+
+  /** Release the dedicated executors */
+  public void close() {
+    executors.values().forEach(WorkerExecutor::close);
+    executors.clear();
+  }
+
+  /**
+   * Apply the processors from an index. Synchronous processors on the event loop are applied in
+   * place, until any other processor is reached, which the rest of the pipeline is composed onto.
+   */
+  private Future<JsonObject> applyFrom(int index, JsonObject entity) {
+    JsonObject processed = entity;
+    int i = index;
+    try {
+      for (; i < processors.length && isInline(processors[i]); i++) {
+        processed = ((SynchronousPreProcessor) processors[i]).process(processed);
+        applied(i);
+      }
+    } catch (RuntimeException e) {
+      return failedFuture(e);
+    }
+    if (i == processors.length) {
+      return succeededFuture(processed);
+    }
+
+    int next = i;
+    return execute(processors[next], processed)
+        .compose(
+            result -> {
+              applied(next);
+              return applyFrom(next + 1, result);
+            });
+  }
+
+  /**
+   * Apply the processors from an index, one at a time, each in a span of its own. The span of a
+   * processor that runs off the event loop includes the wait for a worker.
+   */
+  private Future<JsonObject> applyTraced(int index, JsonObject entity, Span parent) {
+    if (index == processors.length) {
+      return succeededFuture(entity);
+    }
+
+    Span span = parent.child("preprocessor " + names[index]);
+    Future<JsonObject> processed;
+    try {
+      processed = execute(processors[index], entity);
+    } catch (RuntimeException e) {
+      processed = failedFuture(e);
+    }
+    return processed
+        .onComplete(result -> span.tag("failed", result.failed()).end())
+        .compose(
+            result -> {
+              applied(index);
+              return applyTraced(index + 1, result, parent);
+            });
+  }
+
+  /**
+   * Apply a single processor where it declares that it should be applied. Blocking executions are
+   * unordered, so that entities can be processed in parallel on the workers, and they complete on
+   * the calling context.
+   */
+  private Future<JsonObject> execute(PreProcessor processor, JsonObject entity) {
+    switch (processor.execution()) {
+      case WORKER:
+        return vertx.executeBlocking(promise -> processor.apply(entity).onComplete(promise), false);
+      case EXECUTOR:
+        return executors
+            .get(processor.executor())
+            .executeBlocking(promise -> processor.apply(entity).onComplete(promise), false);
+      default:
+        return processor.apply(entity);
+    }
+  }
+
+  private void applied(int index) {
+    if (log.isDebugEnabled()) {
+      log.debug("Applied processor {} to entity", names[index]);
+    }
+  }
+
+  private static boolean isInline(PreProcessor processor) {
+    return processor instanceof SynchronousPreProcessor
+        && processor.execution() == PreProcessor.Execution.EVENT_LOOP;
+  }
+}
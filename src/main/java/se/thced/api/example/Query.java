@@ -0,0 +1,143 @@
+package se.thced.api.example;
+
+import static java.util.Objects.nonNull;
+
+import io.vertx.core.json.JsonObject;
+import java.util.Objects;
+
+/**
+ * A query for the entities of a {@link Cache} by their fields. All given conditions must match, and
+ * conditions that are not given match anything.
+ *
+ * <p>Conditions are compared with the entities as they are stored, i.e after pre-processing.
+ *
+ * @author thced
+ */
+public final class Query {
+
+  public static final String GENDER = "gender";
+  public static final String NAME = "name";
+  public static final String MIN_AGE = "minAge";
+  public static final String MAX_AGE = "maxAge";
+
+  /** The field of the entities that the age conditions apply to */
+  static final String AGE = "age";
+
+  private final String gender;
+  private final String name;
+  private final Integer minAge;
+  private final Integer maxAge;
+
+  /**
+   * @param gender The gender to match, or null
+   * @param name The name to match, or null
+   * @param minAge The lowest age to match, inclusive, or null
+   * @param maxAge The highest age to match, inclusive, or null
+   */
+  public Query(String gender, String name, Integer minAge, Integer maxAge) {
+    this.gender = gender;
+    this.name = name;
+    this.minAge = minAge;
+    this.maxAge = maxAge;
+  }
+
+  /** @param json The query as JSON, see {@link #toJson()} */
+  public Query(JsonObject json) {
+    this(
+        json.getString(GENDER),
+        json.getString(NAME),
+        json.getInteger(MIN_AGE),
+        json.getInteger(MAX_AGE));
+  }
+
+  /** @return The query as JSON, to send over the eventbus */
+  public JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    if (nonNull(gender)) {
+      json.put(GENDER, gender);
+    }
+    if (nonNull(name)) {
+      json.put(NAME, name);
+    }
+    if (nonNull(minAge)) {
+      json.put(MIN_AGE, minAge);
+    }
+    if (nonNull(maxAge)) {
+      json.put(MAX_AGE, maxAge);
+    }
+    return json;
+  }
+
+  public String gender() {
+    return gender;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /** @return True if the query has an age condition */
+  public boolean hasAge() {
+    return nonNull(minAge) || nonNull(maxAge);
+  }
+
+  /** @return The lowest age to match, inclusive */
+  public int minAge() {
+    return nonNull(minAge) ? minAge : Integer.MIN_VALUE;
+  }
+
+  /** @return The highest age to match, inclusive */
+  public int maxAge() {
+    return nonNull(maxAge) ? maxAge : Integer.MAX_VALUE;
+  }
+
+  /** @return True if the query has no conditions, and matches all entities */
+  public boolean isEmpty() {
+    return gender == null && name == null && !hasAge();
+  }
+
+  /**
+   * @param entity The entity
+   * @return True if the entity matches all conditions
+   */
+  public boolean matches(JsonObject entity) {
+    if (nonNull(gender) && !gender.equals(entity.getValue(GENDER))) {
+      return false;
+    }
+    if (nonNull(name) && !name.equals(entity.getValue(NAME))) {
+      return false;
+    }
+    if (hasAge()) {
+      Object age = entity.getValue(AGE);
+      return age instanceof Number
+          && ((Number) age).intValue() >= minAge()
+          && ((Number) age).intValue() <= maxAge();
+    }
+    return true;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof Query)) {
+      return false;
+    }
+    Query query = (Query) other;
+    return Objects.equals(gender, query.gender)
+        && Objects.equals(name, query.name)
+        && Objects.equals(minAge, query.minAge)
+        && Objects.equals(maxAge, query.maxAge);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(gender, name, minAge, maxAge);
+  }
+
+  @Override
+  public String toString() {
+    return toJson().encode();
+  }
+}
@@ -0,0 +1,77 @@
+package se.thced.api.example;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Registry of the thread-safe caches on this node, that handlers can access in-process instead of
+ * going over the eventbus.
+ *
+ * <p>Only caches that are {@link Shareable} are published, the others are only safe to access from
+ * the event loop of their {@link CacheVerticle}.
+ *
+ * @author thced
+ */
+public final class SharedCaches {
+
+  /** Available in config.properties */
+  public static final String DIRECT_ACCESS = "CACHE_DIRECT_ACCESS";
+
+  private static final String CACHES = "shared.caches";
+
+  private SharedCaches() {
+    // No instantiation
+  }
+
+  /**
+   * Publish a cache for in-process access
+   *
+   * @param vertx The vertx instance
+   * @param shard The index of the shard the cache belongs to
+   * @param cache The thread-safe cache to publish
+   * @param <C> The type of the cache
+   */
+  static <C extends Cache<JsonObject> & Shareable> void publish(Vertx vertx, int shard, C cache) {
+    caches(vertx).put(shard, cache);
+  }
+
+  /**
+   * Withdraw a published cache, e.g when its verticle is undeployed
+   *
+   * @param vertx The vertx instance
+   * @param shard The index of the shard the cache belongs to
+   */
+  static void withdraw(Vertx vertx, int shard) {
+    caches(vertx).remove(shard);
+  }
+
+  /**
+   * Look up the caches of all shards
+   *
+   * @param vertx The vertx instance
+   * @param shards The total number of shards
+   * @return The caches, ordered by shard, or empty unless all shards have published their cache
+   */
+  @SuppressWarnings("unchecked")
+  public static Optional<List<Cache<JsonObject>>> lookup(Vertx vertx, int shards) {
+    LocalMap<Integer, Shareable> caches = caches(vertx);
+    List<Cache<JsonObject>> found = new ArrayList<>(shards);
+    for (int shard = 0; shard < shards; shard++) {
+      Shareable cache = caches.get(shard);
+      if (cache == null) {
+        return Optional.empty();
+      }
+      found.add((Cache<JsonObject>) cache);
+    }
+    return Optional.of(found);
+  }
+
+  private static LocalMap<Integer, Shareable> caches(Vertx vertx) {
+    return vertx.sharedData().getLocalMap(CACHES);
+  }
+}
@@ -3,41 +3,66 @@ package se.thced.api.example;
 import static io.vertx.core.Future.succeededFuture;
 
 import io.vertx.core.Future;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.impl.LRUCache;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of a cache to demonstrate SPI
  *
+ * <p>The entities are kept in insertion order, and the eldest entity is evicted once the capacity
+ * is exceeded. Queries are answered from secondary indexes, see {@link EntityIndex}.
+ *
  * @see Cache
  * @author thced
  */
 public class SmallCache implements Cache<JsonObject> {
 
-  private final AtomicInteger counter = new AtomicInteger(1);
-  private final Map<Integer, JsonObject> cache;
+  private static final int CAPACITY = 2;
+
+  private final AtomicLong counter = new AtomicLong(1);
+  private final NavigableMap<Long, JsonObject> cache;
+  private final EntityIndex index = new EntityIndex();
 
   public SmallCache() {
     this.cache = createCache();
   }
 
-  Map<Integer, JsonObject> createCache() {
-    return new LRUCache<>(2);
+  NavigableMap<Long, JsonObject> createCache() {
+    return new TreeMap<>();
+  }
+
+  @Override
+  public Future<Page> retrieve(int limit, String cursor) {
+    return succeededFuture(Page.slice(cache, limit, cursor));
+  }
+
+  @Override
+  public Future<Page> query(Query query, int limit, String cursor) {
+    if (query.isEmpty()) {
+      return retrieve(limit, cursor);
+    }
+    return succeededFuture(index.query(query, limit, cursor, cache::get));
   }
 
+  /** Every add changes the entities, so the key of the next one doubles as the version */
   @Override
-  public Future<JsonArray> retrieve() {
-    return succeededFuture(
-        cache.entrySet().stream()
-            .collect(
-                JsonArray::new, (array, entry) -> array.add(entry.getValue()), JsonArray::addAll));
+  public Future<Long> version() {
+    return succeededFuture(counter.get());
   }
 
   @Override
   public Future<Void> add(JsonObject value) {
-    return succeededFuture(cache.put(counter.getAndIncrement(), value)).mapEmpty();
+    long key = counter.getAndIncrement();
+    cache.put(key, value);
+    index.add(key, value);
+    // Keys grow with insertion order, so the first entry is always the eldest
+    if (cache.size() > CAPACITY) {
+      Map.Entry<Long, JsonObject> eldest = cache.pollFirstEntry();
+      index.remove(eldest.getKey(), eldest.getValue());
+    }
+    return succeededFuture();
   }
 }
@@ -0,0 +1,92 @@
+package se.thced.api.example;
+
+import static io.vertx.core.Future.succeededFuture;
+import static java.util.Objects.nonNull;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorates a cache with a snapshot of its first page, pre-encoded and ready to be written to a
+ * client. The snapshot is versioned, and every add bumps the version, which invalidates it.
+ *
+ * <p>In a read-heavy period, which is the common case for the first page that is polled over and
+ * over, a retrieve costs a version check instead of copying and encoding entities. Only the first
+ * page of the default limit is kept, other pages, e.g those of a stream, are retrieved from the
+ * cache as they are, so that they neither replace the snapshot nor are encoded for nothing.
+ *
+ * @see Page#encoded()
+ * @author thced
+ */
+public class SnapshotCache implements Cache<JsonObject>, Shareable {
+
+  private final Cache<JsonObject> cache;
+  private final AtomicLong version = new AtomicLong();
+  private volatile Snapshot snapshot;
+
+  public SnapshotCache(Cache<JsonObject> cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public Future<Page> retrieve(int limit, String cursor) {
+    if (nonNull(cursor) || limit != DEFAULT_LIMIT) {
+      return cache.retrieve(limit, cursor);
+    }
+
+    // Read the version before the entities, so that an add in between invalidates the snapshot
+    long current = version.get();
+    Snapshot latest = snapshot;
+    if (nonNull(latest) && latest.version == current) {
+      return succeededFuture(latest.page);
+    }
+
+    return cache
+        .retrieve(limit, null)
+        .onSuccess(Page::encoded)
+        .onSuccess(page -> snapshot = new Snapshot(current, page));
+  }
+
+  /** Straight from the cache, since the snapshot is for the pages of the clients */
+  @Override
+  public Future<Page> entities(int limit, String cursor) {
+    return cache.entities(limit, cursor);
+  }
+
+  @Override
+  public Future<Page> query(Query query, int limit, String cursor) {
+    return cache.query(query, limit, cursor);
+  }
+
+  /** The version that the snapshot is kept by, which every add, or batch, bumps */
+  @Override
+  public Future<Long> version() {
+    return succeededFuture(version.get());
+  }
+
+  @Override
+  public Future<Void> add(JsonObject entity) {
+    // Bump the version after the entity is added, so that no snapshot can miss it
+    return cache.add(entity).onComplete(ignore -> version.incrementAndGet());
+  }
+
+  @Override
+  public Future<Void> addAll(Collection<JsonObject> entities) {
+    // One batch, one new version
+    return cache.addAll(entities).onComplete(ignore -> version.incrementAndGet());
+  }
+
+  private static final class Snapshot {
+
+    private final long version;
+    private final Page page;
+
+    private Snapshot(long version, Page page) {
+      this.version = version;
+      this.page = page;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package se.thced.api.example;
+
+import static io.vertx.core.Future.succeededFuture;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A preprocessor that completes right away. Consecutive synchronous processors are applied in one
+ * go by the {@link PreProcessorPipeline}, without allocating a future per processor.
+ *
+ * @author thced
+ */
+@FunctionalInterface
+public interface SynchronousPreProcessor extends PreProcessor {
+
+  /**
+   * Apply the pre-processing
+   *
+   * @param entity The input to process
+   * @return The result after process
+   * @throws RuntimeException if the processing fails
+   */
+  JsonObject process(JsonObject entity);
+
+  @Override
+  default Future<JsonObject> apply(JsonObject entity) {
+    return succeededFuture(process(entity));
+  }
+}
@@ -0,0 +1,406 @@
+package se.thced.api.example;
+
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.RatioGauge;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.LongStream;
+
+/**
+ * Implementation of a cache that keeps the entities that are read the most, bounded by the
+ * estimated size of the entities in bytes rather than by their number
+ *
+ * <p>The eviction policy is W-TinyLFU. New entities start out in a small LRU window, which takes
+ * one percent of the weight. Entities that fall out of the window are candidates for the main
+ * space, a segmented LRU of a probation and a protected segment, where entities are promoted to
+ * protected when they are read again. When the main space is full, a candidate is only admitted if
+ * it has been seen at least as often recently as the entity that would be evicted for it, as
+ * estimated by a {@link FrequencySketch}. A burst of entities that are added once and never read
+ * thereby cycles through the probation segment, without flushing the entities that are read over
+ * and over. Ties are admitted, or entities that are only ever added would never replace the ones
+ * that filled the cache first.
+ *
+ * <p>Entities are counted as seen when they are added, and every time they are on a retrieved page.
+ * Pages are still in insertion order, the policy only decides which entities are kept. Queries are
+ * answered from secondary indexes, see {@link EntityIndex}.
+ *
+ * <p>The weight limit and the admission policy are configured from the verticle configuration, see
+ * {@link #configure(JsonObject)}, and the counters of the cache are exported as metrics.
+ *
+ * <p>Note! The cache is not thread-safe, it is owned by the event loop of its verticle.
+ *
+ * @see Cache
+ * @author thced
+ */
+public class TinyLfuCache implements Cache<JsonObject>, MetricSet {
+
+  /** Available in config.properties */
+  static final String MAX_WEIGHT = "CACHE_MAX_WEIGHT";
+
+  /** Available in config.properties */
+  static final String ADMISSION = "CACHE_ADMISSION";
+
+  static final long DEFAULT_MAX_WEIGHT = 1024 * 1024;
+
+  /** The share of the weight for the window, where new entities start out */
+  private static final double WINDOW = 0.01;
+
+  /** The share of the main space for the entities that were read again */
+  private static final double PROTECTED = 0.8;
+
+  private static final int INITIAL_SKETCH_SIZE = 1024;
+
+  /** How candidates for the main space are admitted */
+  enum Admission {
+    /** Only if seen at least as often as the entity they would evict */
+    TINY_LFU,
+    /** Always, which makes the cache a plain segmented LRU */
+    ALWAYS
+  }
+
+  private enum Segment {
+    WINDOW,
+    PROBATION,
+    PROTECTED
+  }
+
+  /** All entities by key, for pages in insertion order */
+  private final NavigableMap<Long, Node> entities = new TreeMap<>();
+
+  /** The segments, in access order with the least recently used first */
+  private final Map<Long, Node> window = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final Map<Long, Node> probation = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<Long, Node> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final EntityIndex index = new EntityIndex();
+
+  private final FrequencySketch sketch = new FrequencySketch(INITIAL_SKETCH_SIZE);
+
+  private final Counter hits = new Counter();
+  private final Counter misses = new Counter();
+  private final Counter evictions = new Counter();
+  private final Counter admissions = new Counter();
+  private final Counter rejections = new Counter();
+
+  private long nextKey = 1;
+
+  private Admission admission;
+  private long maxWeight;
+  private long windowMaxWeight;
+  private long protectedMaxWeight;
+
+  private long weight;
+  private long windowWeight;
+  private long protectedWeight;
+
+  public TinyLfuCache() {
+    this(DEFAULT_MAX_WEIGHT, Admission.TINY_LFU);
+  }
+
+  /**
+   * @param maxWeight The maximum total weight of the entities, see {@link #weigh(Object)}
+   * @param admission How candidates for the main space are admitted
+   */
+  TinyLfuCache(long maxWeight, Admission admission) {
+    limit(maxWeight);
+    this.admission = admission;
+  }
+
+  @Override
+  public void configure(JsonObject config) {
+    limit(config.getLong(MAX_WEIGHT, DEFAULT_MAX_WEIGHT));
+    admission = Admission.valueOf(config.getString(ADMISSION, Admission.TINY_LFU.name()));
+    evict();
+  }
+
+  /** The entities on the page are seen, and counted as hits */
+  @Override
+  public Future<Page> retrieve(int limit, String cursor) {
+    return succeededFuture(page(limit, cursor, true));
+  }
+
+  /** Neither seen nor counted, so that reading all entities does not make them all popular */
+  @Override
+  public Future<Page> entities(int limit, String cursor) {
+    return succeededFuture(page(limit, cursor, false));
+  }
+
+  /** Reads decide which entities are admitted and kept */
+  @Override
+  public boolean countsReads() {
+    return true;
+  }
+
+  /**
+   * @param limit The maximum number of entities on the page
+   * @param cursor The cursor to continue after, or null to start from the beginning
+   * @param read True if the page is read by a client, and the entities are thereby seen
+   * @return The page
+   */
+  private Page page(int limit, String cursor, boolean read) {
+    long after = Page.position(cursor);
+    Iterator<Node> iterator = entities.tailMap(after, false).values().iterator();
+
+    JsonArray slice = new JsonArray();
+    LongStream.Builder keys = LongStream.builder();
+    long first = 0L;
+    long last = 0L;
+    while (slice.size() < limit && iterator.hasNext()) {
+      Node node = iterator.next();
+      if (read) {
+        // Only the segments are reordered, never the entities, so iterating on is safe
+        access(node);
+      }
+      slice.add(node.entity);
+      last = node.key;
+      keys.add(last);
+      first = first == 0L ? last : first;
+    }
+
+    if (read) {
+      // Keys are handed out in order, so the keys skipped on the way are entities that are gone
+      long start = cursor != null ? after + 1 : first;
+      long end = !slice.isEmpty() ? last : cursor != null ? nextKey - 1 : start - 1;
+      hits.inc(slice.size());
+      misses.inc(Math.max(0, end - start + 1 - slice.size()));
+    }
+
+    String next = !slice.isEmpty() && iterator.hasNext() ? String.valueOf(last) : null;
+    return new Page(slice, keys.build().toArray(), next);
+  }
+
+  /** The entities on the page are seen, like on a retrieved page, but not counted as hits */
+  @Override
+  public Future<Page> query(Query query, int limit, String cursor) {
+    if (query.isEmpty()) {
+      return retrieve(limit, cursor);
+    }
+    Page page =
+        index.query(
+            query,
+            limit,
+            cursor,
+            key -> {
+              Node node = entities.get(key);
+              return node != null ? node.entity : null;
+            });
+    for (int i = 0; i < page.size(); i++) {
+      access(entities.get(page.key(i)));
+    }
+    return succeededFuture(page);
+  }
+
+  /**
+   * Entities are only added, and evicted, by an add, so the key of the next one doubles as the
+   * version. Retrieves reorder the segments, but not the entities.
+   */
+  @Override
+  public Future<Long> version() {
+    return succeededFuture(nextKey);
+  }
+
+  @Override
+  public Future<Void> add(JsonObject entity) {
+    int entityWeight = weigh(entity);
+    if (entityWeight > maxWeight) {
+      return failedFuture(
+          new IllegalArgumentException(
+              "The entity weighs " + entityWeight + ", more than the cache of " + maxWeight));
+    }
+
+    Node node = new Node(nextKey++, entity, entity.hashCode(), entityWeight);
+    sketch.increment(node.hash);
+    entities.put(node.key, node);
+    index.add(node.key, entity);
+    window.put(node.key, node);
+    windowWeight += node.weight;
+    weight += node.weight;
+
+    sketch.ensureCapacity(entities.size());
+    evict();
+    return succeededFuture();
+  }
+
+  /**
+   * The metrics of the cache: the counters 'hits', 'misses', 'evictions', 'admissions' and
+   * 'rejections', and the gauges 'hit-ratio', 'weight' and 'size'. Hits and misses are counted per
+   * entity, a miss being an entity that was evicted or rejected before a page reached it.
+   */
+  @Override
+  public Map<String, Metric> getMetrics() {
+    return Map.of(
+        "hits", hits,
+        "misses", misses,
+        "evictions", evictions,
+        "admissions", admissions,
+        "rejections", rejections,
+        "hit-ratio", hitRatio(),
+        "weight", (Gauge<Long>) () -> weight,
+        "size", (Gauge<Integer>) entities::size);
+  }
+
+  /** @return The total weight of the entities in the cache */
+  long weight() {
+    return weight;
+  }
+
+  /**
+   * Estimate the size of an entity as JSON, in bytes, without encoding it
+   *
+   * @param value The entity, or any value in it
+   * @return The estimated size
+   */
+  static int weigh(Object value) {
+    if (value instanceof JsonObject) {
+      int size = 2;
+      for (Map.Entry<String, Object> field : (JsonObject) value) {
+        size += field.getKey().length() + 4 + weigh(field.getValue());
+      }
+      return size;
+    }
+    if (value instanceof JsonArray) {
+      int size = 2;
+      for (Object element : (JsonArray) value) {
+        size += weigh(element) + 1;
+      }
+      return size;
+    }
+    if (value instanceof CharSequence) {
+      return ((CharSequence) value).length() + 2;
+    }
+    return value == null ? 4 : 8;
+  }
+
+  private RatioGauge hitRatio() {
+    return new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+      }
+    };
+  }
+
+  private void limit(long maxWeight) {
+    this.maxWeight = maxWeight;
+    this.windowMaxWeight = Math.max(1, (long) (maxWeight * WINDOW));
+    this.protectedMaxWeight = (long) ((maxWeight - windowMaxWeight) * PROTECTED);
+  }
+
+  /** The entity is seen again, it is moved up in its segment or promoted to protected */
+  private void access(Node node) {
+    sketch.increment(node.hash);
+    switch (node.segment) {
+      case WINDOW:
+        window.get(node.key);
+        break;
+      case PROBATION:
+        probation.remove(node.key);
+        node.segment = Segment.PROTECTED;
+        protectedSegment.put(node.key, node);
+        protectedWeight += node.weight;
+        while (protectedWeight > protectedMaxWeight) {
+          Node demoted = removeEldest(protectedSegment);
+          protectedWeight -= demoted.weight;
+          demoted.segment = Segment.PROBATION;
+          probation.put(demoted.key, demoted);
+        }
+        break;
+      default:
+        protectedSegment.get(node.key);
+    }
+  }
+
+  /** Move the entities that overflow the window to the main space, and evict down to the limit */
+  private void evict() {
+    while (windowWeight > windowMaxWeight) {
+      Node candidate = removeEldest(window);
+      windowWeight -= candidate.weight;
+      admit(candidate);
+    }
+    while (weight > maxWeight) {
+      Node victim = victim();
+      remove(victim != null ? victim : window.values().iterator().next());
+      evictions.inc();
+    }
+  }
+
+  private void admit(Node candidate) {
+    Node victim = victim();
+    if (weight > maxWeight
+        && victim != null
+        && admission == Admission.TINY_LFU
+        && sketch.frequency(candidate.hash) < sketch.frequency(victim.hash)) {
+      entities.remove(candidate.key);
+      index.remove(candidate.key, candidate.entity);
+      weight -= candidate.weight;
+      rejections.inc();
+      return;
+    }
+
+    candidate.segment = Segment.PROBATION;
+    probation.put(candidate.key, candidate);
+    admissions.inc();
+  }
+
+  /** @return The entity to evict from the main space, or null if it is empty */
+  private Node victim() {
+    if (!probation.isEmpty()) {
+      return probation.values().iterator().next();
+    }
+    return protectedSegment.isEmpty() ? null : protectedSegment.values().iterator().next();
+  }
+
+  private void remove(Node node) {
+    entities.remove(node.key);
+    index.remove(node.key, node.entity);
+    weight -= node.weight;
+    switch (node.segment) {
+      case WINDOW:
+        window.remove(node.key);
+        windowWeight -= node.weight;
+        break;
+      case PROBATION:
+        probation.remove(node.key);
+        break;
+      default:
+        protectedSegment.remove(node.key);
+        protectedWeight -= node.weight;
+    }
+  }
+
+  private static Node removeEldest(Map<Long, Node> segment) {
+    Iterator<Node> eldest = segment.values().iterator();
+    Node node = eldest.next();
+    eldest.remove();
+    return node;
+  }
+
+  private static final class Node {
+
+    private final long key;
+    private final JsonObject entity;
+    private final int hash;
+    private final int weight;
+    private Segment segment = Segment.WINDOW;
+
+    private Node(long key, JsonObject entity, int hash, int weight) {
+      this.key = key;
+      this.entity = entity;
+      this.hash = hash;
+      this.weight = weight;
+    }
+  }
+}
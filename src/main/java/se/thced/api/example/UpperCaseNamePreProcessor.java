@@ -1,8 +1,5 @@
 package se.thced.api.example;
 
-import static io.vertx.core.Future.succeededFuture;
-
-import io.vertx.core.Future;
 import io.vertx.core.json.JsonObject;
 
 /**
@@ -10,14 +7,20 @@ import io.vertx.core.json.JsonObject;
  *
  * @author thced
  */
-public class UpperCaseNamePreProcessor implements PreProcessor {
+public class UpperCaseNamePreProcessor implements SynchronousPreProcessor {
 
   @Override
-  public Future<JsonObject> apply(JsonObject entity) {
+  public JsonObject process(JsonObject entity) {
     if (entity.containsKey("name")) {
       String name = entity.getString("name");
       entity.put("name", name.toUpperCase());
     }
-    return succeededFuture(entity);
+    return entity;
+  }
+
+  /** Normalize the name before any other processor sees it */
+  @Override
+  public int priority() {
+    return -10;
   }
 }
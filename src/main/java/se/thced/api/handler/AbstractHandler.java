@@ -1,7 +1,23 @@
 package se.thced.api.handler;
 
+import se.thced.api.example.Cache;
+import se.thced.api.example.CacheShards;
+import se.thced.api.example.Page;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.ext.web.RoutingContext;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,4 +31,99 @@ public abstract class AbstractHandler implements Handler<RoutingContext> {
 
   protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
+  /** The header that controls how many entities we return */
+  static final CharSequence LIMIT_ENTITIES = HttpHeaders.createOptimized("Limit-Entities");
+
+  /** The header that holds the cursor to the next page, if there is one */
+  static final CharSequence NEXT_CURSOR = HttpHeaders.createOptimized("Next-Cursor");
+
+  /** The query parameter with the cursor to continue from */
+  static final String CURSOR = "cursor";
+
+  /** The number of seconds a client is asked to wait before retrying an overloaded service */
+  static final String RETRY_AFTER_SECONDS = "1";
+
+  private static final int NOT_IMPLEMENTED = 501;
+
+  private static final int SERVICE_UNAVAILABLE = 503;
+
+  /**
+   * Fail the request. When the failure is that the receiving verticle is overloaded (503), the
+   * client is told to retry later, instead of getting a generic server error. When the receiving
+   * verticle does not support the operation (501), e.g a query on a cache without indexes, the
+   * client is told so.
+   *
+   * @param ctx The routing context
+   * @param throwable The failure, e.g from an eventbus request
+   */
+  protected void fail(RoutingContext ctx, Throwable throwable) {
+    if (throwable instanceof ReplyException
+        && ((ReplyException) throwable).failureCode() == SERVICE_UNAVAILABLE) {
+      ctx.response().putHeader("Retry-After", RETRY_AFTER_SECONDS);
+      ctx.fail(SERVICE_UNAVAILABLE, throwable);
+    } else if (throwable instanceof ReplyException
+        && ((ReplyException) throwable).failureCode() == NOT_IMPLEMENTED) {
+      ctx.fail(NOT_IMPLEMENTED, throwable);
+    } else {
+      ctx.fail(throwable);
+    }
+  }
+
+  /**
+   * @param request The request
+   * @param defaultLimit The limit when the client does not ask for one
+   * @return The maximum number of entities the client asks for
+   * @throws IllegalArgumentException if the limit is not a number
+   */
+  static int limit(HttpServerRequest request, int defaultLimit) {
+    return Optional.ofNullable(request.headers().get(LIMIT_ENTITIES))
+        .map(Integer::parseInt)
+        .orElse(defaultLimit);
+  }
+
+  /** Tell the client where to continue, if there are more entities after the page */
+  static void putNextCursor(RoutingContext ctx, Page page) {
+    if (page.hasMore()) {
+      ctx.response().putHeader(NEXT_CURSOR, page.cursor());
+    }
+  }
+
+  /**
+   * Scatter a request for a page to all shards, and gather the pages, respecting the limit
+   *
+   * @param shards The number of cache shards
+   * @param pageOfShard Requests the page of a shard, by the index of the shard
+   * @param cursors The cursors that the pages are requested with, ordered by shard
+   * @param limit The maximum number of entities to return
+   * @return The future containing the gathered page, or a failure
+   */
+  @SuppressWarnings("rawtypes")
+  static Future<Page> scatterGather(
+      int shards, IntFunction<Future<Page>> pageOfShard, List<String> cursors, int limit) {
+    List<Future> pages =
+        IntStream.range(0, shards).mapToObj(pageOfShard).collect(Collectors.toList());
+
+    return CompositeFuture.all(pages).map(all -> CacheShards.gather(all.list(), cursors, limit));
+  }
+
+  /**
+   * Request a page from a cache shard on this node, with the limit and the cursor in the headers
+   *
+   * @param vertx The vertx instance
+   * @param address The address of the shard, see {@link CacheShards#address(String, int, int)}
+   * @param body The body of the request
+   * @param limit The maximum number of entities to return
+   * @param cursor The cursor to continue from, or null to start from the beginning
+   * @return The future containing the page, or a failure
+   */
+  static Future<Page> requestPage(
+      Vertx vertx, String address, Object body, int limit, String cursor) {
+    // Force "node-local" request
+    DeliveryOptions options = new DeliveryOptions().setLocalOnly(true);
+    options.addHeader(Cache.LIMIT, String.valueOf(limit));
+    if (cursor != null) {
+      options.addHeader(Cache.CURSOR, cursor);
+    }
+    return vertx.eventBus().<Page>request(address, body, options).map(Message::body);
+  }
 }
@@ -0,0 +1,210 @@
+package se.thced.api.handler;
+
+import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
+
+import se.thced.api.example.Cache;
+import se.thced.api.example.CacheShards;
+import se.thced.eventbus.EntitiesCodec;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.JsonEvent;
+import io.vertx.core.parsetools.JsonParser;
+import io.vertx.ext.web.RoutingContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Handler that adds entities in bulk. The body is either a JSON array of entities, or
+ * newline-delimited JSON (one entity per line).
+ *
+ * <p>The body is parsed as it streams in, and the entities are forwarded to the cache in batches.
+ * While a batch is being added, parsing is paused, which in turn pauses reading from the client.
+ * This keeps the memory constant no matter how large the upload is.
+ *
+ * <p>Since the body is streamed it can not be validated by the OpenAPI contract. Every entity is
+ * validated by the 'Entity' schema of the contract instead, as it is parsed.
+ *
+ * <p>Note! This handler must not be preceded by a body handler, since that would buffer the whole
+ * body before this handler is reached.
+ *
+ * @author thced
+ */
+public class AddEntitiesHandler extends AbstractHandler {
+
+  /** The maximum number of entities that are forwarded to the cache at once */
+  static final int BATCH_SIZE = 500;
+
+  /** The number of cache shards to route entities between */
+  private final int shards;
+
+  /** The validation of an entity, by the 'Entity' schema of the contract */
+  private final Predicate<JsonObject> isEntity;
+
+  /** @param isEntity The validation of an entity, by the 'Entity' schema of the contract */
+  public AddEntitiesHandler(Predicate<JsonObject> isEntity) {
+    this(1, isEntity);
+  }
+
+  /**
+   * @param shards The number of cache shards to route entities between
+   * @param isEntity The validation of an entity, by the 'Entity' schema of the contract
+   */
+  public AddEntitiesHandler(int shards, Predicate<JsonObject> isEntity) {
+    this.shards = shards;
+    this.isEntity = isEntity;
+  }
+
+  @Override
+  public void handle(RoutingContext ctx) {
+    new Ingestion(ctx).start();
+  }
+
+  /** The ingestion of the entities of one request */
+  private final class Ingestion {
+
+    private final RoutingContext ctx;
+    private final JsonParser parser;
+    private List<JsonArray> batches = newBatches();
+    private int batched;
+    private int added;
+    private boolean failed;
+
+    /** True once anything is parsed, after which an array would be nested or a second one */
+    private boolean started;
+
+    /** True once the top level array has ended, after which there must be nothing more */
+    private boolean ended;
+
+    private Ingestion(RoutingContext ctx) {
+      this.ctx = ctx;
+      this.parser = JsonParser.newParser(ctx.request()).objectValueMode();
+    }
+
+    private void start() {
+      parser
+          .handler(this::handleEvent)
+          .exceptionHandler(throwable -> fail(400, throwable))
+          .endHandler(v -> flush().onSuccess(ignore -> respond()));
+    }
+
+    private void handleEvent(JsonEvent event) {
+      if (ended) {
+        fail(400, new IllegalArgumentException("Content after the array of entities"));
+        return;
+      }
+      switch (event.type()) {
+        case START_ARRAY:
+          // The entities may be wrapped in one top level array, but not in nested arrays
+          if (started) {
+            fail(400, new IllegalArgumentException("Entities must not be in nested arrays"));
+            return;
+          }
+          break;
+        case END_ARRAY:
+          ended = true;
+          break;
+        case VALUE:
+          if (event.value() instanceof JsonObject && isEntity.test(event.objectValue())) {
+            batch(event.objectValue());
+          } else {
+            fail(400, new IllegalArgumentException("Not a valid entity: " + event.value()));
+          }
+          break;
+        default:
+          fail(400, new IllegalArgumentException("Not a valid entity: " + event.value()));
+      }
+      started = true;
+    }
+
+    private void batch(JsonObject entity) {
+      batches.get(CacheShards.shardOf(entity, shards)).add(entity);
+      if (++batched >= BATCH_SIZE) {
+        // Stop parsing, and thereby reading from the client, until the batch is added
+        parser.pause();
+        // On failure too, so the rest of the body is read, and discarded, once the request failed
+        flush().onComplete(ignore -> parser.resume());
+      }
+    }
+
+    /**
+     * Forward the current batch to the cache, one message per shard
+     *
+     * @return A future that completes when the cache has added all entities of the batch
+     */
+    @SuppressWarnings("rawtypes")
+    private Future<Void> flush() {
+      List<Future> requests = new ArrayList<>(shards);
+      for (int shard = 0; shard < shards; shard++) {
+        JsonArray batch = batches.get(shard);
+        if (!batch.isEmpty()) {
+          requests.add(addEntitiesToCache(ctx.vertx(), shard, batch));
+        }
+      }
+      added += batched;
+      batched = 0;
+      batches = newBatches();
+
+      return CompositeFuture.all(requests)
+          .onFailure(this::fail)
+          .mapEmpty();
+    }
+
+    private void respond() {
+      if (!failed) {
+        ctx.response().putHeader(CONTENT_TYPE, "application/json");
+        ctx.end(new JsonObject().put("added", added).toBuffer());
+      }
+    }
+
+    private void fail(int statusCode, Throwable throwable) {
+      if (stop(throwable)) {
+        ctx.fail(statusCode, throwable);
+      }
+    }
+
+    private void fail(Throwable throwable) {
+      if (stop(throwable)) {
+        AddEntitiesHandler.this.fail(ctx, throwable);
+      }
+    }
+
+    /** @return True if this is the first failure, that should be reported to the client */
+    private boolean stop(Throwable throwable) {
+      if (failed) {
+        return false;
+      }
+      failed = true;
+      parser.handler(null);
+      log.debug("Bulk add failed after {} entities", added, throwable);
+      return true;
+    }
+
+    private List<JsonArray> newBatches() {
+      List<JsonArray> shardBatches = new ArrayList<>(shards);
+      for (int shard = 0; shard < shards; shard++) {
+        shardBatches.add(new JsonArray());
+      }
+      return shardBatches;
+    }
+  }
+
+  /**
+   * Request the Cache Verticle that owns the shard to add a batch of entities
+   *
+   * @param vertx The vertx instance
+   * @param shard The index of the shard
+   * @param batch The entities to add
+   * @return The future containing the result, or failure, of the processing
+   */
+  private Future<Void> addEntitiesToCache(Vertx vertx, int shard, JsonArray batch) {
+    String address = CacheShards.address(Cache.ADD_ALL_TO_CACHE, shard, shards);
+    // Hand over the batch by reference, it is not touched here once it is sent
+    DeliveryOptions options = new DeliveryOptions().setCodecName(EntitiesCodec.NAME);
+    return vertx.eventBus().request(address, batch, options).mapEmpty();
+  }
+}
@@ -1,8 +1,11 @@
 package se.thced.api.handler;
 
 import se.thced.api.example.Cache;
+import se.thced.api.example.CacheShards;
+import se.thced.eventbus.EntityCodec;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 
@@ -16,19 +19,33 @@ import io.vertx.ext.web.RoutingContext;
  */
 public class AddEntityHandler extends AbstractHandler {
 
+  /** The number of cache shards to route entities between */
+  private final int shards;
+
+  public AddEntityHandler() {
+    this(1);
+  }
+
+  public AddEntityHandler(int shards) {
+    this.shards = shards;
+  }
+
   @Override
   public void handle(RoutingContext ctx) {
     final Vertx vertx = ctx.vertx();
-    final JsonObject entity = ctx.getBodyAsJson();
+    // Parsed already when validated by the fast path, see EntityValidationHandler
+    final JsonObject validated = ctx.get(EntityValidationHandler.ENTITY);
+    final JsonObject entity = validated != null ? validated : ctx.getBodyAsJson();
 
     addEntityToCache(vertx, entity)
         // Always call "end" or "next" on context, or this will forever hang
         .onSuccess(v -> ctx.end("OK"))
-        .onFailure(ctx::fail);
+        .onFailure(throwable -> fail(ctx, throwable));
   }
 
   /**
-   * Request processing by the Cache Verticle to insert the entity.
+   * Request processing by the Cache Verticle to insert the entity. The entity is routed to the
+   * shard that owns it, by the hash of its key.
    *
    * @param vertx The vertx instance
    * @param entity The entity we want to persist
@@ -37,6 +54,10 @@ public class AddEntityHandler extends AbstractHandler {
   private Future<Void> addEntityToCache(Vertx vertx, JsonObject entity) {
     // Note that we use mapEmpty here, we are not interested in anything in the response, only that
     // we DID get a response (otherwise we could use "send").
-    return vertx.eventBus().request(Cache.ADD_TO_CACHE, entity).mapEmpty();
+    String address =
+        CacheShards.address(Cache.ADD_TO_CACHE, CacheShards.shardOf(entity, shards), shards);
+    // Hand over the entity by reference, it is not touched here once it is sent
+    DeliveryOptions options = new DeliveryOptions().setCodecName(EntityCodec.NAME);
+    return vertx.eventBus().request(address, entity, options).mapEmpty();
   }
 }
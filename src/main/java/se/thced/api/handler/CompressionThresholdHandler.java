@@ -0,0 +1,60 @@
+package se.thced.api.handler;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Middle-ware that leaves responses smaller than a threshold uncompressed, when the server
+ * compresses responses. Compressing a few hundred bytes costs more time than the transfer of the
+ * bytes it saves, and gzip may even make them larger.
+ *
+ * <p>The size is known by the 'Content-Length' header, which is set before the headers are written
+ * when a response is ended with its whole body. Such a response is marked with the 'identity'
+ * content encoding, which the compressor leaves as it is. Chunked responses, e.g streamed entities,
+ * have no length up front and are always compressed.
+ *
+ * @author thced
+ */
+public class CompressionThresholdHandler implements Handler<RoutingContext> {
+
+  /** Available in config.properties */
+  public static final String THRESHOLD = "API_COMPRESSION_THRESHOLD";
+
+  /** About the size of a network packet, smaller responses fit in one anyway */
+  public static final int DEFAULT_THRESHOLD = 1024;
+
+  private final int threshold;
+
+  private CompressionThresholdHandler(int threshold) {
+    this.threshold = threshold;
+  }
+
+  /**
+   * Instantiate a new compression threshold handler
+   *
+   * <p>Follows Vert.x conventional way of instantiating handlers
+   *
+   * @param threshold The size in bytes, below which responses are not compressed
+   */
+  public static CompressionThresholdHandler create(int threshold) {
+    return new CompressionThresholdHandler(threshold);
+  }
+
+  @Override
+  public void handle(RoutingContext ctx) {
+    HttpServerResponse response = ctx.response();
+    ctx.addHeadersEndHandler(
+        v -> {
+          String length = response.headers().get(HttpHeaders.CONTENT_LENGTH);
+          if (length != null
+              && Long.parseLong(length) < threshold
+              && !response.headers().contains(HttpHeaders.CONTENT_ENCODING)) {
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, HttpHeaders.IDENTITY);
+          }
+        });
+
+    ctx.next();
+  }
+}
@@ -3,9 +3,9 @@ package se.thced.api.handler;
 import io.reactiverse.contextual.logging.ContextualData;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
+import io.vertx.core.ServiceHelper;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.ext.web.RoutingContext;
-import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,26 +19,57 @@ public class CorrelationIdDecoratingHandler implements Handler<RoutingContext> {
 
   public static final CharSequence CORRELATION_ID = HttpHeaders.createOptimized("Correlation-ID");
 
+  /** Available in config.properties */
+  public static final String GENERATOR = "CORRELATION_ID_GENERATOR";
+
   private static final Logger log = LoggerFactory.getLogger(CorrelationIdDecoratingHandler.class);
 
-  private CorrelationIdDecoratingHandler() {
-    // Hidden
+  private final CorrelationIdGenerator generator;
+
+  private CorrelationIdDecoratingHandler(CorrelationIdGenerator generator) {
+    this.generator = generator;
   }
 
   /**
-   * Instantiate a new correlation id handler
+   * Instantiate a new correlation id handler, with the first {@link CorrelationIdGenerator} found
    *
    * <p>Follows Vert.x conventional way of instantiating handlers
    */
   public static CorrelationIdDecoratingHandler create() {
-    return new CorrelationIdDecoratingHandler();
+    return create((String) null);
+  }
+
+  /**
+   * Instantiate a new correlation id handler
+   *
+   * @param implementation The simple class name of the {@link CorrelationIdGenerator} to use, or
+   *     null for the first one found
+   * @throws IllegalArgumentException if there is no such implementation
+   */
+  public static CorrelationIdDecoratingHandler create(String implementation) {
+    CorrelationIdGenerator generator = loadGenerator(implementation);
+    if (generator == null) {
+      throw new IllegalArgumentException(
+          "No CorrelationIdGenerator implementation found: " + implementation);
+    }
+    log.debug("Correlation id generator: {}", generator.getClass().getSimpleName());
+    return create(generator);
+  }
+
+  /**
+   * Instantiate a new correlation id handler
+   *
+   * @param generator Generates the ids of requests without one
+   */
+  public static CorrelationIdDecoratingHandler create(CorrelationIdGenerator generator) {
+    return new CorrelationIdDecoratingHandler(generator);
   }
 
   @Override
   public void handle(RoutingContext ctx) {
     final MultiMap headers = ctx.request().headers();
     final String correlationId =
-        headers.contains(CORRELATION_ID) ? headers.get(CORRELATION_ID) : correlationId();
+        headers.contains(CORRELATION_ID) ? headers.get(CORRELATION_ID) : generator.generate();
 
     // Put the correlation id on the local map
     ContextualData.put(CORRELATION_ID.toString(), correlationId);
@@ -52,7 +83,20 @@ public class CorrelationIdDecoratingHandler implements Handler<RoutingContext> {
     ctx.next();
   }
 
-  private static String correlationId() {
-    return UUID.randomUUID().toString();
+  /**
+   * Load a generator implementation, with SPI
+   *
+   * @param implementation The simple class name of the implementation, or null for the first one
+   *     found
+   * @return The generator, or null if there is no such implementation
+   */
+  private static CorrelationIdGenerator loadGenerator(String implementation) {
+    if (implementation == null || implementation.isBlank()) {
+      return ServiceHelper.loadFactoryOrNull(CorrelationIdGenerator.class);
+    }
+    return ServiceHelper.loadFactories(CorrelationIdGenerator.class).stream()
+        .filter(generator -> generator.getClass().getSimpleName().equals(implementation))
+        .findFirst()
+        .orElse(null);
   }
 }
@@ -0,0 +1,17 @@
+package se.thced.api.handler;
+
+/**
+ * Generates the correlation ids of requests that are received without one, see {@link
+ * CorrelationIdDecoratingHandler}.
+ *
+ * <p>Implementations are loaded with SPI, see 'resources/META-INF/services'. Ids are generated on
+ * the event loops, so an implementation must never block, and should not contend between threads.
+ *
+ * @author thced
+ */
+@FunctionalInterface
+public interface CorrelationIdGenerator {
+
+  /** @return A new, unique, correlation id */
+  String generate();
+}
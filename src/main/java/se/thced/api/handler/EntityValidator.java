@@ -0,0 +1,276 @@
+package se.thced.api.handler;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.json.jackson.JacksonCodec;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A validator of entities, compiled from the JSON schema of the entity in the OpenAPI contract. It
+ * validates the body in one pass as it is parsed, and produces the entity directly, where the
+ * generic validation parses the body into a tree, walks the tree with the compiled schema, and the
+ * handler then parses the body once more.
+ *
+ * <p>The result is the same as that of the generic validation: an object, with all the required
+ * properties, where the declared properties have their declared type and are not null. Like the
+ * generic path, integers are those that fit in a long, the last of duplicate properties wins, and
+ * other properties are kept as they are parsed by Vert.x.
+ *
+ * <p>Only the part of JSON schema that an entity needs is supported: 'type', 'required' and
+ * 'properties' of primitive types. A schema that uses anything else fails to compile, so that the
+ * contract can not change without the fast path being updated as well.
+ *
+ * @author thced
+ */
+public final class EntityValidator {
+
+  /** Keywords that only describe the schema, and do not take part in the validation */
+  private static final Set<String> ANNOTATIONS = Set.of("description", "title", "deprecated");
+
+  private enum Type {
+    STRING,
+    INTEGER,
+    NUMBER,
+    BOOLEAN
+  }
+
+  /** The declared properties, by name, and their type and index in the masks below */
+  private final Map<String, Property> properties;
+
+  /** The bit of each required property */
+  private final long required;
+
+  private EntityValidator(Map<String, Property> properties, long required) {
+    this.properties = properties;
+    this.required = required;
+  }
+
+  /**
+   * Compile a validator from a JSON schema
+   *
+   * @param schema The JSON schema of an entity, without references
+   * @return The compiled validator
+   * @throws IllegalArgumentException If the schema uses keywords that are not supported
+   */
+  public static EntityValidator compile(JsonObject schema) {
+    checkKeywords(schema, Set.of("type", "required", "properties"));
+    if (!"object".equals(schema.getValue("type"))) {
+      throw new IllegalArgumentException("Not an object schema: " + schema.getValue("type"));
+    }
+
+    JsonObject declared = schema.getJsonObject("properties", new JsonObject());
+    if (declared.size() > Long.SIZE) {
+      throw new IllegalArgumentException("Too many properties: " + declared.size());
+    }
+    Map<String, Property> properties = new HashMap<>();
+    for (String name : declared.fieldNames()) {
+      JsonObject property = declared.getJsonObject(name);
+      checkKeywords(property, Set.of("type"));
+      properties.put(name, new Property(typeOf(property.getValue("type")), properties.size()));
+    }
+
+    long required = 0;
+    for (Object name : schema.getJsonArray("required", new JsonArray())) {
+      Property property = properties.get(name);
+      if (property == null) {
+        // Required, but of any type. Rare enough to be left to the generic path
+        throw new IllegalArgumentException("Required property is not declared: " + name);
+      }
+      required |= property.bit;
+    }
+    return new EntityValidator(properties, required);
+  }
+
+  private static void checkKeywords(JsonObject schema, Set<String> supported) {
+    for (String keyword : schema.fieldNames()) {
+      if (!supported.contains(keyword)
+          && !ANNOTATIONS.contains(keyword)
+          && !keyword.startsWith("x-")) {
+        throw new IllegalArgumentException("Keyword is not supported: " + keyword);
+      }
+    }
+  }
+
+  private static Type typeOf(Object type) {
+    if (!(type instanceof String)) {
+      throw new IllegalArgumentException("Type is not supported: " + type);
+    }
+    switch ((String) type) {
+      case "string":
+        return Type.STRING;
+      case "integer":
+        return Type.INTEGER;
+      case "number":
+        return Type.NUMBER;
+      case "boolean":
+        return Type.BOOLEAN;
+      default:
+        throw new IllegalArgumentException("Type is not supported: " + type);
+    }
+  }
+
+  /**
+   * Parse and validate an entity
+   *
+   * @param body The JSON of the entity
+   * @return The entity
+   * @throws IllegalArgumentException If the body is not JSON, or not a valid entity
+   */
+  public JsonObject validate(Buffer body) {
+    try (JsonParser parser = JacksonCodec.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IllegalArgumentException("Not an object");
+      }
+      Map<String, Object> entity = new LinkedHashMap<>();
+      long present = 0;
+      long invalid = 0;
+      String name;
+      while ((name = parser.nextFieldName()) != null) {
+        JsonToken token = parser.nextToken();
+        Property property = properties.get(name);
+        if (property == null) {
+          entity.put(name, parseAny(parser, token));
+          continue;
+        }
+        // A later duplicate replaces the value, and thereby its validity
+        present |= property.bit;
+        if (property.accepts(parser, token)) {
+          invalid &= ~property.bit;
+        } else {
+          invalid |= property.bit;
+        }
+        entity.put(name, parseAny(parser, token));
+      }
+      if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+        throw new IllegalArgumentException("Not a single object");
+      }
+      if (invalid != 0) {
+        throw new IllegalArgumentException("Not a valid entity: " + names(invalid));
+      }
+      if ((present & required) != required) {
+        throw new IllegalArgumentException("Missing properties: " + names(required & ~present));
+      }
+      return new JsonObject(entity);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Not valid JSON: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Validate an entity that is already parsed, e.g by a streaming parser
+   *
+   * @param entity The entity, as parsed by Vert.x
+   * @return True if this is a valid entity
+   */
+  public boolean isValid(JsonObject entity) {
+    Map<String, Object> values = entity.getMap();
+    for (Map.Entry<String, Property> declared : properties.entrySet()) {
+      Property property = declared.getValue();
+      if (values.containsKey(declared.getKey())) {
+        if (!property.accepts(values.get(declared.getKey()))) {
+          return false;
+        }
+      } else if ((required & property.bit) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return The value, parsed the same way as Vert.x parses JSON */
+  private static Object parseAny(JsonParser parser, JsonToken token) throws IOException {
+    if (token == null) {
+      throw new IOException("Unexpected end of input");
+    }
+    switch (token) {
+      case START_OBJECT:
+        Map<String, Object> object = new LinkedHashMap<>();
+        String name;
+        while ((name = parser.nextFieldName()) != null) {
+          object.put(name, parseAny(parser, parser.nextToken()));
+        }
+        return object;
+      case START_ARRAY:
+        List<Object> array = new ArrayList<>();
+        JsonToken element;
+        while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+          array.add(parseAny(parser, element));
+        }
+        return array;
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return parser.getNumberValue();
+      case VALUE_TRUE:
+        return Boolean.TRUE;
+      case VALUE_FALSE:
+        return Boolean.FALSE;
+      case VALUE_NULL:
+        return null;
+      default:
+        throw new IOException("Unexpected token: " + token);
+    }
+  }
+
+  private String names(long bits) {
+    List<String> names = new ArrayList<>();
+    properties.forEach(
+        (name, property) -> {
+          if ((bits & property.bit) != 0) {
+            names.add(name);
+          }
+        });
+    return String.join(", ", names);
+  }
+
+  /** A declared property */
+  private static final class Property {
+
+    private final Type type;
+    private final long bit;
+
+    private Property(Type type, int index) {
+      this.type = type;
+      this.bit = 1L << index;
+    }
+
+    /** @return True if the current value is of the type, null is not (not nullable) */
+    private boolean accepts(JsonParser parser, JsonToken token) throws IOException {
+      switch (type) {
+        case STRING:
+          return token == JsonToken.VALUE_STRING;
+        case INTEGER:
+          return token == JsonToken.VALUE_NUMBER_INT
+              && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER;
+        case NUMBER:
+          return token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT;
+        default:
+          return token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE;
+      }
+    }
+
+    /** @return True if the parsed value is of the type, null is not (not nullable) */
+    private boolean accepts(Object value) {
+      switch (type) {
+        case STRING:
+          return value instanceof String;
+        case INTEGER:
+          return value instanceof Integer || value instanceof Long;
+        case NUMBER:
+          return value instanceof Number;
+        default:
+          return value instanceof Boolean;
+      }
+    }
+  }
+}
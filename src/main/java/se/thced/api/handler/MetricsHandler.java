@@ -0,0 +1,67 @@
+package se.thced.api.handler;
+
+import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
+
+import se.thced.MetricsSupport;
+import se.thced.OperationTimers;
+import se.thced.PrometheusFormat;
+import com.codahale.metrics.SharedMetricRegistries;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Handler that exposes the metrics in Prometheus text format: the timers of the API operations, and
+ * everything in the shared Dropwizard registry, e.g the Vert.x metrics.
+ *
+ * <p>The metrics are collected on a single worker thread, shared by all instances of this handler.
+ * That keeps the collection off the event loop, and makes sure that there is only one reader of the
+ * timers at a time, without any locks.
+ *
+ * @author thced
+ */
+public class MetricsHandler extends AbstractHandler {
+
+  private static final String EXECUTOR = "metrics-collector";
+
+  private final OperationTimers timers;
+  private final WorkerExecutor executor;
+
+  private MetricsHandler(Vertx vertx, OperationTimers timers) {
+    this.timers = timers;
+    this.executor = vertx.createSharedWorkerExecutor(EXECUTOR, 1);
+  }
+
+  /**
+   * Instantiate a new metrics handler, that exposes the shared timers
+   *
+   * <p>Follows Vert.x conventional way of instantiating handlers
+   */
+  public static MetricsHandler create(Vertx vertx) {
+    return create(vertx, OperationTimers.shared());
+  }
+
+  public static MetricsHandler create(Vertx vertx, OperationTimers timers) {
+    return new MetricsHandler(vertx, timers);
+  }
+
+  @Override
+  public void handle(RoutingContext ctx) {
+    executor
+        .<String>executeBlocking(promise -> promise.complete(collect()), false)
+        .onSuccess(
+            metrics -> {
+              ctx.response().putHeader(CONTENT_TYPE, PrometheusFormat.CONTENT_TYPE);
+              ctx.end(metrics);
+            })
+        .onFailure(ctx::fail);
+  }
+
+  private String collect() {
+    StringBuilder out = new StringBuilder();
+    PrometheusFormat.write(timers, out);
+    PrometheusFormat.write(
+        SharedMetricRegistries.getOrCreate(MetricsSupport.DEFAULT_REGISTRY_NAME), out);
+    return out.toString();
+  }
+}
@@ -0,0 +1,53 @@
+package se.thced.api.handler;
+
+import se.thced.OperationTimers;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Middle-ware that times every request to an API operation, by the OpenAPI 'operationId' and the
+ * status class of the response, see {@link OperationTimers}.
+ *
+ * <p>The operation is known by the name of the route that handled the request, which the router
+ * builder names by operation id. Requests to routes without a name, i.e that are not part of the
+ * API, are not timed.
+ *
+ * @author thced
+ */
+public class OperationMetricsHandler implements Handler<RoutingContext> {
+
+  private final OperationTimers timers;
+
+  private OperationMetricsHandler(OperationTimers timers) {
+    this.timers = timers;
+  }
+
+  /**
+   * Instantiate a new operation metrics handler, that records into the shared timers
+   *
+   * <p>Follows Vert.x conventional way of instantiating handlers
+   */
+  public static OperationMetricsHandler create() {
+    return create(OperationTimers.shared());
+  }
+
+  public static OperationMetricsHandler create(OperationTimers timers) {
+    return new OperationMetricsHandler(timers);
+  }
+
+  @Override
+  public void handle(RoutingContext ctx) {
+    long start = System.nanoTime();
+    ctx.addBodyEndHandler(
+        v -> {
+          Route route = ctx.currentRoute();
+          if (route != null && route.getName() != null) {
+            timers.record(
+                route.getName(), ctx.response().getStatusCode(), System.nanoTime() - start);
+          }
+        });
+
+    ctx.next();
+  }
+}
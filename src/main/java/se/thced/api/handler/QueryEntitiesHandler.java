@@ -0,0 +1,92 @@
+package se.thced.api.handler;
+
+import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
+
+import se.thced.api.example.Cache;
+import se.thced.api.example.CacheShards;
+import se.thced.api.example.Page;
+import se.thced.api.example.Query;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import java.util.List;
+
+/**
+ * Handler that queries the entities by their fields, e.g {@code
+ * /api/query?gender=female&minAge=20&maxAge=30}. The query is answered by the cache from its
+ * secondary indexes, so the clients do not have to download all entities and filter them.
+ *
+ * <p>The matching entities are returned in pages, like by {@link ReturnEntitiesHandler}, with the
+ * cursor to the next page in the 'Next-Cursor' header. Queries always go over the eventbus, also
+ * when the caches allow direct access.
+ *
+ * @author thced
+ */
+public class QueryEntitiesHandler extends AbstractHandler {
+
+  /** The number of cache shards to gather entities from */
+  private final int shards;
+
+  public QueryEntitiesHandler() {
+    this(1);
+  }
+
+  public QueryEntitiesHandler(int shards) {
+    this.shards = shards;
+  }
+
+  @Override
+  public void handle(RoutingContext ctx) {
+    final HttpServerRequest request = ctx.request();
+    final Query query;
+    final int limit;
+    final List<String> cursors;
+    try {
+      query =
+          new Query(
+              request.getParam(Query.GENDER),
+              request.getParam(Query.NAME),
+              integer(request.getParam(Query.MIN_AGE)),
+              integer(request.getParam(Query.MAX_AGE)));
+      limit = limit(request, Cache.DEFAULT_LIMIT);
+      cursors = CacheShards.cursors(request.getParam(CURSOR), shards);
+    } catch (IllegalArgumentException e) {
+      ctx.fail(400, e);
+      return;
+    }
+
+    queryEntities(ctx.vertx(), query, limit, cursors)
+        .onSuccess(page -> ctx.response().putHeader(CONTENT_TYPE, "application/json"))
+        .onSuccess(page -> putNextCursor(ctx, page))
+        .onSuccess(page -> ctx.end(page.encoded()))
+        .onFailure(throwable -> fail(ctx, throwable));
+  }
+
+  /**
+   * Scatter the query to all shards, and gather the results, respecting the limit
+   *
+   * @param vertx The vertx instance
+   * @param query The query
+   * @param limit The maximum number of entities to return
+   * @param cursors The cursor to continue from, for each shard
+   * @return The future containing the page of matching entities, or a failure
+   */
+  private Future<Page> queryEntities(Vertx vertx, Query query, int limit, List<String> cursors) {
+    return scatterGather(
+        shards,
+        shard ->
+            requestPage(
+                vertx,
+                CacheShards.address(Cache.QUERY_CACHE, shard, shards),
+                query.toJson(),
+                limit,
+                cursors.get(shard)),
+        cursors,
+        limit);
+  }
+
+  private static Integer integer(String value) {
+    return value != null ? Integer.valueOf(value) : null;
+  }
+}
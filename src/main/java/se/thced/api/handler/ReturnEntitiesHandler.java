@@ -3,21 +3,45 @@ package se.thced.api.handler;
 import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
 
 import se.thced.api.example.Cache;
+import se.thced.api.example.CacheShards;
+import se.thced.api.example.Page;
+import se.thced.api.example.SharedCaches;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.DeliveryOptions;
-import io.vertx.core.eventbus.Message;
 import io.vertx.core.http.HttpHeaders;
-import io.vertx.core.json.JsonArray;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Handler that demonstrates the usage of routing context together with EventBus to dispatch a
  * message over to another Verticle for retrieval of data. On successful processing in the "cache",
  * we will reply back to the client with an array of entities (if cache is not empty..).
  *
+ * <p>Large caches are paged through with a cursor, which is returned in the 'Next-Cursor' header
+ * as long as there are more entities to retrieve.
+ *
+ * <p>Clients that want many entities can have them streamed instead, as newline-delimited JSON
+ * (when accepting 'application/x-ndjson') or as a JSON array (with the 'stream' query parameter).
+ * The entities are then retrieved a page at a time and written to the response in chunks, and the
+ * next page is only retrieved once the response has room for it. A slow client thereby holds back
+ * the retrieval, instead of having the whole result buffered on the heap.
+ *
+ * <p>A page is tagged with the versions of the caches it is retrieved from, in a strong 'ETag'.
+ * Clients that poll the same page send the tag back in 'If-None-Match', and as long as the caches
+ * are unchanged they are answered '304 Not Modified', without a single entity being retrieved or
+ * encoded. The tags of distributed caches are the same on all nodes, so that a client behind a load
+ * balancer can send the tag to any of them. Streamed entities are not tagged.
+ *
  * @author thced
  */
 public class ReturnEntitiesHandler extends AbstractHandler {
@@ -25,40 +49,345 @@ public class ReturnEntitiesHandler extends AbstractHandler {
   /** A "dummy" entity to send over EventBus, since we are not allowed to send null value. */
   private static final JsonObject EMPTY = new JsonObject();
 
-  /** The header that controls how many entities we return */
-  private static final CharSequence LIMIT_ENTITIES = HttpHeaders.createOptimized("Limit-Entities");
+  /** The query parameter that asks for pretty printed entities */
+  private static final String PRETTY = "pretty";
+
+  /** The query parameter that asks for all entities streamed as a JSON array */
+  private static final String STREAM = "stream";
+
+  static final String NDJSON = "application/x-ndjson";
+
+  /**
+   * Versions start over when the application restarts, so the tags of this process are told apart
+   * from those of an earlier one, or of another node, that may have had other entities by the same
+   * versions. Used unless the caches have an epoch of their own, see {@link Cache#epoch()}.
+   */
+  private static final String EPOCH = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+  /** The number of entities retrieved, and written as one chunk, at a time when streaming */
+  static final int STREAM_PAGE_SIZE = 500;
+
+  private static final Buffer NEWLINE = Buffer.buffer("\n");
+  private static final Buffer COMMA = Buffer.buffer(",");
+
+  /** The number of cache shards to gather entities from */
+  private final int shards;
+
+  /** Whether to read in-process from the caches on this node, when they allow it */
+  private final boolean directAccess;
+
+  public ReturnEntitiesHandler() {
+    this(1, false);
+  }
+
+  public ReturnEntitiesHandler(int shards, boolean directAccess) {
+    this.shards = shards;
+    this.directAccess = directAccess;
+  }
 
   @Override
   public void handle(RoutingContext ctx) {
     final Vertx vertx = ctx.vertx();
-    final Optional<String> maxEntities =
-        Optional.ofNullable(ctx.request().headers().get(LIMIT_ENTITIES));
+    final String cursor = ctx.request().getParam(CURSOR);
+    final boolean pretty = Boolean.parseBoolean(ctx.request().getParam(PRETTY));
+    final boolean ndjson = acceptsNdjson(ctx);
+    final boolean streamed = ndjson || Boolean.parseBoolean(ctx.request().getParam(STREAM));
+    final int limit;
+    final List<String> cursors;
+    try {
+      // A stream has all entities after the cursor, unless limited
+      limit = limit(ctx.request(), streamed ? Integer.MAX_VALUE : Cache.DEFAULT_LIMIT);
+      cursors = CacheShards.cursors(cursor, shards);
+    } catch (IllegalArgumentException e) {
+      ctx.fail(400, e);
+      return;
+    }
 
-    requestEntitiesFromCache(vertx, maxEntities)
-        .onSuccess(allEntities -> log.debug("Entites: {}", allEntities.encodePrettily()))
-        .onSuccess(allEntities -> ctx.response().putHeader(CONTENT_TYPE, "application/json"))
-        .onSuccess(allEntities -> ctx.end(allEntities.encodePrettily()))
+    if (streamed) {
+      HttpServerResponse response = ctx.response();
+      response.setChunked(true).putHeader(CONTENT_TYPE, ndjson ? NDJSON : "application/json");
+      if (!ndjson) {
+        response.write("[");
+      }
+      stream(ctx, ndjson, limit, cursors, true);
+      return;
+    }
+
+    // Read before the entities, so that the entities are at least as new as their tag
+    versionsOfCaches(vertx)
+        .map(versions -> etag(versions, limit, cursor, pretty))
+        // Caches that can not tell their versions are retrieved from every time, without a tag
+        .otherwise((String) null)
+        .onSuccess(
+            etag -> {
+              if (etag != null) {
+                ctx.response().putHeader(HttpHeaders.ETAG, etag);
+              }
+              if (matches(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                ctx.response().setStatusCode(304).end();
+              } else {
+                returnPage(ctx, limit, cursors, pretty);
+              }
+            });
+  }
+
+  /**
+   * Retrieve a page of entities, and return it
+   *
+   * @param ctx The routing context
+   * @param limit The maximum number of entities on the page
+   * @param cursors The cursor to continue from, for each shard
+   * @param pretty True to pretty print the entities
+   */
+  private void returnPage(RoutingContext ctx, int limit, List<String> cursors, boolean pretty) {
+    retrieveEntities(ctx.vertx(), limit, cursors)
+        .onSuccess(
+            page -> {
+              if (log.isDebugEnabled()) {
+                log.debug("Entites: {}", page.entities().encode());
+              }
+            })
+        .onSuccess(page -> ctx.response().putHeader(CONTENT_TYPE, "application/json"))
+        .onSuccess(page -> putNextCursor(ctx, page))
+        // The compact encoding is pre-encoded by the cache, pretty printing is only done on request
+        .onSuccess(
+            page -> {
+              if (pretty) {
+                ctx.end(page.entities().encodePrettily());
+              } else {
+                ctx.end(page.encoded());
+              }
+            })
         .onFailure(ctx::fail);
   }
 
   /**
-   * Request all the entities in the cache.
+   * Stream the entities a page at a time. The next page is retrieved once the current one is
+   * written, or, if the response is full, once it has been drained to the client.
    *
-   * <p>Demonstrate the usage of headers over eventbus
+   * @param ctx The routing context
+   * @param ndjson True for newline-delimited JSON, false for a JSON array
+   * @param remaining The maximum number of entities left to write
+   * @param cursors The cursor to continue from, for each shard
+   * @param first True if no entity is written yet
+   */
+  private void stream(
+      RoutingContext ctx, boolean ndjson, int remaining, List<String> cursors, boolean first) {
+    HttpServerResponse response = ctx.response();
+    retrieveEntities(ctx.vertx(), Math.min(remaining, STREAM_PAGE_SIZE), cursors)
+        .onSuccess(
+            page -> {
+              if (response.closed()) {
+                return;
+              }
+              if (!page.entities().isEmpty()) {
+                response.write(chunk(page, ndjson, first));
+              }
+
+              int left = remaining - page.size();
+              if (!page.hasMore() || left <= 0) {
+                response.end(ndjson ? Buffer.buffer() : Buffer.buffer("]"));
+                return;
+              }
+
+              List<String> next = CacheShards.cursors(page.cursor(), shards);
+              boolean none = first && page.entities().isEmpty();
+              Handler<Void> more = ignore -> stream(ctx, ndjson, left, next, none);
+              if (response.writeQueueFull()) {
+                response.drainHandler(more);
+              } else {
+                // On the event loop, since pages read in-process complete right away
+                ctx.vertx().runOnContext(more);
+              }
+            })
+        .onFailure(
+            throwable -> {
+              if (!response.headWritten()) {
+                ctx.fail(throwable);
+              } else {
+                // The status is already sent, the client sees a truncated stream instead
+                log.warn("Streaming entities failed", throwable);
+                response.reset();
+              }
+            });
+  }
+
+  /**
+   * The tag of a page, from everything that decides its contents: the versions of the caches, and
+   * the limit, cursor and format that it is retrieved with
+   */
+  private static String etag(List<Version> versions, int limit, String cursor, boolean pretty) {
+    // The caches of all shards are of the same implementation, and share an epoch if they have one
+    boolean shared = versions.stream().allMatch(version -> version.epoch != null);
+    String epoch =
+        shared
+            ? versions.stream()
+                .map(version -> version.epoch)
+                .distinct()
+                .collect(Collectors.joining("."))
+            : EPOCH;
+    StringBuilder etag = new StringBuilder("\"").append(epoch);
+    versions.forEach(version -> etag.append('-').append(version.version));
+    etag.append('-').append(limit);
+    if (cursor != null) {
+      // Digits and dots, validated by the contract and the shards
+      etag.append('-').append(cursor);
+    }
+    if (pretty) {
+      etag.append("-pretty");
+    }
+    return etag.append('"').toString();
+  }
+
+  /**
+   * @return True if the tag is one of those in the 'If-None-Match' header, compared the weak way
+   *     that the header is compared, or if the header matches any tag
+   */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null || etag == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.equals("*") || etag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Encode the entities of a page as one chunk of the stream */
+  private static Buffer chunk(Page page, boolean ndjson, boolean first) {
+    Buffer chunk = Buffer.buffer();
+    for (int i = 0; i < page.size(); i++) {
+      Buffer entity = page.entities().getJsonObject(i).toBuffer();
+      if (ndjson) {
+        chunk.appendBuffer(entity).appendBuffer(NEWLINE);
+      } else {
+        if (!first || i > 0) {
+          chunk.appendBuffer(COMMA);
+        }
+        chunk.appendBuffer(entity);
+      }
+    }
+    return chunk;
+  }
+
+  /** @return True if the client asks for newline-delimited JSON */
+  private static boolean acceptsNdjson(RoutingContext ctx) {
+    String accept = ctx.request().getHeader(HttpHeaders.ACCEPT);
+    if (accept == null || !accept.contains(NDJSON)) {
+      // The router may negotiate a wildcard to any of the declared types, in no given order
+      return false;
+    }
+    // Negotiated by the router when the operation declares its content types
+    String acceptable = ctx.getAcceptableContentType();
+    return acceptable == null || NDJSON.equals(acceptable);
+  }
+
+  /**
+   * Retrieve a page of entities, in-process if the caches on this node are shared, or else over
+   * the eventbus.
    *
    * @param vertx The vertx instance
    * @param limit The maximum number of entities to return
-   * @return The future containing the array of entities, or a failure
+   * @param cursors The cursor to continue from, for each shard
+   * @return The future containing the page of entities, or a failure
+   */
+  private Future<Page> retrieveEntities(Vertx vertx, int limit, List<String> cursors) {
+    if (directAccess) {
+      Optional<List<Cache<JsonObject>>> caches = SharedCaches.lookup(vertx, shards);
+      if (caches.isPresent()) {
+        return retrieveInProcess(caches.get(), limit, cursors);
+      }
+    }
+    return requestEntitiesFromCache(vertx, limit, cursors);
+  }
+
+  /**
+   * Read the versions of the caches of all shards, in-process if the caches on this node are
+   * shared, or else over the eventbus. A version costs next to nothing to read, compared to the
+   * entities.
+   *
+   * @param vertx The vertx instance
+   * @return The future containing the version of each shard, ordered by shard, or a failure
    */
-  private Future<JsonArray> requestEntitiesFromCache(Vertx vertx, Optional<String> limit) {
-    // Force "node-local" request
-    DeliveryOptions options = new DeliveryOptions().setLocalOnly(true);
-    // Add a possible header to reduce results
-    limit.ifPresent(s -> options.addHeader("limit", s));
+  @SuppressWarnings("rawtypes")
+  private Future<List<Version>> versionsOfCaches(Vertx vertx) {
+    Optional<List<Cache<JsonObject>>> caches =
+        directAccess ? SharedCaches.lookup(vertx, shards) : Optional.empty();
+    List<Future> versions =
+        IntStream.range(0, shards)
+            .mapToObj(
+                shard ->
+                    caches.isPresent()
+                        ? versionOf(caches.get().get(shard))
+                        : requestVersion(vertx, shard))
+            .collect(Collectors.toList());
+
+    return CompositeFuture.all(versions).map(CompositeFuture::list);
+  }
 
+  private static Future<Version> versionOf(Cache<JsonObject> cache) {
+    return cache.version().map(version -> new Version(cache.epoch(), version));
+  }
+
+  private Future<Version> requestVersion(Vertx vertx, int shard) {
+    String address = CacheShards.address(Cache.VERSION_OF_CACHE, shard, shards);
     return vertx
         .eventBus()
-        .<JsonArray>request(Cache.RETRIEVE_FROM_CACHE, EMPTY, options)
-        .map(Message::body);
+        .<Long>request(address, EMPTY, new DeliveryOptions().setLocalOnly(true))
+        .map(reply -> new Version(reply.headers().get(Cache.EPOCH), reply.body()));
+  }
+
+  /**
+   * Read the entities directly from the (thread-safe) caches, skipping the eventbus
+   *
+   * @param caches The caches of all shards
+   * @param limit The maximum number of entities to return
+   * @param cursors The cursor to continue from, for each shard
+   * @return The future containing the page of entities, or a failure
+   */
+  private Future<Page> retrieveInProcess(
+      List<Cache<JsonObject>> caches, int limit, List<String> cursors) {
+    return scatterGather(
+        shards, shard -> caches.get(shard).retrieve(limit, cursors.get(shard)), cursors, limit);
+  }
+
+  /**
+   * Request a page of entities from the cache. When the cache is partitioned, the request is
+   * scattered to all shards and the results are gathered, respecting the limit.
+   *
+   * <p>Demonstrate the usage of headers over eventbus
+   *
+   * @param vertx The vertx instance
+   * @param limit The maximum number of entities to return
+   * @param cursors The cursor to continue from, for each shard
+   * @return The future containing the page of entities, or a failure
+   */
+  private Future<Page> requestEntitiesFromCache(Vertx vertx, int limit, List<String> cursors) {
+    return scatterGather(
+        shards,
+        shard ->
+            requestPage(
+                vertx,
+                CacheShards.address(Cache.RETRIEVE_FROM_CACHE, shard, shards),
+                EMPTY,
+                limit,
+                cursors.get(shard)),
+        cursors,
+        limit);
+  }
+
+  /** The version of the cache of a shard, and its epoch, or null if it has none */
+  private static final class Version {
+
+    private final String epoch;
+    private final long version;
+
+    private Version(String epoch, long version) {
+      this.epoch = epoch;
+      this.version = version;
+    }
   }
 }
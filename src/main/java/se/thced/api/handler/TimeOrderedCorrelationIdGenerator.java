@@ -0,0 +1,69 @@
+package se.thced.api.handler;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates time-ordered correlation ids, in the spirit of <a
+ * href="https://github.com/ulid/spec">ULID</a>. An id is 128 bits, encoded as 26 characters of
+ * Crockford's base32, so that ids sort in the order they were generated, by the millisecond:
+ *
+ * <pre>
+ *   48 bits  milliseconds since the epoch
+ *   32 bits  node, random per generator
+ *   16 bits  thread, assigned to each thread on its first id
+ *   32 bits  sequence, per thread
+ * </pre>
+ *
+ * <p>Every thread has a sequence of its own, so generating an id never blocks, and does not contend
+ * with other threads. Ids are unique as long as a thread generates less than 2^32 ids per
+ * millisecond.
+ *
+ * @author thced
+ */
+public class TimeOrderedCorrelationIdGenerator implements CorrelationIdGenerator {
+
+  static final int LENGTH = 26;
+
+  private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+  private static final AtomicInteger threads = new AtomicInteger();
+
+  private final long node = ThreadLocalRandom.current().nextInt() & 0xffffffffL;
+
+  private final ThreadLocal<Sequence> sequences = ThreadLocal.withInitial(Sequence::new);
+
+  @Override
+  public String generate() {
+    Sequence sequence = sequences.get();
+    // Never let the time go backwards for a thread, e.g when the clock is adjusted
+    long time = Math.max(System.currentTimeMillis(), sequence.time);
+    sequence.time = time;
+
+    long high = time << 16 | node >>> 16;
+    long low = (node & 0xffff) << 48 | sequence.thread << 32 | (sequence.next++ & 0xffffffffL);
+    return encode(high, low);
+  }
+
+  /** Encode 128 bits as base32, five bits per character, the most significant first */
+  private static String encode(long high, long low) {
+    char[] chars = new char[LENGTH];
+    for (int i = LENGTH - 1; i >= 0; i--) {
+      chars[i] = ALPHABET[(int) low & 0x1f];
+      low = low >>> 5 | high << 59;
+      high >>>= 5;
+    }
+    return new String(chars);
+  }
+
+  /** The state of one thread */
+  private static final class Sequence {
+
+    private final long thread = threads.getAndIncrement() & 0xffffL;
+
+    /** Starts at random, in case the thread bits wrap around */
+    private int next = ThreadLocalRandom.current().nextInt();
+
+    private long time;
+  }
+}
@@ -0,0 +1,51 @@
+package se.thced.api.handler;
+
+import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
+
+import se.thced.tracing.Span;
+import se.thced.tracing.Tracer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Debug handler that returns the finished spans that the tracer still keeps, as a JSON array, the
+ * oldest first. The spans of a single trace are returned with the query parameter 'trace'.
+ *
+ * @author thced
+ */
+public class TracesHandler extends AbstractHandler {
+
+  static final String TRACE = "trace";
+
+  private final Tracer tracer;
+
+  private TracesHandler(Tracer tracer) {
+    this.tracer = tracer;
+  }
+
+  /**
+   * Instantiate a new traces handler, that reads from the shared tracer
+   *
+   * <p>Follows Vert.x conventional way of instantiating handlers
+   */
+  public static TracesHandler create() {
+    return create(Tracer.shared());
+  }
+
+  public static TracesHandler create(Tracer tracer) {
+    return new TracesHandler(tracer);
+  }
+
+  @Override
+  public void handle(RoutingContext ctx) {
+    String traceId = ctx.request().getParam(TRACE);
+    JsonArray spans = new JsonArray();
+    for (Span span : tracer.spans()) {
+      if (traceId == null || traceId.equals(span.traceId())) {
+        spans.add(span.toJson());
+      }
+    }
+    ctx.response().putHeader(CONTENT_TYPE, "application/json");
+    ctx.end(spans.toBuffer());
+  }
+}
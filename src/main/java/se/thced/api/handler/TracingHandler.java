@@ -0,0 +1,71 @@
+package se.thced.api.handler;
+
+import se.thced.tracing.Span;
+import se.thced.tracing.Tracer;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.RoutingContext;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Middle-ware that decides whether a request is traced, and if so starts the root span of the
+ * trace. The span covers the whole request, through routing and the handlers, and is named by the
+ * route that handled it, i.e the operation id for API operations.
+ *
+ * <p>The trace id is returned to the client in a header, to look the trace up by at {@link
+ * TracesHandler}.
+ *
+ * @author thced
+ */
+public class TracingHandler implements Handler<RoutingContext> {
+
+  /** Available in config.properties */
+  public static final String SAMPLE_RATE = "TRACING_SAMPLE_RATE";
+
+  public static final double DEFAULT_SAMPLE_RATE = 0.01;
+
+  private final Tracer tracer;
+  private final double sampleRate;
+
+  private TracingHandler(Tracer tracer, double sampleRate) {
+    this.tracer = tracer;
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Instantiate a new tracing handler, that traces into the shared tracer
+   *
+   * <p>Follows Vert.x conventional way of instantiating handlers
+   *
+   * @param sampleRate The share of requests to trace, from 0 to 1
+   */
+  public static TracingHandler create(double sampleRate) {
+    return create(Tracer.shared(), sampleRate);
+  }
+
+  public static TracingHandler create(Tracer tracer, double sampleRate) {
+    return new TracingHandler(tracer, sampleRate);
+  }
+
+  @Override
+  public void handle(RoutingContext ctx) {
+    if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+      ctx.next();
+      return;
+    }
+
+    Span span = tracer.trace("http " + ctx.request().method() + " " + ctx.request().path());
+    Tracer.activate(span);
+    ctx.response().putHeader(Tracer.TRACE_ID, span.traceId());
+    ctx.addBodyEndHandler(
+        v -> {
+          Route route = ctx.currentRoute();
+          if (route != null && route.getName() != null) {
+            span.name("http " + route.getName());
+          }
+          span.tag("status", ctx.response().getStatusCode()).end();
+        });
+
+    ctx.next();
+  }
+}
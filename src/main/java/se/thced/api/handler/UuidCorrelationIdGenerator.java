@@ -0,0 +1,20 @@
+package se.thced.api.handler;
+
+import java.util.UUID;
+
+/**
+ * Generates random UUIDs as correlation ids.
+ *
+ * <p>Note! {@link UUID#randomUUID()} draws from a single, shared, {@link
+ * java.security.SecureRandom}, which is both slow and contended between the event loops. Prefer the
+ * {@link TimeOrderedCorrelationIdGenerator} unless the ids must be UUIDs.
+ *
+ * @author thced
+ */
+public class UuidCorrelationIdGenerator implements CorrelationIdGenerator {
+
+  @Override
+  public String generate() {
+    return UUID.randomUUID().toString();
+  }
+}
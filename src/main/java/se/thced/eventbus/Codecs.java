@@ -0,0 +1,28 @@
+package se.thced.eventbus;
+
+import io.vertx.core.eventbus.EventBus;
+import se.thced.api.example.Page;
+
+/**
+ * Registers the codecs of the application on the eventbus
+ *
+ * @author thced
+ */
+public final class Codecs {
+
+  private Codecs() {
+    // No instantiation
+  }
+
+  /**
+   * Register all codecs. Codecs that are already registered are replaced, which makes it safe to
+   * call this more than once for the same eventbus.
+   *
+   * @param eventBus The eventbus to register the codecs on
+   */
+  public static void register(EventBus eventBus) {
+    eventBus.unregisterDefaultCodec(Page.class).registerDefaultCodec(Page.class, new PageCodec());
+    eventBus.unregisterCodec(EntityCodec.NAME).registerCodec(new EntityCodec());
+    eventBus.unregisterCodec(EntitiesCodec.NAME).registerCodec(new EntitiesCodec());
+  }
+}
@@ -0,0 +1,45 @@
+package se.thced.eventbus;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonArray;
+
+/**
+ * Codec for batches of entities that are handed over to another verticle over the eventbus
+ *
+ * <p>Works like the {@link EntityCodec}, but for a {@link JsonArray} of entities.
+ *
+ * @author thced
+ */
+public class EntitiesCodec implements MessageCodec<JsonArray, JsonArray> {
+
+  public static final String NAME = "entities";
+
+  @Override
+  public void encodeToWire(Buffer buffer, JsonArray entities) {
+    Buffer encoded = entities.toBuffer();
+    buffer.appendInt(encoded.length()).appendBuffer(encoded);
+  }
+
+  @Override
+  public JsonArray decodeFromWire(int pos, Buffer buffer) {
+    int length = buffer.getInt(pos);
+    int start = pos + Integer.BYTES;
+    return new JsonArray(buffer.getBuffer(start, start + length));
+  }
+
+  @Override
+  public JsonArray transform(JsonArray entities) {
+    return entities;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
@@ -0,0 +1,50 @@
+package se.thced.eventbus;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Codec for entities that are handed over to another verticle over the eventbus
+ *
+ * <p>Locally the entity is passed on by reference, without the deep copy that the default {@link
+ * JsonObject} codec does. The sender must not touch the entity once it is sent, since it is then
+ * owned by the receiver. Over the wire (clustered) the entity is sent as JSON.
+ *
+ * <p>Since the default codec of {@link JsonObject} can not be replaced, the sender selects this
+ * codec by name, see {@link #NAME}.
+ *
+ * @author thced
+ */
+public class EntityCodec implements MessageCodec<JsonObject, JsonObject> {
+
+  public static final String NAME = "entity";
+
+  @Override
+  public void encodeToWire(Buffer buffer, JsonObject entity) {
+    Buffer encoded = entity.toBuffer();
+    buffer.appendInt(encoded.length()).appendBuffer(encoded);
+  }
+
+  @Override
+  public JsonObject decodeFromWire(int pos, Buffer buffer) {
+    int length = buffer.getInt(pos);
+    int start = pos + Integer.BYTES;
+    return new JsonObject(buffer.getBuffer(start, start + length));
+  }
+
+  @Override
+  public JsonObject transform(JsonObject entity) {
+    return entity;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
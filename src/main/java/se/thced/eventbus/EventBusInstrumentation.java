@@ -0,0 +1,227 @@
+package se.thced.eventbus;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryContext;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.impl.OutboundDeliveryContext;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interceptors that measure the eventbus, per address. The metrics are registered in a Dropwizard
+ * registry, named by the address:
+ *
+ * <ul>
+ *   <li>{@code eventbus.<address>.delivery} - a timer from send until the consumer starts to handle
+ *       the message, i.e the time spent waiting for the event loop of the consumer
+ *   <li>{@code eventbus.<address>.reply} - a timer from request until the reply is received
+ *   <li>{@code eventbus.<address>.in-flight} - a gauge of the requests sent from this node that
+ *       are not replied to yet, whether they are in transit, buffered for a consumer or being
+ *       handled
+ *   <li>{@code eventbus.<address>.failures} - a meter of requests that are replied to with a failure
+ *   <li>{@code eventbus.<address>.timeouts} - a meter of requests that are never replied to
+ * </ul>
+ *
+ * <p>The send time is passed in a message header, and is only used by the node that sent the
+ * message, since the clocks of different nodes can not be compared. The same header times the
+ * eventbus hops of traces, see {@link InboundTracingHandler}. Requests are tracked by their
+ * reply address until the reply is received, or until they are expired by a periodic sweep when
+ * their own send timeout has passed. Requests that fail without a reply, e.g since there are no
+ * consumers, are therefore counted as timeouts.
+ *
+ * <p>The interceptors only see a message when it is sent and when a consumer starts to handle it,
+ * not when it is buffered for the consumer, so the backlog of the consumers is not measured per
+ * address. The time a message waits in the backlog is part of the delivery time, and the number of
+ * messages buffered for all the consumers of the node is {@code vertx.eventbus.messages.pending} of
+ * the Vert.x metrics.
+ *
+ * @author thced
+ */
+public final class EventBusInstrumentation {
+
+  /** The header that carries the send time */
+  static final String SENT = "x-eventbus-sent";
+
+  /** The prefix of the addresses that Vert.x generates for replies */
+  private static final String REPLY_PREFIX = "__vertx.reply.";
+
+  private static final String PREFIX = "eventbus.";
+
+  /** The send time of messages that were not sent from this node, see {@link #sent(MultiMap)} */
+  static final long NOT_SENT = Long.MIN_VALUE;
+
+  /** Requests are expired a while after their send timeout, to let the reply arrive */
+  private static final long GRACE = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long SWEEP_INTERVAL = 1_000;
+
+  /** Identifies the send times of this node */
+  private static final String ORIGIN =
+      Long.toHexString(ThreadLocalRandom.current().nextLong()) + "/";
+
+  private final MetricRegistry registry;
+
+  private final Map<String, AddressMetrics> addresses = new ConcurrentHashMap<>();
+
+  /** Requests that are not replied to yet, by reply address */
+  private final Map<String, Request> requests = new ConcurrentHashMap<>();
+
+  EventBusInstrumentation(MetricRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Add the interceptors to the eventbus of a Vert.x instance
+   *
+   * @param vertx The Vert.x instance
+   * @param registry The registry to register the metrics in
+   * @return The instrumentation
+   */
+  public static EventBusInstrumentation install(Vertx vertx, MetricRegistry registry) {
+    EventBusInstrumentation instrumentation = new EventBusInstrumentation(registry);
+    EventBus eventBus = vertx.eventBus();
+    eventBus.addOutboundInterceptor(instrumentation::outbound);
+    eventBus.addInboundInterceptor(instrumentation::inbound);
+    vertx.setPeriodic(SWEEP_INTERVAL, id -> instrumentation.expire(System.nanoTime()));
+    return instrumentation;
+  }
+
+  /** Runs on the sender, before the message is sent */
+  <T> void outbound(DeliveryContext<T> event) {
+    Message<T> message = event.message();
+    String address = message.address();
+    if (!isReply(address)) {
+      long now = stamp(message.headers());
+      String replyAddress = message.replyAddress();
+      if (replyAddress != null) {
+        AddressMetrics metrics = metrics(address);
+        metrics.inFlight.increment();
+        requests.put(replyAddress, new Request(metrics, now, timeout(event)));
+      }
+    }
+    event.next();
+  }
+
+  /** Runs on the consumer, just before the message is handled */
+  <T> void inbound(DeliveryContext<T> event) {
+    Message<T> message = event.message();
+    String address = message.address();
+    if (isReply(address)) {
+      Request request = requests.remove(address);
+      if (request != null) {
+        request.metrics.inFlight.decrement();
+        request.metrics.reply.update(System.nanoTime() - request.sent, TimeUnit.NANOSECONDS);
+        if (message.body() instanceof ReplyException) {
+          request.metrics.failures.mark();
+        }
+      }
+    } else {
+      long sent = sent(message.headers());
+      if (sent != NOT_SENT) {
+        metrics(address).delivery.update(System.nanoTime() - sent, TimeUnit.NANOSECONDS);
+      }
+    }
+    event.next();
+  }
+
+  /** Expire the requests that are past their timeout, counting them as timeouts */
+  void expire(long now) {
+    requests.forEach(
+        (replyAddress, request) -> {
+          if (now - request.expiry > 0 && requests.remove(replyAddress, request)) {
+            request.metrics.inFlight.decrement();
+            request.metrics.timeouts.mark();
+          }
+        });
+  }
+
+  /**
+   * @param event A message that is sent
+   * @return The send timeout of the message, in nanoseconds
+   */
+  private static long timeout(DeliveryContext<?> event) {
+    long timeout =
+        event instanceof OutboundDeliveryContext
+            ? ((OutboundDeliveryContext<?>) event).options.getSendTimeout()
+            : DeliveryOptions.DEFAULT_TIMEOUT;
+    return TimeUnit.MILLISECONDS.toNanos(timeout);
+  }
+
+  private AddressMetrics metrics(String address) {
+    AddressMetrics metrics = addresses.get(address);
+    return metrics != null ? metrics : addresses.computeIfAbsent(address, AddressMetrics::new);
+  }
+
+  /**
+   * Set the send time of a message to now
+   *
+   * @param headers The headers of the message
+   * @return The send time
+   */
+  static long stamp(MultiMap headers) {
+    long now = System.nanoTime();
+    headers.set(SENT, ORIGIN + now);
+    return now;
+  }
+
+  /**
+   * @param headers The headers of a message
+   * @return The send time of the message, or {@link #NOT_SENT} if not sent from this node
+   */
+  static long sent(MultiMap headers) {
+    String sent = headers.get(SENT);
+    if (sent != null && sent.startsWith(ORIGIN)) {
+      return Long.parseLong(sent.substring(ORIGIN.length()));
+    }
+    return NOT_SENT;
+  }
+
+  /** @return True if the address is one that Vert.x generated for a reply */
+  static boolean isReply(String address) {
+    return address.startsWith(REPLY_PREFIX);
+  }
+
+  /** The metrics of one address */
+  private final class AddressMetrics {
+
+    private final Timer delivery;
+    private final Timer reply;
+    private final Meter failures;
+    private final Meter timeouts;
+    private final LongAdder inFlight = new LongAdder();
+
+    private AddressMetrics(String address) {
+      String prefix = PREFIX + address + ".";
+      delivery = registry.timer(prefix + "delivery");
+      reply = registry.timer(prefix + "reply");
+      failures = registry.meter(prefix + "failures");
+      timeouts = registry.meter(prefix + "timeouts");
+      registry.gauge(prefix + "in-flight", () -> (Gauge<Long>) inFlight::sum);
+    }
+  }
+
+  /** A request that is not replied to yet */
+  private static final class Request {
+
+    private final AddressMetrics metrics;
+    private final long sent;
+    private final long expiry;
+
+    private Request(AddressMetrics metrics, long sent, long timeout) {
+      this.metrics = metrics;
+      this.sent = sent;
+      this.expiry = sent + timeout + GRACE;
+    }
+  }
+}
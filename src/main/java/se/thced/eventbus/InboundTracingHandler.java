@@ -0,0 +1,54 @@
+package se.thced.eventbus;
+
+import static java.util.Objects.nonNull;
+
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.eventbus.DeliveryContext;
+import se.thced.tracing.Span;
+import se.thced.tracing.Tracer;
+
+/**
+ * Interceptor that continues a trace on the receiving end of the eventbus. A span is recorded for
+ * the hop, from send until the consumer starts to handle the message, which is the time spent
+ * waiting for the event loop of the consumer. The span is then made active, so that the work of
+ * the consumer is traced as its children.
+ *
+ * @param <T> The type of the message payload
+ * @author thced
+ */
+public class InboundTracingHandler<T> implements Handler<DeliveryContext<T>> {
+
+  private final Tracer tracer;
+
+  public InboundTracingHandler() {
+    this(Tracer.shared());
+  }
+
+  public InboundTracingHandler(Tracer tracer) {
+    this.tracer = tracer;
+  }
+
+  @Override
+  public void handle(DeliveryContext<T> event) {
+    MultiMap headers = event.message().headers();
+    String traceId = headers.get(Tracer.TRACE_ID);
+    if (nonNull(traceId) && !EventBusInstrumentation.isReply(event.message().address())) {
+      Span span =
+          tracer.span(
+              "eventbus " + event.message().address(),
+              traceId,
+              headers.get(Tracer.SPAN_ID),
+              sent(headers));
+      span.end();
+      Tracer.activate(span);
+    }
+    event.next();
+  }
+
+  /** @return The send time, or now if the message was sent from another node */
+  private static long sent(MultiMap headers) {
+    long sent = EventBusInstrumentation.sent(headers);
+    return sent != EventBusInstrumentation.NOT_SENT ? sent : System.nanoTime();
+  }
+}
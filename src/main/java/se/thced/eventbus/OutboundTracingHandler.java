@@ -0,0 +1,32 @@
+package se.thced.eventbus;
+
+import static java.util.Objects.nonNull;
+
+import io.reactiverse.contextual.logging.ContextualData;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.eventbus.DeliveryContext;
+import se.thced.tracing.Tracer;
+
+/**
+ * Interceptor that adds the trace, and the active span, to eventbus message headers, when the
+ * message is sent in a sampled trace. See {@link InboundTracingHandler} for the receiving end.
+ *
+ * @param <T> The type of the message payload
+ * @author thced
+ */
+public class OutboundTracingHandler<T> implements Handler<DeliveryContext<T>> {
+
+  @Override
+  public void handle(DeliveryContext<T> event) {
+    String traceId = ContextualData.get(Tracer.TRACE_ID);
+    if (nonNull(traceId) && !EventBusInstrumentation.isReply(event.message().address())) {
+      MultiMap headers = event.message().headers();
+      headers.add(Tracer.TRACE_ID, traceId);
+      headers.add(Tracer.SPAN_ID, ContextualData.get(Tracer.SPAN_ID));
+      // The receiver times the hop by the send time of the eventbus instrumentation
+      EventBusInstrumentation.stamp(headers);
+    }
+    event.next();
+  }
+}
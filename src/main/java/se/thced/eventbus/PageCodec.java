@@ -0,0 +1,46 @@
+package se.thced.eventbus;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonObject;
+import se.thced.api.example.Page;
+
+/**
+ * Codec for {@link Page}s sent over the eventbus
+ *
+ * <p>Locally the page is passed on by reference, without the deep copy that the default JSON codecs
+ * do on every send and reply. This is safe since the entities of a page are not modified once the
+ * page is created. Over the wire (clustered) the page is sent as JSON, without its encoding.
+ *
+ * @author thced
+ */
+public class PageCodec implements MessageCodec<Page, Page> {
+
+  @Override
+  public void encodeToWire(Buffer buffer, Page page) {
+    Buffer encoded = page.toJson().toBuffer();
+    buffer.appendInt(encoded.length()).appendBuffer(encoded);
+  }
+
+  @Override
+  public Page decodeFromWire(int pos, Buffer buffer) {
+    int length = buffer.getInt(pos);
+    int start = pos + Integer.BYTES;
+    return new Page(new JsonObject(buffer.getBuffer(start, start + length)));
+  }
+
+  @Override
+  public Page transform(Page page) {
+    return page;
+  }
+
+  @Override
+  public String name() {
+    return "page";
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
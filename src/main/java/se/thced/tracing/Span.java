@@ -0,0 +1,113 @@
+package se.thced.tracing;
+
+import io.vertx.core.json.JsonObject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timed unit of work within a trace, e.g a request, a hop over the eventbus or a pre-processor.
+ * Spans are only created for sampled traces, see {@link Tracer}.
+ *
+ * <p>A span is started by the {@link Tracer}, or as a child of another span, and is handed to the
+ * tracer once it ends. It may be named and tagged until then.
+ *
+ * <p>Note! A span is not thread-safe, it is owned by whoever started it until it ends.
+ *
+ * @author thced
+ */
+public final class Span {
+
+  private final Tracer tracer;
+  private final String traceId;
+  private final String spanId;
+  private final String parentId;
+  private final long startNanos;
+  private final long startMicros;
+  private final JsonObject tags = new JsonObject();
+  private String name;
+  private long durationNanos = -1;
+
+  Span(Tracer tracer, String traceId, String parentId, String name, long startNanos) {
+    this.tracer = tracer;
+    this.traceId = traceId;
+    this.spanId = Tracer.newId();
+    this.parentId = parentId;
+    this.name = name;
+    this.startNanos = startNanos;
+    // The wall clock of the start, corrected for spans that started before now
+    this.startMicros =
+        TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis())
+            - TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Start a child span of this span, now
+   *
+   * @param name The name of the child
+   * @return The child span
+   */
+  public Span child(String name) {
+    return child(name, System.nanoTime());
+  }
+
+  /**
+   * Start a child span of this span, at a given time
+   *
+   * @param name The name of the child
+   * @param startNanos When the child started, by {@link System#nanoTime()}
+   * @return The child span
+   */
+  public Span child(String name, long startNanos) {
+    return new Span(tracer, traceId, spanId, name, startNanos);
+  }
+
+  /**
+   * @param name The new name of the span, e.g once the route of a request is known
+   * @return This span
+   */
+  public Span name(String name) {
+    this.name = name;
+    return this;
+  }
+
+  /**
+   * @param key The key of the tag
+   * @param value The value of the tag
+   * @return This span
+   */
+  public Span tag(String key, Object value) {
+    tags.put(key, value);
+    return this;
+  }
+
+  /** End the span now, and hand it over to the tracer */
+  public void end() {
+    if (durationNanos < 0) {
+      durationNanos = System.nanoTime() - startNanos;
+      tracer.finished(this);
+    }
+  }
+
+  public String traceId() {
+    return traceId;
+  }
+
+  public String spanId() {
+    return spanId;
+  }
+
+  /** @return When the span started, by {@link System#nanoTime()} */
+  public long startNanos() {
+    return startNanos;
+  }
+
+  public JsonObject toJson() {
+    return new JsonObject()
+        .put("traceId", traceId)
+        .put("spanId", spanId)
+        .put("parentId", parentId)
+        .put("name", name)
+        .put("start", startMicros)
+        .put("duration", TimeUnit.NANOSECONDS.toMicros(durationNanos))
+        .put("tags", tags);
+  }
+}
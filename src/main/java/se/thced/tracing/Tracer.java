@@ -0,0 +1,134 @@
+package se.thced.tracing;
+
+import io.reactiverse.contextual.logging.ContextualData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lightweight tracing of sampled requests. Whether a request is traced is decided once, when it is
+ * received (head-based sampling), and the trace then follows the request through the same
+ * propagation as the correlation id: {@link ContextualData} within a verticle, and message headers
+ * over the eventbus. Requests that are not sampled cost a lookup in the contextual data, nothing
+ * more.
+ *
+ * <p>Finished spans are kept in a ring buffer, where the oldest spans are overwritten by new ones.
+ * Spans are added without locks, from any thread.
+ *
+ * @author thced
+ */
+public final class Tracer {
+
+  /** The contextual data key, and eventbus header, of the trace id */
+  public static final String TRACE_ID = "Trace-ID";
+
+  /** The contextual data key, and eventbus header, of the active span */
+  public static final String SPAN_ID = "Span-ID";
+
+  /** The number of finished spans that are kept, a power of two */
+  static final int RING_SIZE = 4096;
+
+  private static final Tracer SHARED = new Tracer(RING_SIZE);
+
+  private final AtomicReferenceArray<Span> ring;
+  private final AtomicLong finished = new AtomicLong();
+  private final int mask;
+
+  /** @param size The number of finished spans to keep, a power of two */
+  public Tracer(int size) {
+    if (Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("The size must be a power of two: " + size);
+    }
+    this.ring = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /** @return The tracer that is shared by all verticles on this node */
+  public static Tracer shared() {
+    return SHARED;
+  }
+
+  /**
+   * Start a new trace
+   *
+   * @param name The name of the root span
+   * @return The root span of the trace
+   */
+  public Span trace(String name) {
+    return new Span(this, newId() + newId(), null, name, System.nanoTime());
+  }
+
+  /**
+   * Start a span in the trace of the active span, see {@link #activate(Span)}
+   *
+   * @param name The name of the span
+   * @return The span, or null if there is no active span, i.e the request is not sampled
+   */
+  public Span span(String name) {
+    String traceId = ContextualData.get(TRACE_ID);
+    return traceId == null ? null : span(name, traceId, ContextualData.get(SPAN_ID));
+  }
+
+  /**
+   * Start a span in a trace that was started elsewhere, e.g on the other side of the eventbus
+   *
+   * @param name The name of the span
+   * @param traceId The id of the trace
+   * @param parentId The id of the parent span
+   * @return The span
+   */
+  public Span span(String name, String traceId, String parentId) {
+    return span(name, traceId, parentId, System.nanoTime());
+  }
+
+  /**
+   * Start a span in a trace that was started elsewhere, at a given time
+   *
+   * @param name The name of the span
+   * @param traceId The id of the trace
+   * @param parentId The id of the parent span
+   * @param startNanos When the span started, by {@link System#nanoTime()}
+   * @return The span
+   */
+  public Span span(String name, String traceId, String parentId, long startNanos) {
+    return new Span(this, traceId, parentId, name, startNanos);
+  }
+
+  /**
+   * Make a span the parent of the spans that are started later in the same context, and of the
+   * spans on the receiving end of the messages sent from it
+   *
+   * @param span The span to activate
+   */
+  public static void activate(Span span) {
+    ContextualData.put(TRACE_ID, span.traceId());
+    ContextualData.put(SPAN_ID, span.spanId());
+  }
+
+  /** @return The finished spans that are still kept, the oldest first */
+  public List<Span> spans() {
+    long last = finished.get();
+    long first = Math.max(0, last - ring.length());
+    List<Span> spans = new ArrayList<>((int) (last - first));
+    for (long i = first; i < last; i++) {
+      Span span = ring.get((int) (i & mask));
+      // The slot may be overwritten, or not written yet, by a concurrent writer
+      if (span != null) {
+        spans.add(span);
+      }
+    }
+    return spans;
+  }
+
+  void finished(Span span) {
+    ring.set((int) (finished.getAndIncrement() & mask), span);
+  }
+
+  /** @return A random 64 bit id, as 16 hex characters */
+  static String newId() {
+    String hex = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    return hex.length() == 16 ? hex : "0".repeat(16 - hex.length()) + hex;
+  }
+}
@@ -0,0 +1,66 @@
+package se.thced;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+
+@DisplayName("OperationTimers")
+class OperationTimersTest {
+
+  @Test
+  @DisplayName("Latencies are kept per operation and status class")
+  void testRecord() {
+    OperationTimers timers = new OperationTimers();
+    for (int i = 1; i <= 100; i++) {
+      timers.record("return.entities", 200, TimeUnit.MILLISECONDS.toNanos(i));
+    }
+    timers.record("return.entities", 404, TimeUnit.MILLISECONDS.toNanos(1));
+    timers.record("add.entity", 503, TimeUnit.MILLISECONDS.toNanos(1));
+
+    Map<String, OperationTimers.Timer> visited = new HashMap<>();
+    timers.forEach(
+        (operationId, timer) -> visited.put(operationId + " " + timer.statusClass(), timer));
+
+    assertEquals(3, visited.size());
+    OperationTimers.Timer ok = visited.get("return.entities 2xx");
+    assertEquals(100, ok.count());
+    assertEquals(5.05, ok.sum(), 0.001);
+    assertEquals(0.05, ok.percentile(50), 0.001);
+    assertTrue(ok.percentile(99.9) >= 0.099);
+    assertEquals(1, visited.get("return.entities 4xx").count());
+    assertEquals(1, visited.get("add.entity 5xx").count());
+  }
+
+  @Test
+  @DisplayName("Latencies recorded between visits are added to the totals")
+  void testTotals() {
+    OperationTimers timers = new OperationTimers();
+    timers.record("add.entity", 200, 1_000);
+    timers.forEach((operationId, timer) -> assertEquals(1, timer.count()));
+
+    timers.record("add.entity", 200, 1_000);
+    timers.forEach((operationId, timer) -> assertEquals(2, timer.count()));
+  }
+
+  @Test
+  @DisplayName("The count and the sum are of the same latencies")
+  void testCountAndSum() {
+    OperationTimers timers = new OperationTimers();
+    timers.record("add.entity", 200, TimeUnit.SECONDS.toNanos(1));
+    timers.forEach((operationId, timer) -> {});
+
+    // Recorded after the visit, so it is in neither the count nor the sum until the next visit
+    timers.record("add.entity", 200, TimeUnit.SECONDS.toNanos(1));
+    Map<String, OperationTimers.Timer> visited = new HashMap<>();
+    timers.forEach((operationId, timer) -> visited.put(operationId, timer));
+    timers.record("add.entity", 200, TimeUnit.SECONDS.toNanos(1));
+
+    OperationTimers.Timer timer = visited.get("add.entity");
+    assertEquals(2, timer.count());
+    assertEquals(2.0, timer.sum(), 0.001);
+  }
+}
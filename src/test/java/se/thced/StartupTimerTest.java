@@ -0,0 +1,35 @@
+package se.thced;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.*;
+
+@DisplayName("StartupTimer")
+class StartupTimerTest {
+
+  @Test
+  @DisplayName("The startup time is measured until the first request is served, only")
+  void testServed() throws Exception {
+    StartupTimer timer = new StartupTimer();
+    assertEquals(-1, timer.startupMillis());
+
+    timer.started();
+    Thread.sleep(20);
+    timer.served();
+    long startup = timer.startupMillis();
+    assertTrue(startup >= 20, "Startup was " + startup);
+
+    Thread.sleep(20);
+    timer.served();
+    assertEquals(startup, timer.startupMillis());
+  }
+
+  @Test
+  @DisplayName("Without a marked start, the startup is measured from the start of the JVM")
+  void testJvmStart() {
+    StartupTimer timer = new StartupTimer();
+    timer.served();
+    assertTrue(timer.startupMillis() > 0);
+  }
+}
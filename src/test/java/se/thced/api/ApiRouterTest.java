@@ -0,0 +1,116 @@
+package se.thced.api;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+
+@DisplayName("ApiRouter")
+class ApiRouterTest extends TestBase {
+
+  @Test
+  @DisplayName("The server options are the defaults, unless configured")
+  void testServerOptions() {
+    HttpServerOptions defaults = ApiRouter.serverOptions(new JsonObject());
+    assertEquals(8080, defaults.getPort());
+    assertEquals(
+        ApiRouter.DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS,
+        defaults.getInitialSettings().getMaxConcurrentStreams());
+    assertFalse(defaults.isCompressionSupported());
+    assertTrue(defaults.isTcpNoDelay());
+    assertEquals(HttpServerOptions.DEFAULT_ACCEPT_BACKLOG, defaults.getAcceptBacklog());
+
+    HttpServerOptions options =
+        ApiRouter.serverOptions(
+            new JsonObject()
+                .put(ApiRouter.HTTP2_MAX_CONCURRENT_STREAMS, 10L)
+                .put(ApiRouter.COMPRESSION, true)
+                .put(ApiRouter.COMPRESSION_LEVEL, 1)
+                .put(ApiRouter.TCP_NO_DELAY, false)
+                .put(ApiRouter.TCP_FAST_OPEN, true)
+                .put(ApiRouter.REUSE_PORT, true)
+                .put(ApiRouter.ACCEPT_BACKLOG, 4096));
+    assertEquals(10L, options.getInitialSettings().getMaxConcurrentStreams());
+    assertTrue(options.isCompressionSupported());
+    assertEquals(1, options.getCompressionLevel());
+    assertFalse(options.isTcpNoDelay());
+    assertTrue(options.isTcpFastOpen());
+    assertTrue(options.isReusePort());
+    assertEquals(4096, options.getAcceptBacklog());
+  }
+
+  @Test
+  @DisplayName("HTTP/2 over cleartext is served, with the configured multiplexing limit")
+  void testH2c(Vertx vertx, VertxTestContext testContext) {
+    HttpServerOptions options =
+        ApiRouter.serverOptions(new JsonObject().put(ApiRouter.HTTP2_MAX_CONCURRENT_STREAMS, 10L));
+
+    vertx
+        .createHttpServer(options)
+        .requestHandler(request -> request.response().end(request.version().name()))
+        .listen(PORT)
+        .compose(
+            server ->
+                vertx
+                    .createHttpClient(
+                        new HttpClientOptions()
+                            .setProtocolVersion(HttpVersion.HTTP_2)
+                            .setHttp2ClearTextUpgrade(false))
+                    .request(HttpMethod.GET, PORT, "localhost", "/"))
+        .compose(
+            request ->
+                request
+                    .send()
+                    .compose(HttpClientResponse::body)
+                    .onComplete(
+                        testContext.succeeding(
+                            body ->
+                                testContext.verify(
+                                    () -> {
+                                      assertEquals(HttpVersion.HTTP_2.name(), body.toString());
+                                      assertEquals(
+                                          10L,
+                                          request
+                                              .connection()
+                                              .remoteSettings()
+                                              .getMaxConcurrentStreams());
+                                      testContext.completeNow();
+                                    }))));
+  }
+
+  @Test
+  @DisplayName("All instances serve the one router that the contract was loaded into")
+  void testSharedRouter(Vertx vertx, VertxTestContext testContext) throws Exception {
+    JsonObject config = new JsonObject().put("API_HTTP_PORT", PORT);
+    ApiRouter.router(vertx, config)
+        .compose(
+            router ->
+                vertx.deployVerticle(
+                    () -> new ApiRouter(router),
+                    new DeploymentOptions().setConfig(config).setInstances(2)))
+        .toCompletionStage()
+        .toCompletableFuture()
+        .get(10, TimeUnit.SECONDS);
+
+    testContext.verify(
+        () -> {
+          for (int i = 0; i < 4; i++) {
+            given().when().get("/alive").then().assertThat().statusCode(204);
+          }
+          given().when().get("/api/query?minAge=abc").then().assertThat().statusCode(400);
+        });
+    testContext.completeNow();
+  }
+}
@@ -0,0 +1,122 @@
+package se.thced.api;
+
+import static io.vertx.core.impl.cpu.CpuCoreSensor.availableProcessors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import se.thced.Application;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.junit5.*;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives the whole application with an open-loop load, see {@link LoadGenerator}, and reports the
+ * throughput and latency percentiles. Not part of the regular build, run it with:
+ *
+ * <pre>
+ * mvn test -Dtest=ApplicationLoadTest -Dload.rate=2000 -Dload.cache=ConcurrentCache
+ * </pre>
+ *
+ * <p>Use it to find the saturation point of a build, by raising the rate until the response times
+ * take off, and to compare builds at the same rate. With 'load.p99.limit' set, in milliseconds,
+ * the test fails if the 99th percentile response time is above the limit.
+ *
+ * @author thced
+ */
+@DisplayName("Application load test")
+class ApplicationLoadTest extends TestBase {
+
+  private static final Logger log = LoggerFactory.getLogger(ApplicationLoadTest.class);
+
+  /** Requests per second */
+  private static final int RATE = Integer.getInteger("load.rate", 200);
+
+  private static final Duration DURATION = Duration.ofSeconds(Long.getLong("load.duration", 10));
+
+  /** Load at the same rate before measuring, to let the JIT compiler kick in */
+  private static final Duration WARMUP = Duration.ofSeconds(Long.getLong("load.warmup", 5));
+
+  /** The number of ApiRouter instances */
+  private static final int INSTANCES = Integer.getInteger("load.instances", availableProcessors());
+
+  /** The Cache implementation, by simple class name */
+  private static final String CACHE = System.getProperty("load.cache", "ConcurrentCache");
+
+  /** The share of requests that are POSTs, the rest are GETs */
+  private static final int POST_PERCENT = Integer.getInteger("load.post.percent", 10);
+
+  private static final Long P99_LIMIT = Long.getLong("load.p99.limit");
+
+  private static final int CONNECTIONS = Integer.getInteger("load.connections", 200);
+
+  private WebClient client;
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config =
+        new JsonObject().put("API_INSTANCES", INSTANCES).put("CACHE_IMPLEMENTATION", CACHE);
+    client =
+        WebClient.create(
+            vertx,
+            new WebClientOptions()
+                .setDefaultPort(PORT)
+                .setMaxPoolSize(CONNECTIONS)
+                .setMaxWaitQueueSize(-1));
+
+    vertx
+        .deployVerticle(new Application(), new DeploymentOptions().setConfig(config))
+        .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  @Timeout(value = 5, unit = TimeUnit.MINUTES)
+  @DisplayName("GET and POST against API at a fixed rate")
+  void testLoad(Vertx vertx, VertxTestContext testContext) {
+    log.info(
+        "{} req/s for {} s after {} s warmup, {} API instances, {}, {}% POST",
+        RATE, DURATION.toSeconds(), WARMUP.toSeconds(), INSTANCES, CACHE, POST_PERCENT);
+
+    new LoadGenerator(vertx, RATE, WARMUP, this::request)
+        .run()
+        .compose(warmup -> new LoadGenerator(vertx, RATE, DURATION, this::request).run())
+        .onComplete(
+            testContext.succeeding(
+                result ->
+                    testContext.verify(
+                        () -> {
+                          log.info("Result: {}", result.report());
+                          assertEquals(0, result.failed, "Requests failed");
+                          assertEquals(
+                              result.completed,
+                              result.statusClasses.getOrDefault(2, 0L),
+                              "Not all responses were successful");
+                          if (P99_LIMIT != null) {
+                            long p99 = result.responseTime.getValueAtPercentile(99);
+                            assertTrue(
+                                p99 <= TimeUnit.MILLISECONDS.toMicros(P99_LIMIT),
+                                "p99 response time " + p99 + " us is above the limit");
+                          }
+                          testContext.completeNow();
+                        })));
+  }
+
+  private Future<HttpResponse<Buffer>> request(long sequence) {
+    if (sequence % 100 < POST_PERCENT) {
+      JsonObject entity = new JsonObject().put("name", "Name" + sequence).put("age", 38);
+      return client.post("/api").timeout(10_000).sendJsonObject(entity);
+    }
+    return client.get("/api").timeout(10_000).send();
+  }
+}
@@ -0,0 +1,178 @@
+package se.thced.api;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.client.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import org.HdrHistogram.Histogram;
+
+/**
+ * An open-loop load generator. Requests are sent at a fixed rate, whether or not earlier requests
+ * have been answered, the way independent clients would send them.
+ *
+ * <p>Every request has an intended start time on the schedule. The response time is measured from
+ * the intended start, not from when the request was actually sent, which corrects for coordinated
+ * omission: a stalled server, or a stalled generator, can not hide the wait of the requests that
+ * were queued up behind the stall. The service time, measured from the actual send, is reported as
+ * well for comparison.
+ *
+ * <p>Note! All requests are sent from one event loop, which is polled every millisecond. That is
+ * the resolution of the schedule, and the generator itself saturates at some rate.
+ *
+ * @author thced
+ */
+final class LoadGenerator {
+
+  /** The highest latency that can be recorded, higher latencies are recorded as this */
+  private static final long MAX_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final Vertx vertx;
+  private final int rate;
+  private final Duration duration;
+  private final LongFunction<Future<HttpResponse<Buffer>>> requests;
+
+  /**
+   * @param vertx The vertx instance
+   * @param rate The number of requests to send per second
+   * @param duration For how long to send requests
+   * @param requests Sends the request with the given sequence number
+   */
+  LoadGenerator(
+      Vertx vertx,
+      int rate,
+      Duration duration,
+      LongFunction<Future<HttpResponse<Buffer>>> requests) {
+    this.vertx = vertx;
+    this.rate = rate;
+    this.duration = duration;
+    this.requests = requests;
+  }
+
+  /**
+   * Run the load
+   *
+   * @return The future containing the result, once all requests are answered or failed
+   */
+  Future<Result> run() {
+    Promise<Result> promise = Promise.promise();
+    Context context = vertx.getOrCreateContext();
+    context.runOnContext(v -> new Run(promise).start());
+    return promise.future();
+  }
+
+  /** The state of a run, only touched on the event loop of the generator */
+  private final class Run {
+
+    private final Promise<Result> promise;
+    private final long total = rate * duration.toSeconds();
+    private final long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+    private final Result result = new Result();
+    private long start;
+    private long sent;
+
+    private Run(Promise<Result> promise) {
+      this.promise = promise;
+    }
+
+    private void start() {
+      start = System.nanoTime();
+      vertx.setPeriodic(1, this::tick);
+    }
+
+    /** Send all requests that are due according to the schedule */
+    private void tick(long timerId) {
+      long now = System.nanoTime();
+      while (sent < total && start + sent * interval <= now) {
+        send(start + sent * interval, sent++);
+      }
+      if (sent == total) {
+        vertx.cancelTimer(timerId);
+      }
+    }
+
+    private void send(long intended, long sequence) {
+      long actual = System.nanoTime();
+      requests
+          .apply(sequence)
+          .onComplete(
+              response -> {
+                long end = System.nanoTime();
+                result.record(intended, actual, end, response.result());
+                if (result.completed + result.failed == total) {
+                  result.elapsed = Duration.ofNanos(end - start);
+                  promise.complete(result);
+                }
+              });
+    }
+  }
+
+  /** The result of a run */
+  static final class Result {
+
+    /** Response times, from the intended start of each request */
+    final Histogram responseTime = new Histogram(MAX_LATENCY, SIGNIFICANT_DIGITS);
+
+    /** Service times, from the actual send of each request */
+    final Histogram serviceTime = new Histogram(MAX_LATENCY, SIGNIFICANT_DIGITS);
+
+    /** The number of responses per status class, e.g 2 for 2xx */
+    final Map<Integer, Long> statusClasses = new TreeMap<>();
+
+    long completed;
+    long failed;
+    Duration elapsed;
+
+    /** Record a request, the response is null if the request failed */
+    private void record(long intended, long actual, long end, HttpResponse<Buffer> response) {
+      if (response == null) {
+        failed++;
+        return;
+      }
+      completed++;
+      statusClasses.merge(response.statusCode() / 100, 1L, Long::sum);
+      responseTime.recordValue(micros(end - intended));
+      serviceTime.recordValue(micros(end - actual));
+    }
+
+    /** @return The number of completed requests per second */
+    double throughput() {
+      return completed / (elapsed.toNanos() / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    String report() {
+      return String.format(
+          "%d completed, %d failed in %d ms (%.1f req/s), status classes %s%n"
+              + "  response time (us): %s%n"
+              + "  service time  (us): %s",
+          completed,
+          failed,
+          elapsed.toMillis(),
+          throughput(),
+          statusClasses,
+          percentiles(responseTime),
+          percentiles(serviceTime));
+    }
+
+    private static String percentiles(Histogram histogram) {
+      return String.format(
+          "p50=%d p99=%d p999=%d max=%d",
+          histogram.getValueAtPercentile(50),
+          histogram.getValueAtPercentile(99),
+          histogram.getValueAtPercentile(99.9),
+          histogram.getMaxValue());
+    }
+
+    private static long micros(long nanos) {
+      return Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_LATENCY);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.List;
+import org.junit.jupiter.api.*;
+
+@DisplayName("CacheShards")
+class CacheShardsTest {
+
+  @Test
+  @DisplayName("A single shard uses the plain address")
+  void testSingleShardAddress() {
+    assertEquals(Cache.ADD_TO_CACHE, CacheShards.address(Cache.ADD_TO_CACHE, 0, 1));
+    assertEquals(Cache.ADD_TO_CACHE + ".3", CacheShards.address(Cache.ADD_TO_CACHE, 3, 4));
+  }
+
+  @Test
+  @DisplayName("The same key is always routed to the same shard")
+  void testShardOf() {
+    JsonObject entity = new JsonObject().put("name", "Simone").put("age", 26);
+    int shard = CacheShards.shardOf(entity, 4);
+
+    assertEquals(shard, CacheShards.shardOf(entity.copy().put("age", 27), 4));
+    assertEquals(0, CacheShards.shardOf(entity, 1));
+  }
+
+  @Test
+  @DisplayName("Gathering from all shards respects the limit, and remembers each shard's position")
+  void testGather() {
+    Page first = new Page(new JsonArray().add(1).add(2).add(3), new long[] {1, 3, 5}, "5");
+    Page second = new Page(new JsonArray().add(4).add(5), new long[] {2, 4}, null);
+    List<String> cursors = CacheShards.cursors(null, 2);
+
+    Page gathered = CacheShards.gather(List.of(first, second), cursors, 3);
+    assertEquals(new JsonArray().add(1).add(4).add(2), gathered.entities());
+    assertEquals("3.2", gathered.cursor());
+
+    Page all = CacheShards.gather(List.of(second, second), cursors, 10);
+    assertEquals(4, all.entities().size());
+    assertNull(all.cursor());
+  }
+
+  @Test
+  @DisplayName("A cursor must match the number of shards")
+  void testCursors() {
+    assertEquals(List.of("3", "2"), CacheShards.cursors("3.2", 2));
+    assertThrows(IllegalArgumentException.class, () -> CacheShards.cursors("3", 2));
+    assertThrows(IllegalArgumentException.class, () -> CacheShards.cursors("3.x", 2));
+  }
+}
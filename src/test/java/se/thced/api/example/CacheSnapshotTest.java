@@ -0,0 +1,142 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import se.thced.eventbus.Codecs;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.*;
+import org.junit.jupiter.api.io.TempDir;
+
+@ExtendWith(VertxExtension.class)
+@DisplayName("CacheSnapshot")
+class CacheSnapshotTest {
+
+  @TempDir Path directory;
+
+  @Test
+  @DisplayName("Entities survive a round trip to disk, in order, over several chunks")
+  void testRoundTrip(Vertx vertx, VertxTestContext testContext) {
+    CacheSnapshot snapshot = new CacheSnapshot(vertx, directory.resolve("cache.snapshot"));
+    List<JsonObject> entities = entities(CacheSnapshot.CHUNK_SIZE * 2 + 1);
+
+    snapshot
+        .write(entities)
+        .compose(ignore -> snapshot.read())
+        .onComplete(
+            testContext.succeeding(
+                read ->
+                    testContext.verify(
+                        () -> {
+                          assertEquals(entities, read);
+                          testContext.completeNow();
+                        })));
+  }
+
+  @Test
+  @DisplayName("Without a snapshot, there is nothing to read")
+  void testNoSnapshot(Vertx vertx, VertxTestContext testContext) {
+    new CacheSnapshot(vertx, directory.resolve("missing.snapshot"))
+        .read()
+        .onComplete(
+            testContext.succeeding(
+                read ->
+                    testContext.verify(
+                        () -> {
+                          assertTrue(read.isEmpty());
+                          testContext.completeNow();
+                        })));
+  }
+
+  @Test
+  @DisplayName("A file that is not a snapshot fails the read")
+  void testCorrupt(Vertx vertx, VertxTestContext testContext) throws IOException {
+    Path path = Files.writeString(directory.resolve("cache.snapshot"), "not a snapshot");
+    new CacheSnapshot(vertx, path).read().onComplete(testContext.failingThenComplete());
+  }
+
+  @Test
+  @DisplayName("A redeployed cache is warmed up from the snapshot written when it was stopped")
+  void testRestart(Vertx vertx, VertxTestContext testContext) {
+    Codecs.register(vertx.eventBus());
+    DeploymentOptions options =
+        new DeploymentOptions()
+            .setConfig(
+                new JsonObject()
+                    .put(CacheVerticle.IMPLEMENTATION, "ConcurrentCache")
+                    .put(CacheSnapshot.DIRECTORY, directory.toString()));
+    JsonObject entity = new JsonObject().put("name", "Justin").put("age", 15);
+
+    vertx
+        .deployVerticle(new CacheVerticle(), options)
+        .compose(id -> vertx.eventBus().request(Cache.ADD_TO_CACHE, entity).map(id))
+        .compose(vertx::undeploy)
+        .compose(ignore -> vertx.deployVerticle(new CacheVerticle(), options))
+        .compose(id -> vertx.eventBus().<Page>request(Cache.RETRIEVE_FROM_CACHE, null))
+        .onComplete(
+            testContext.succeeding(
+                reply ->
+                    testContext.verify(
+                        () -> {
+                          assertEquals(1, reply.body().entities().size());
+                          assertEquals(
+                              "JUSTIN", reply.body().entities().getJsonObject(0).getString("name"));
+                          testContext.completeNow();
+                        })));
+  }
+
+  @Test
+  @DisplayName("An off-heap cache is snapshot a chunk at a time, and restored in full")
+  void testRestartInChunks(Vertx vertx, VertxTestContext testContext) {
+    Codecs.register(vertx.eventBus());
+    DeploymentOptions options =
+        new DeploymentOptions()
+            .setConfig(
+                new JsonObject()
+                    .put(CacheVerticle.IMPLEMENTATION, "OffHeapCache")
+                    .put(CacheSnapshot.DIRECTORY, directory.toString()));
+    int count = CacheSnapshot.CHUNK_SIZE + 1;
+    DeliveryOptions limit = new DeliveryOptions().addHeader(Cache.LIMIT, String.valueOf(count));
+
+    vertx
+        .deployVerticle(new CacheVerticle(), options)
+        .compose(
+            id ->
+                vertx
+                    .eventBus()
+                    .request(Cache.ADD_ALL_TO_CACHE, new JsonArray(entities(count)))
+                    .map(id))
+        .compose(vertx::undeploy)
+        .compose(ignore -> vertx.deployVerticle(new CacheVerticle(), options))
+        .compose(id -> vertx.eventBus().<Page>request(Cache.RETRIEVE_FROM_CACHE, null, limit))
+        .onComplete(
+            testContext.succeeding(
+                reply ->
+                    testContext.verify(
+                        () -> {
+                          assertEquals(count, reply.body().size());
+                          assertEquals(
+                              "NAME " + (count - 1),
+                              reply.body().entities().getJsonObject(count - 1).getString("name"));
+                          testContext.completeNow();
+                        })));
+  }
+
+  private static List<JsonObject> entities(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(i -> new JsonObject().put("name", "Name " + i).put("age", i))
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,52 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import se.thced.eventbus.Codecs;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.*;
+
+@ExtendWith(VertxExtension.class)
+@DisplayName("CacheVerticle")
+class CacheVerticleTest {
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    Codecs.register(vertx.eventBus());
+    JsonObject config =
+        new JsonObject()
+            .put(IngestQueue.CAPACITY, 1)
+            .put(IngestQueue.ACK, IngestQueue.Ack.ENQUEUE.name());
+
+    vertx
+        .deployVerticle(new CacheVerticle(), new DeploymentOptions().setConfig(config))
+        .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  @DisplayName("Adds are acknowledged when queued, and rejected with 503 when the queue is full")
+  void testIngestQueue(Vertx vertx, VertxTestContext testContext) {
+    JsonObject entity = new JsonObject().put("name", "Justin").put("age", 15);
+    Checkpoint replied = testContext.checkpoint(3);
+
+    // The first entity is taken by the drain right away, the second waits in the queue
+    vertx.eventBus().request(Cache.ADD_TO_CACHE, entity.copy()).onSuccess(m -> replied.flag());
+    vertx.eventBus().request(Cache.ADD_TO_CACHE, entity.copy()).onSuccess(m -> replied.flag());
+    vertx
+        .eventBus()
+        .request(Cache.ADD_TO_CACHE, entity.copy())
+        .onComplete(
+            testContext.failing(
+                throwable ->
+                    testContext.verify(
+                        () -> {
+                          assertEquals(503, ((ReplyException) throwable).failureCode());
+                          replied.flag();
+                        })));
+  }
+}
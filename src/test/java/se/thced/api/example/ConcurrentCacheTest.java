@@ -0,0 +1,93 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+
+@DisplayName("ConcurrentCache")
+class ConcurrentCacheTest {
+
+  @Test
+  @DisplayName("The eldest entities are evicted when capacity is exceeded")
+  void testEviction() {
+    ConcurrentCache cache = new ConcurrentCache(2);
+    cache.add(new JsonObject().put("name", "first"));
+    cache.add(new JsonObject().put("name", "second"));
+    cache.add(new JsonObject().put("name", "third"));
+
+    JsonArray entities = cache.retrieve().result();
+    assertEquals(2, entities.size());
+    assertEquals("second", entities.getJsonObject(0).getString("name"));
+    assertEquals("third", entities.getJsonObject(1).getString("name"));
+  }
+
+  @Test
+  @DisplayName("Queries skip the entities that do not match, and continue after the cursor")
+  void testQuery() {
+    ConcurrentCache cache = new ConcurrentCache(100);
+    for (int i = 0; i < 10; i++) {
+      cache.add(new JsonObject().put("gender", i % 2 == 0 ? "female" : "male").put("age", i));
+    }
+
+    Query query = new Query("male", null, 2, null);
+    Page page = cache.query(query, 2, null).result();
+    assertEquals(3, page.entities().getJsonObject(0).getInteger("age"));
+    assertEquals(5, page.entities().getJsonObject(1).getInteger("age"));
+
+    Page last = cache.query(query, 2, page.cursor()).result();
+    assertEquals(2, last.size());
+    assertEquals(9, last.entities().getJsonObject(1).getInteger("age"));
+  }
+
+  @Test
+  @DisplayName("Every add increases the version, and retrieves do not")
+  void testVersion() {
+    ConcurrentCache cache = new ConcurrentCache(2);
+    long initial = cache.version().result();
+    cache.add(new JsonObject().put("name", "first"));
+    cache.retrieve(10, null);
+    assertEquals(initial + 1, cache.version().result());
+    cache.add(new JsonObject().put("name", "second"));
+    cache.add(new JsonObject().put("name", "third"));
+    assertEquals(initial + 3, cache.version().result());
+  }
+
+  @Test
+  @DisplayName("Concurrent writers never grow the cache beyond its capacity")
+  void testConcurrentAdd() throws InterruptedException {
+    ConcurrentCache cache = new ConcurrentCache(100);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 10_000; i++) {
+      int age = i;
+      executor.execute(() -> cache.add(new JsonObject().put("age", age)));
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+
+    assertEquals(100, cache.retrieve().result().size());
+  }
+
+  @Test
+  @DisplayName("Paging with a cursor visits every entity once")
+  void testPaging() {
+    ConcurrentCache cache = new ConcurrentCache(100);
+    for (int i = 0; i < 25; i++) {
+      cache.add(new JsonObject().put("age", i));
+    }
+
+    Page first = cache.retrieve(10, null).result();
+    Page second = cache.retrieve(10, first.cursor()).result();
+    Page last = cache.retrieve(10, second.cursor()).result();
+
+    assertEquals(0, first.entities().getJsonObject(0).getInteger("age"));
+    assertEquals(10, second.entities().getJsonObject(0).getInteger("age"));
+    assertEquals(5, last.entities().size());
+    assertNull(last.cursor());
+  }
+}
@@ -0,0 +1,90 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.json.JsonObject;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.junit.jupiter.api.*;
+
+@DisplayName("EntityIndex")
+class EntityIndexTest {
+
+  private final NavigableMap<Long, JsonObject> entities = new TreeMap<>();
+  private final EntityIndex index = new EntityIndex();
+
+  @BeforeEach
+  void setUp() {
+    for (int i = 1; i <= 100; i++) {
+      add(i, new JsonObject().put("name", "name" + i % 10).put("gender", gender(i)).put("age", i));
+    }
+  }
+
+  @Test
+  @DisplayName("All conditions must match, and entities are in insertion order")
+  void testQuery() {
+    Page page = query(new Query("female", null, 20, 30), 100, null);
+    assertEquals(5, page.size());
+    assertEquals(21, page.entities().getJsonObject(0).getInteger("age"));
+    assertEquals(29, page.entities().getJsonObject(4).getInteger("age"));
+
+    page = query(new Query(null, "name5", 40, null), 100, null);
+    assertEquals(6, page.size());
+    assertEquals(45, page.entities().getJsonObject(0).getInteger("age"));
+
+    assertEquals(0, query(new Query("unknown", null, null, null), 100, null).size());
+    assertEquals(0, query(new Query(null, null, 30, 20), 100, null).size());
+  }
+
+  @Test
+  @DisplayName("Queries are paged with a cursor")
+  void testPages() {
+    Page first = query(new Query(null, null, 10, 19), 4, null);
+    assertEquals(4, first.size());
+    assertTrue(first.hasMore());
+
+    Page second = query(new Query(null, null, 10, 19), 4, first.cursor());
+    assertEquals(14, second.entities().getJsonObject(0).getInteger("age"));
+
+    Page last = query(new Query(null, null, 10, 19), 4, "17");
+    assertEquals(2, last.size());
+    assertNull(last.cursor());
+  }
+
+  @Test
+  @DisplayName("Removed entities are dropped from the indexes")
+  void testRemove() {
+    for (long key = 1; key <= 50; key++) {
+      index.remove(key, entities.remove(key));
+    }
+    assertEquals(0, query(new Query(null, null, null, 50), 100, null).size());
+    assertEquals(25, query(new Query("male", null, null, null), 100, null).size());
+  }
+
+  @Test
+  @DisplayName("Evicted entities are not returned by the caches")
+  void testEviction() {
+    LargeCache cache = new LargeCache();
+    for (int i = 0; i < 20; i++) {
+      cache.add(new JsonObject().put("name", "Justin").put("age", i));
+    }
+    Page page = cache.query(new Query(null, "Justin", null, null), 100, null).result();
+    assertEquals(10, page.size());
+    assertEquals(10, page.entities().getJsonObject(0).getInteger("age"));
+  }
+
+  private void add(long key, JsonObject entity) {
+    entities.put(key, entity);
+    index.add(key, entity);
+  }
+
+  private Page query(Query query, int limit, String cursor) {
+    return index.query(query, limit, cursor, entities::get);
+  }
+
+  private static String gender(int i) {
+    return i % 2 == 0 ? "male" : "female";
+  }
+}
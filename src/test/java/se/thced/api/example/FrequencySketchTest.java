@@ -0,0 +1,43 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.*;
+
+@DisplayName("FrequencySketch")
+class FrequencySketchTest {
+
+  @Test
+  @DisplayName("Items are counted up to the maximum frequency")
+  void testIncrement() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    assertEquals(0, sketch.frequency(42));
+
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(42);
+    }
+    assertEquals(5, sketch.frequency(42));
+
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(42);
+    }
+    assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(42));
+  }
+
+  @Test
+  @DisplayName("All counts are halved once the sample size is reached")
+  void testReset() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    for (int i = 0; i < 10; i++) {
+      sketch.increment(42);
+    }
+
+    // Ten times the size of the table, 16, counting the increments above
+    for (int item = 1_000; item < 1_150; item++) {
+      sketch.increment(item);
+    }
+    int frequency = sketch.frequency(42);
+    assertTrue(frequency >= 5 && frequency <= 6, "Not halved: " + frequency);
+  }
+}
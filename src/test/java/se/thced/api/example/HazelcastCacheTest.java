@@ -0,0 +1,233 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+
+@DisplayName("HazelcastCache")
+class HazelcastCacheTest {
+
+  private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+  private static HazelcastInstance first;
+  private static HazelcastInstance second;
+
+  @BeforeAll
+  static void setUp() {
+    // Two members in this JVM, in a cluster of their own
+    Config config = new Config().setClusterName(UUID.randomUUID().toString());
+    config.setProperty("hazelcast.logging.type", "slf4j");
+    config.setProperty("hazelcast.phone.home.enabled", "false");
+    JoinConfig join = config.getNetworkConfig().getJoin();
+    join.getMulticastConfig().setEnabled(false);
+    join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+    first = Hazelcast.newHazelcastInstance(config);
+    second = Hazelcast.newHazelcastInstance(config);
+  }
+
+  @AfterEach
+  void clear() {
+    for (String suffix : new String[] {"", ".0", ".1"}) {
+      first.getMap(HazelcastCache.MAP + suffix).clear();
+      first.getCPSubsystem().getAtomicLong(HazelcastCache.SEQUENCE + suffix).set(0);
+    }
+  }
+
+  @AfterAll
+  static void tearDown() {
+    second.shutdown();
+    first.shutdown();
+  }
+
+  @Test
+  @DisplayName("Entities added on one member are retrieved on another")
+  void testDistributed() throws Exception {
+    HazelcastCache adder = new HazelcastCache(first, 100, 10);
+    HazelcastCache reader = new HazelcastCache(second, 100, 10);
+    assertEquals(0, await(reader.retrieve()).size());
+
+    await(adder.add(new JsonObject().put("name", "Justin")));
+    await(adder.addAll(List.of(new JsonObject().put("age", 1), new JsonObject().put("age", 2))));
+
+    // The reader learns about the adds asynchronously
+    JsonArray entities = eventually(reader, 3);
+    assertEquals("Justin", entities.getJsonObject(0).getString("name"));
+    assertEquals(2, entities.getJsonObject(2).getInteger("age"));
+  }
+
+  @Test
+  @DisplayName("The eldest entities are evicted cluster-wide, whichever member added them")
+  void testEviction() throws Exception {
+    HazelcastCache one = new HazelcastCache(first, 3, 10);
+    HazelcastCache other = new HazelcastCache(second, 3, 10);
+    for (int i = 0; i < 3; i++) {
+      await(one.add(new JsonObject().put("age", i)));
+      await(other.add(new JsonObject().put("age", 10 + i)));
+    }
+
+    JsonArray entities = eventually(one, 3);
+    // Added in turns, so the three latest are 11, 2 and 12
+    assertEquals(11, entities.getJsonObject(0).getInteger("age"));
+    assertEquals(12, entities.getJsonObject(2).getInteger("age"));
+    assertEquals(entities, eventually(other, 3));
+
+    // The evicted entities are removed from the map in the background
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (first.getMap(HazelcastCache.MAP).size() > 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(3, first.getMap(HazelcastCache.MAP).size());
+  }
+
+  @Test
+  @DisplayName("Pages continue after the cursor, and the near-cache stays bounded")
+  void testPages() throws Exception {
+    HazelcastCache adder = new HazelcastCache(first, 100, 10);
+    HazelcastCache reader = new HazelcastCache(second, 100, 2);
+    for (int i = 0; i < 5; i++) {
+      await(adder.add(new JsonObject().put("age", i)));
+    }
+    eventually(reader, 5);
+
+    Page page = await(reader.retrieve(3, null));
+    assertEquals(3, page.size());
+    assertTrue(page.hasMore());
+
+    Page next = await(reader.retrieve(3, page.cursor()));
+    assertEquals(2, next.size());
+    assertEquals(4, next.entities().getJsonObject(1).getInteger("age"));
+    assertNull(next.cursor());
+    assertTrue(reader.nearCacheSize() <= 2, "Near-cache of " + reader.nearCacheSize());
+  }
+
+  @Test
+  @DisplayName("Every shard has entities of its own, so gathered pages have every entity once")
+  void testShards() throws Exception {
+    List<HazelcastCache> adders = List.of(shard(first, 0), shard(first, 1));
+    List<HazelcastCache> readers = List.of(shard(second, 0), shard(second, 1));
+    int[] routed = new int[2];
+    for (int i = 0; i < 4; i++) {
+      JsonObject entity = new JsonObject().put("name", "Name" + i).put("age", i);
+      int shard = CacheShards.shardOf(entity, 2);
+      routed[shard]++;
+      await(adders.get(shard).add(entity));
+    }
+    eventually(readers.get(0), routed[0]);
+    eventually(readers.get(1), routed[1]);
+
+    List<String> cursors = CacheShards.cursors(null, 2);
+    Page gathered =
+        CacheShards.gather(
+            List.of(
+                await(readers.get(0).retrieve(10, cursors.get(0))),
+                await(readers.get(1).retrieve(10, cursors.get(1)))),
+            cursors,
+            10);
+    assertEquals(4, gathered.size());
+  }
+
+  @Test
+  @DisplayName("Queries are answered by the cluster, in pages in insertion order")
+  void testQuery() throws Exception {
+    HazelcastCache adder = new HazelcastCache(first, 100, 10);
+    HazelcastCache reader = new HazelcastCache(second, 100, 2);
+    for (int i = 0; i < 10; i++) {
+      String gender = i % 2 == 0 ? "female" : "male";
+      await(adder.add(new JsonObject().put("gender", gender).put("age", 20 + i)));
+    }
+    eventually(reader, 10);
+
+    Query query = new Query("female", null, 22, 100);
+    Page page = await(reader.query(query, 2, null));
+    assertEquals(22, page.entities().getJsonObject(0).getInteger("age"));
+    assertEquals(24, page.entities().getJsonObject(1).getInteger("age"));
+    assertTrue(page.hasMore());
+
+    Page last = await(reader.query(query, 2, page.cursor()));
+    assertEquals(2, last.size());
+    assertEquals(28, last.entities().getJsonObject(1).getInteger("age"));
+    assertNull(last.cursor());
+  }
+
+  @Test
+  @DisplayName("The versions of all members are of the same epoch")
+  void testEpoch() throws Exception {
+    HazelcastCache one = new HazelcastCache(first, 100, 10);
+    HazelcastCache other = new HazelcastCache(second, 100, 10);
+    await(one.version());
+    await(other.version());
+
+    assertNotNull(one.epoch());
+    assertEquals(one.epoch(), other.epoch());
+  }
+
+  @Test
+  @DisplayName("The cache connects on first use from an event loop, and completes on it")
+  void testEventLoop() throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      HazelcastCache cache = new HazelcastCache(first, 100, 10);
+      Promise<Boolean> onEventLoop = Promise.promise();
+      vertx.runOnContext(
+          v ->
+              cache
+                  .add(new JsonObject().put("age", 1))
+                  .map(ignore -> Context.isOnEventLoopThread())
+                  .onComplete(onEventLoop));
+      assertTrue(await(onEventLoop.future()));
+      assertEquals(1, eventually(cache, 1).size());
+    } finally {
+      vertx.close();
+    }
+  }
+
+  @Test
+  @DisplayName("The capacities are configured")
+  void testConfigure() throws Exception {
+    HazelcastCache cache = new HazelcastCache(first, 100, 10);
+    cache.configure(new JsonObject().put(HazelcastCache.CAPACITY, 2));
+    for (int i = 0; i < 3; i++) {
+      await(cache.add(new JsonObject().put("age", i)));
+    }
+    assertEquals(2, eventually(cache, 2).size());
+    assertTrue(cache.isDistributed());
+  }
+
+  private static HazelcastCache shard(HazelcastInstance instance, int shard) {
+    HazelcastCache cache = new HazelcastCache(instance, 100, 10);
+    cache.configure(new JsonObject().put(CacheShards.SHARDS, 2).put(CacheShards.SHARD, shard));
+    return cache;
+  }
+
+  /** Retrieve until the cache has the expected number of entities */
+  private static JsonArray eventually(HazelcastCache cache, int expected) throws Exception {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    JsonArray entities = await(cache.retrieve());
+    while (entities.size() != expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      entities = await(cache.retrieve());
+    }
+    assertEquals(expected, entities.size(), entities::encode);
+    return entities;
+  }
+
+  private static <T> T await(Future<T> future) throws Exception {
+    return future.toCompletionStage().toCompletableFuture().get(TIMEOUT, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,59 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.json.JsonObject;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.*;
+
+@DisplayName("IngestQueue")
+class IngestQueueTest {
+
+  @Test
+  @DisplayName("Batches are rejected once the capacity is reached")
+  void testCapacity() {
+    IngestQueue queue = new IngestQueue(3);
+
+    assertTrue(queue.offer(batch(2)));
+    assertFalse(queue.offer(batch(2)));
+    assertTrue(queue.offer(batch(1)));
+    assertFalse(queue.offer(batch(1)));
+    assertEquals(3, queue.depth());
+  }
+
+  @Test
+  @DisplayName("A batch larger than the capacity is accepted by an empty queue")
+  void testOversizedBatch() {
+    IngestQueue queue = new IngestQueue(3);
+
+    assertTrue(queue.offer(batch(5)));
+    assertFalse(queue.offer(batch(1)));
+    assertEquals(5, queue.depth());
+  }
+
+  @Test
+  @DisplayName("Whole batches are polled in order, until the number of entities is reached")
+  void testPoll() {
+    IngestQueue queue = new IngestQueue(10);
+    IngestQueue.Batch first = batch(2);
+    IngestQueue.Batch second = batch(2);
+    IngestQueue.Batch third = batch(2);
+    queue.offer(first);
+    queue.offer(second);
+    queue.offer(third);
+
+    assertEquals(List.of(first, second), queue.poll(3));
+    assertEquals(2, queue.depth());
+    assertEquals(List.of(third), queue.poll(3));
+    assertTrue(queue.isEmpty());
+    assertEquals(0, queue.depth());
+  }
+
+  private static IngestQueue.Batch batch(int size) {
+    return new IngestQueue.Batch(
+        Collections.nCopies(size, new JsonObject().put("name", "Justin").put("age", 15)));
+  }
+}
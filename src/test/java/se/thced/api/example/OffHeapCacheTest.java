@@ -0,0 +1,115 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.*;
+
+@DisplayName("OffHeapCache")
+class OffHeapCacheTest {
+
+  @Test
+  @DisplayName("Entities are decoded as they were added, in insertion order")
+  void testRoundTrip() {
+    OffHeapCache cache = new OffHeapCache(1024, 256);
+    JsonObject entity =
+        new JsonObject().put("name", "Justin").put("age", 15).put("tags", new JsonArray().add(1));
+    cache.add(entity);
+    cache.add(new JsonObject().put("name", "second"));
+
+    JsonArray entities = cache.retrieve().result();
+    assertEquals(entity, entities.getJsonObject(0));
+    assertEquals("second", entities.getJsonObject(1).getString("name"));
+  }
+
+  @Test
+  @DisplayName("The capacity in bytes is configured, and bounds the entities as it would in code")
+  void testConfigure() {
+    OffHeapCache configured = new OffHeapCache(64 * 1024, 256);
+    configured.configure(new JsonObject().put(OffHeapCache.MAX_BYTES, 1024));
+    OffHeapCache constructed = new OffHeapCache(1024, 256);
+    for (int i = 0; i < 3_000; i++) {
+      configured.add(new JsonObject().put("age", i));
+      constructed.add(new JsonObject().put("age", i));
+    }
+
+    assertEquals(constructed.size(), configured.size());
+    assertThrows(IllegalStateException.class, () -> configured.configure(new JsonObject()));
+  }
+
+  @Test
+  @DisplayName("The eldest slab is evicted when the bytes exceed the capacity")
+  void testEviction() {
+    // Four slabs of 256 bytes, about twenty entities per slab. The index wraps around
+    OffHeapCache cache = new OffHeapCache(1024, 256);
+    for (int i = 0; i < 3_000; i++) {
+      cache.add(new JsonObject().put("age", i));
+    }
+
+    JsonArray entities = cache.retrieve().result();
+    assertEquals(cache.size(), entities.size());
+    assertTrue(entities.size() < 1024 / 12, "Too many entities: " + entities.size());
+    assertTrue(entities.size() > 256 * 3 / 16, "Too few entities: " + entities.size());
+    // The newest entities are kept, in order
+    assertEquals(2_999, entities.getJsonObject(entities.size() - 1).getInteger("age"));
+    for (int i = 1; i < entities.size(); i++) {
+      assertEquals(
+          entities.getJsonObject(i - 1).getInteger("age") + 1,
+          entities.getJsonObject(i).getInteger("age"));
+    }
+  }
+
+  @Test
+  @DisplayName("The version increases with every add, also when slabs are evicted")
+  void testVersion() {
+    OffHeapCache cache = new OffHeapCache(1024, 256);
+    long version = cache.version().result();
+    for (int i = 0; i < 100; i++) {
+      cache.add(new JsonObject().put("age", i));
+      assertEquals(++version, cache.version().result());
+    }
+  }
+
+  @Test
+  @DisplayName("Paging with a cursor visits every entity once")
+  void testPaging() {
+    OffHeapCache cache = new OffHeapCache(64 * 1024, 1024);
+    for (int i = 0; i < 25; i++) {
+      cache.add(new JsonObject().put("age", i));
+    }
+
+    Page first = cache.retrieve(10, null).result();
+    Page second = cache.retrieve(10, first.cursor()).result();
+    Page last = cache.retrieve(10, second.cursor()).result();
+
+    assertEquals(0, first.entities().getJsonObject(0).getInteger("age"));
+    assertEquals(10, second.entities().getJsonObject(0).getInteger("age"));
+    assertEquals(5, last.entities().size());
+    assertNull(last.cursor());
+  }
+
+  @Test
+  @DisplayName("An entity larger than a slab is rejected")
+  void testTooLarge() {
+    OffHeapCache cache = new OffHeapCache(1024, 16);
+    assertTrue(cache.add(new JsonObject().put("name", "longer than sixteen bytes")).failed());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  @DisplayName("The index grows beyond its initial size")
+  void testGrow() {
+    OffHeapCache cache = new OffHeapCache(1024 * 1024, 64 * 1024);
+    for (int i = 0; i < 5_000; i++) {
+      cache.add(new JsonObject().put("age", i));
+    }
+
+    JsonArray entities = cache.retrieve().result();
+    assertEquals(5_000, entities.size());
+    assertEquals(4_999, entities.getJsonObject(4_999).getInteger("age"));
+  }
+}
@@ -0,0 +1,171 @@
+package se.thced.api.example;
+
+import static io.vertx.core.Future.succeededFuture;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import se.thced.tracing.Span;
+import se.thced.tracing.Tracer;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.*;
+import java.util.List;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.*;
+
+@ExtendWith(VertxExtension.class)
+@DisplayName("PreProcessorPipeline")
+class PreProcessorPipelineTest {
+
+  private Vertx vertx;
+
+  @BeforeEach
+  void setUp(Vertx vertx) {
+    this.vertx = vertx;
+  }
+
+  @Test
+  @DisplayName("Processors are applied in order of priority, each to the output of the previous")
+  void testOrder() {
+    PreProcessorPipeline pipeline =
+        new PreProcessorPipeline(vertx, List.of(append("c", 1), append("a", -1), append("b", 0)));
+
+    assertTrue(pipeline.isSynchronous());
+    assertEquals(
+        new JsonArray().add("a").add("b").add("c"), pipeline.process(entity()).getValue("trail"));
+  }
+
+  @Test
+  @DisplayName("Asynchronous processors are composed in order with the synchronous ones")
+  void testAsynchronous() {
+    PreProcessor async =
+        new PreProcessor() {
+          @Override
+          public Future<JsonObject> apply(JsonObject entity) {
+            entity.getJsonArray("trail").add("async");
+            return succeededFuture(entity);
+          }
+        };
+    PreProcessorPipeline pipeline =
+        new PreProcessorPipeline(vertx, List.of(append("last", 1), async, append("first", -1)));
+
+    assertFalse(pipeline.isSynchronous());
+    assertThrows(IllegalStateException.class, () -> pipeline.process(entity()));
+    assertEquals(
+        new JsonArray().add("first").add("async").add("last"),
+        pipeline.apply(entity()).result().getValue("trail"));
+  }
+
+  @Test
+  @DisplayName("A failing synchronous processor fails the pipeline")
+  void testFailure() {
+    SynchronousPreProcessor failing =
+        entity -> {
+          throw new IllegalArgumentException("Failed");
+        };
+    PreProcessorPipeline pipeline =
+        new PreProcessorPipeline(vertx, List.of(append("a", 0), failing));
+
+    assertTrue(pipeline.apply(entity()).failed());
+    assertThrows(IllegalArgumentException.class, () -> pipeline.process(entity()));
+  }
+
+  @Test
+  @DisplayName("Processors run where they declare, and results are handed back on the context")
+  void testExecution(VertxTestContext testContext) {
+    PreProcessorPipeline pipeline =
+        new PreProcessorPipeline(
+            vertx,
+            List.of(
+                thread(PreProcessor.Execution.EVENT_LOOP, 0),
+                thread(PreProcessor.Execution.WORKER, 1),
+                thread(PreProcessor.Execution.EXECUTOR, 2)));
+    assertFalse(pipeline.isSynchronous());
+
+    Context context = vertx.getOrCreateContext();
+    context.runOnContext(
+        v ->
+            pipeline
+                .apply(entity())
+                .onComplete(
+                    testContext.succeeding(
+                        entity ->
+                            testContext.verify(
+                                () -> {
+                                  assertSame(context, Vertx.currentContext());
+                                  JsonArray threads = entity.getJsonArray("trail");
+                                  assertTrue(threads.getString(0).contains("eventloop"));
+                                  assertTrue(threads.getString(1).contains("worker"));
+                                  assertTrue(threads.getString(2).startsWith("dedicated"));
+                                  pipeline.close();
+                                  testContext.completeNow();
+                                }))));
+  }
+
+  @Test
+  @DisplayName("A traced entity gets a span per processor, in the trace of the parent")
+  void testTraced() {
+    PreProcessorPipeline pipeline =
+        new PreProcessorPipeline(vertx, List.of(append("a", 0), append("b", 1)));
+    Tracer tracer = new Tracer(16);
+    Span parent = tracer.trace("parent");
+
+    assertEquals(
+        new JsonArray().add("a").add("b"),
+        pipeline.apply(entity(), parent).result().getValue("trail"));
+    List<Span> spans = tracer.spans();
+    assertEquals(2, spans.size());
+    spans.forEach(span -> assertEquals(parent.traceId(), span.traceId()));
+  }
+
+  private static JsonObject entity() {
+    return new JsonObject().put("trail", new JsonArray());
+  }
+
+  private static SynchronousPreProcessor append(String value, int priority) {
+    return new SynchronousPreProcessor() {
+      @Override
+      public JsonObject process(JsonObject entity) {
+        entity.getJsonArray("trail").add(value);
+        return entity;
+      }
+
+      @Override
+      public int priority() {
+        return priority;
+      }
+    };
+  }
+
+  /** A processor that records the name of the thread it runs on */
+  private static SynchronousPreProcessor thread(PreProcessor.Execution execution, int priority) {
+    return new SynchronousPreProcessor() {
+      @Override
+      public JsonObject process(JsonObject entity) {
+        entity.getJsonArray("trail").add(Thread.currentThread().getName());
+        return entity;
+      }
+
+      @Override
+      public int priority() {
+        return priority;
+      }
+
+      @Override
+      public Execution execution() {
+        return execution;
+      }
+
+      @Override
+      public String executor() {
+        return "dedicated";
+      }
+    };
+  }
+}
@@ -0,0 +1,67 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import io.vertx.core.json.JsonObject;
+import java.util.List;
+import org.junit.jupiter.api.*;
+
+@DisplayName("SnapshotCache")
+class SnapshotCacheTest {
+
+  @Test
+  @DisplayName("The first page is encoded once, and re-encoded only after an add")
+  void testSnapshot() {
+    SnapshotCache cache = new SnapshotCache(new LargeCache());
+    cache.add(new JsonObject().put("name", "Justin").put("age", 15));
+
+    Page first = cache.retrieve(10, null).result();
+    assertSame(first, cache.retrieve(10, null).result());
+    assertSame(first.encoded(), cache.retrieve(10, null).result().encoded());
+    assertEquals(first.entities().encode(), first.encoded().toString());
+
+    cache.add(new JsonObject().put("name", "Alexa").put("age", 23));
+
+    Page second = cache.retrieve(10, null).result();
+    assertNotSame(first, second);
+    assertEquals(2, second.entities().size());
+  }
+
+  @Test
+  @DisplayName("Pages of other limits, e.g those of a stream, are neither kept nor pre-encoded")
+  void testOtherLimits() {
+    SnapshotCache cache = new SnapshotCache(new LargeCache());
+    cache.add(new JsonObject().put("name", "Justin").put("age", 15));
+
+    Page first = cache.retrieve(Cache.DEFAULT_LIMIT, null).result();
+    Page streamed = cache.retrieve(500, null).result();
+    assertNotSame(streamed, cache.retrieve(500, null).result());
+    assertSame(first, cache.retrieve(Cache.DEFAULT_LIMIT, null).result());
+  }
+
+  @Test
+  @DisplayName("The version is bumped once per add, or batch, and not by retrieves")
+  void testVersion() {
+    SnapshotCache cache = new SnapshotCache(new LargeCache());
+    long initial = cache.version().result();
+    cache.add(new JsonObject().put("name", "Justin").put("age", 15));
+    cache.retrieve(10, null);
+    assertEquals(initial + 1, cache.version().result());
+
+    cache.addAll(List.of(new JsonObject().put("name", "Alexa"), new JsonObject().put("age", 1)));
+    assertEquals(initial + 2, cache.version().result());
+  }
+
+  @Test
+  @DisplayName("A snapshot is only used for the limit it was taken with")
+  void testSnapshotLimit() {
+    SnapshotCache cache = new SnapshotCache(new LargeCache());
+    cache.add(new JsonObject().put("name", "Justin").put("age", 15));
+    cache.add(new JsonObject().put("name", "Alexa").put("age", 23));
+
+    assertEquals(2, cache.retrieve(10, null).result().size());
+    assertEquals(1, cache.retrieve(1, null).result().size());
+  }
+}
@@ -0,0 +1,136 @@
+package se.thced.api.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.*;
+
+@DisplayName("TinyLfuCache")
+class TinyLfuCacheTest {
+
+  /** The weight of an entity like {"age":10} */
+  private static final int WEIGHT = TinyLfuCache.weigh(new JsonObject().put("age", 10));
+
+  @Test
+  @DisplayName("The cache is bounded by the weight of the entities")
+  void testWeight() {
+    TinyLfuCache cache = new TinyLfuCache(10 * WEIGHT, TinyLfuCache.Admission.ALWAYS);
+    for (int i = 0; i < 100; i++) {
+      cache.add(new JsonObject().put("age", i));
+    }
+    assertEquals(10 * WEIGHT, cache.weight());
+    assertEquals(10, cache.retrieve().result().size());
+
+    JsonObject heavy = new JsonObject().put("name", "x".repeat(10 * WEIGHT));
+    assertTrue(cache.add(heavy).failed());
+  }
+
+  @Test
+  @DisplayName("Entities that are read survive a burst of entities that are not")
+  void testAdmission() {
+    TinyLfuCache cache = new TinyLfuCache(50 * WEIGHT, TinyLfuCache.Admission.TINY_LFU);
+    burstAfterReads(cache);
+
+    JsonArray entities = cache.retrieve().result();
+    assertEquals(20, count(entities, "hot"));
+    // The burst cycled through the rest of the space, and only evicted itself
+    assertEquals(30, count(entities, "age"));
+    assertEquals(499, entities.getJsonObject(entities.size() - 1).getInteger("age"));
+  }
+
+  @Test
+  @DisplayName("Entities that are only added keep replacing each other")
+  void testAddOnly() {
+    TinyLfuCache cache = new TinyLfuCache(50 * WEIGHT, TinyLfuCache.Admission.TINY_LFU);
+    IntStream.range(0, 500).forEach(i -> cache.add(new JsonObject().put("age", i)));
+
+    JsonArray entities = cache.retrieve().result();
+    assertEquals(50, entities.size());
+    // The newest entities, not the first fifty frozen in place
+    assertEquals(450, entities.getJsonObject(0).getInteger("age"));
+    assertEquals(499, entities.getJsonObject(entities.size() - 1).getInteger("age"));
+    assertEquals(0, counter(cache, "rejections"));
+  }
+
+  @Test
+  @DisplayName("Without TinyLFU admission, every entity of a burst is admitted in turn")
+  void testWithoutAdmission() {
+    TinyLfuCache cache = new TinyLfuCache(50 * WEIGHT, TinyLfuCache.Admission.ALWAYS);
+    burstAfterReads(cache);
+
+    JsonArray entities = cache.retrieve().result();
+    assertEquals(499, entities.getJsonObject(entities.size() - 1).getInteger("age"));
+    assertEquals(0, counter(cache, "rejections"));
+  }
+
+  @Test
+  @DisplayName("Entities evicted before a page reaches them are misses")
+  void testStats() {
+    TinyLfuCache cache = new TinyLfuCache(0, TinyLfuCache.Admission.TINY_LFU);
+    cache.configure(
+        new JsonObject()
+            .put(TinyLfuCache.MAX_WEIGHT, 2 * WEIGHT)
+            .put(TinyLfuCache.ADMISSION, TinyLfuCache.Admission.ALWAYS.name()));
+    for (int i = 0; i < 4; i++) {
+      cache.add(new JsonObject().put("age", 10 + i));
+    }
+
+    // Continue after key 1, where key 2 is evicted and keys 3 and 4 are left
+    Page page = cache.retrieve(10, "1").result();
+    assertEquals(2, page.size());
+    assertEquals(2, counter(cache, "hits"));
+    assertEquals(1, counter(cache, "misses"));
+    assertEquals(2, counter(cache, "evictions"));
+    assertEquals(2.0 / 3, ((Gauge<?>) cache.getMetrics().get("hit-ratio")).getValue());
+  }
+
+  @Test
+  @DisplayName("Reading all entities for bookkeeping neither counts as hits nor keeps them")
+  void testEntities() {
+    TinyLfuCache cache = new TinyLfuCache(50 * WEIGHT, TinyLfuCache.Admission.TINY_LFU);
+    IntStream.range(0, 50).forEach(i -> cache.add(new JsonObject().put("hot", i)));
+    for (int i = 0; i < 3; i++) {
+      cache.entities(Integer.MAX_VALUE, null);
+    }
+    assertEquals(0, counter(cache, "hits"));
+    assertEquals(0, counter(cache, "misses"));
+
+    // Not seen more often than the new entities, so the reads did not protect them
+    IntStream.range(0, 50).forEach(i -> cache.add(new JsonObject().put("age", i)));
+    assertEquals(0, count(cache.entities(Integer.MAX_VALUE, null).result().entities(), "hot"));
+  }
+
+  @Test
+  @DisplayName("Every read reaches the cache, and is counted")
+  void testCountsReads() {
+    TinyLfuCache cache = new TinyLfuCache(50 * WEIGHT, TinyLfuCache.Admission.TINY_LFU);
+    IntStream.range(0, 5).forEach(i -> cache.add(new JsonObject().put("age", i)));
+    for (int i = 0; i < 100; i++) {
+      cache.retrieve(10, null);
+    }
+    assertEquals(500, counter(cache, "hits"));
+    assertTrue(cache.countsReads());
+  }
+
+  /** Twenty entities read a few times, then a burst of entities that are never read */
+  private static void burstAfterReads(TinyLfuCache cache) {
+    IntStream.range(0, 20).forEach(i -> cache.add(new JsonObject().put("hot", i)));
+    for (int i = 0; i < 3; i++) {
+      cache.retrieve();
+    }
+    IntStream.range(0, 500).forEach(i -> cache.add(new JsonObject().put("age", i)));
+  }
+
+  private static long count(JsonArray entities, String field) {
+    return entities.stream().filter(entity -> ((JsonObject) entity).containsKey(field)).count();
+  }
+
+  private static long counter(TinyLfuCache cache, String name) {
+    return ((Counter) cache.getMetrics().get(name)).getCount();
+  }
+}
@@ -0,0 +1,174 @@
+package se.thced.api.handler;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import se.thced.api.TestBase;
+import se.thced.api.example.Cache;
+import se.thced.eventbus.Codecs;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.openapi.RouterBuilder;
+import io.vertx.junit5.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.*;
+
+/**
+ * Note that the router in this test has no BodyHandler, since the handler streams the body.
+ *
+ * @author thced
+ */
+@DisplayName("AddEntitiesHandler")
+class AddEntitiesHandlerTest extends TestBase {
+
+  private final AtomicInteger batches = new AtomicInteger();
+
+  /** True to have the cache fail every batch */
+  private volatile boolean failing;
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    Codecs.register(vertx.eventBus());
+    // Mock the eventbus that the handler relies on (Cache implementation).
+    vertx
+        .eventBus()
+        .<JsonArray>consumer(
+            Cache.ADD_ALL_TO_CACHE,
+            message -> {
+              if (failing) {
+                message.fail(500, "Failed to add");
+                return;
+              }
+              batches.incrementAndGet();
+              message.reply(message.body().size());
+            });
+
+    RouterBuilder.create(vertx, "schema/openapi.yaml")
+        .map(builder -> builder.getOpenAPI().getOpenAPI())
+        .map(contract -> contract.getJsonObject("components").getJsonObject("schemas"))
+        .map(schemas -> EntityValidator.compile(schemas.getJsonObject("Entity").copy()))
+        .compose(
+            validator -> {
+              Router router = Router.router(vertx);
+              router.post().handler(new AddEntitiesHandler(validator::isValid));
+              return vertx.createHttpServer().requestHandler(router).listen(PORT);
+            })
+        .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  @DisplayName("Adding newline-delimited entities should return the number added")
+  void testNdjson(VertxTestContext testContext) {
+    String body =
+        IntStream.range(0, 3)
+            .mapToObj(i -> entity(i).encode())
+            .collect(Collectors.joining("\n"));
+
+    testContext.verify(
+        () ->
+            given()
+                .contentType("application/x-ndjson")
+                .body(body.getBytes(StandardCharsets.UTF_8))
+                .when()
+                .post()
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("added", equalTo(3)));
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("Adding an array of entities should forward them in batches")
+  void testBatches(VertxTestContext testContext) {
+    int entities = AddEntitiesHandler.BATCH_SIZE * 2 + 1;
+    JsonArray body = new JsonArray();
+    IntStream.range(0, entities).forEach(i -> body.add(entity(i)));
+
+    testContext.verify(
+        () -> {
+          given()
+              .contentType("application/json")
+              .body(body.encode())
+              .when()
+              .post()
+              .then()
+              .assertThat()
+              .statusCode(200)
+              .body("added", equalTo(entities));
+          assertEquals(3, batches.get());
+        });
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("Adding something that is not an entity should return 400 Bad Request")
+  void testInvalidEntity(VertxTestContext testContext) {
+    testContext.verify(
+        () ->
+            given()
+                .contentType("application/x-ndjson")
+                .body((entity(0).encode() + "\n{\"name\": 1}").getBytes(StandardCharsets.UTF_8))
+                .when()
+                .post()
+                .then()
+                .assertThat()
+                .statusCode(400));
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("Adding entities in nested arrays should return 400 Bad Request")
+  void testNestedArrays(VertxTestContext testContext) {
+    JsonArray nested = new JsonArray().add(new JsonArray().add(entity(0)));
+    for (String body : new String[] {nested.encode(), "[]\n" + entity(0).encode()}) {
+      testContext.verify(
+          () ->
+              given()
+                  .contentType("application/json")
+                  .body(body)
+                  .when()
+                  .post()
+                  .then()
+                  .assertThat()
+                  .statusCode(400));
+    }
+    assertEquals(0, batches.get());
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("A failure to add a batch should fail the request, not leave it hanging")
+  void testFailedBatch(VertxTestContext testContext) {
+    failing = true;
+    JsonArray body = new JsonArray();
+    IntStream.range(0, AddEntitiesHandler.BATCH_SIZE * 3).forEach(i -> body.add(entity(i)));
+
+    testContext.verify(
+        () ->
+            given()
+                .contentType("application/json")
+                .body(body.encode())
+                .when()
+                .post()
+                .then()
+                .assertThat()
+                .statusCode(500));
+
+    testContext.completeNow();
+  }
+
+  private static JsonObject entity(int i) {
+    return new JsonObject().put("name", "Name" + i).put("age", i);
+  }
+}
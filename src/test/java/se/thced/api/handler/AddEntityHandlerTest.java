@@ -4,6 +4,7 @@ import static io.restassured.RestAssured.given;
 
 import se.thced.api.TestBase;
 import se.thced.api.example.Cache;
+import se.thced.eventbus.Codecs;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
@@ -21,6 +22,7 @@ class AddEntityHandlerTest extends TestBase {
 
   @BeforeEach
   void setUp(Vertx vertx, VertxTestContext testContext) {
+    Codecs.register(vertx.eventBus());
     Router router = router(vertx);
     router.post().handler(new AddEntityHandler());
 
@@ -49,4 +51,24 @@ class AddEntityHandlerTest extends TestBase {
 
     testContext.completeNow();
   }
+
+  @Test
+  @DisplayName("Adding entity to a full cache should return 503 with Retry-After")
+  void testOverloaded(Vertx vertx, VertxTestContext testContext) {
+    // Mock the eventbus that the handler relies on (Cache implementation), with a full queue
+    vertx.eventBus().consumer(Cache.ADD_TO_CACHE, message -> message.fail(503, "Full"));
+
+    testContext.verify(
+        () ->
+            given()
+                .body(new JsonObject().put("name", "MyName").put("age", 38))
+                .when()
+                .post()
+                .then()
+                .assertThat()
+                .statusCode(503)
+                .header("Retry-After", AbstractHandler.RETRY_AFTER_SECONDS));
+
+    testContext.completeNow();
+  }
 }
@@ -0,0 +1,91 @@
+package se.thced.api.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import se.thced.api.TestBase;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.ext.web.Router;
+import io.vertx.junit5.*;
+import org.junit.jupiter.api.*;
+
+@DisplayName("CompressionThresholdHandler")
+class CompressionThresholdHandlerTest extends TestBase {
+
+  private static final int THRESHOLD = 100;
+
+  private HttpClient client;
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    // A client that does not decompress, to see the encoding on the wire
+    client = vertx.createHttpClient();
+
+    Router router = router(vertx);
+    router.route().handler(CompressionThresholdHandler.create(THRESHOLD));
+    router.get("/small").handler(ctx -> ctx.end("x".repeat(THRESHOLD - 1)));
+    router.get("/large").handler(ctx -> ctx.end("x".repeat(THRESHOLD)));
+    router
+        .get("/chunked")
+        .handler(
+            ctx -> {
+              ctx.response().setChunked(true).write("x");
+              ctx.response().end();
+            });
+
+    vertx
+        .createHttpServer(new HttpServerOptions().setCompressionSupported(true))
+        .requestHandler(router)
+        .listen(PORT)
+        .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  @DisplayName("Responses smaller than the threshold are not compressed")
+  void testSmall(VertxTestContext testContext) {
+    get("/small")
+        .onComplete(
+            testContext.succeeding(
+                response ->
+                    testContext.verify(
+                        () -> {
+                          assertEquals(
+                              HttpHeaders.IDENTITY.toString(),
+                              response.getHeader(HttpHeaders.CONTENT_ENCODING));
+                          assertEquals(
+                              String.valueOf(THRESHOLD - 1),
+                              response.getHeader(HttpHeaders.CONTENT_LENGTH));
+                          testContext.completeNow();
+                        })));
+  }
+
+  @Test
+  @DisplayName("Responses at the threshold, or chunked, are compressed")
+  void testLarge(VertxTestContext testContext) {
+    Checkpoint checkpoint = testContext.checkpoint(2);
+    for (String path : new String[] {"/large", "/chunked"}) {
+      get(path)
+          .onComplete(
+              testContext.succeeding(
+                  response ->
+                      testContext.verify(
+                          () -> {
+                            assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+                            checkpoint.flag();
+                          })));
+    }
+  }
+
+  private Future<HttpClientResponse> get(String path) {
+    return client
+        .request(HttpMethod.GET, PORT, "localhost", path)
+        .compose(
+            request -> request.putHeader(HttpHeaders.ACCEPT_ENCODING, "gzip").send())
+        .compose(response -> response.body().map(response));
+  }
+}
@@ -0,0 +1,127 @@
+package se.thced.api.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import se.thced.api.ApiRouter;
+import se.thced.api.TestBase;
+import se.thced.api.example.Cache;
+import se.thced.eventbus.Codecs;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+
+/**
+ * Compares the fast path with the generic validation of the OpenAPI contract, by the responses of
+ * both routers to the same requests, and the entities that reach the cache.
+ *
+ * @author thced
+ */
+@DisplayName("EntityValidationHandler")
+class EntityValidationHandlerTest extends TestBase {
+
+  private static final String JSON = "application/json";
+
+  /** Pairs of content type, or null for none, and body */
+  private static final String[][] REQUESTS = {
+    {JSON, "{\"name\":\"a\",\"age\":1}"},
+    {JSON, "{\"name\":\"a\",\"gender\":\"male\",\"age\":10000000000}"},
+    {JSON + "; charset=utf-8", "{\"age\":1,\"name\":\"a\"}"},
+    {"application/vnd.entity+json", "{\"name\":\"a\",\"age\":1}"},
+    {JSON, "{\"name\":\"a\",\"age\":1,\"other\":[1,1.5,{\"x\":null}], /* comment */ \"y\":true}"},
+    {JSON, "{\"name\":\"a\",\"age\":\"1\",\"age\":2}"},
+    {JSON, "{\"name\":\"a\",\"age\":1,\"age\":\"1\"}"},
+    {JSON, "{\"name\":\"a\"}"},
+    {JSON, "{\"age\":1}"},
+    {JSON, "{\"name\":null,\"age\":1}"},
+    {JSON, "{\"name\":\"a\",\"age\":1,\"gender\":null}"},
+    {JSON, "{\"name\":\"a\",\"age\":1,\"gender\":1}"},
+    {JSON, "{\"name\":1,\"age\":1}"},
+    {JSON, "{\"name\":\"a\",\"age\":1.0}"},
+    {JSON, "{\"name\":\"a\",\"age\":1e2}"},
+    {JSON, "{\"name\":\"a\",\"age\":99999999999999999999}"},
+    {JSON, "{\"name\":\"a\",\"age\":1} {}"},
+    {JSON, "{\"name\":\"a\",\"age\":1,"},
+    {JSON, "[{\"name\":\"a\",\"age\":1}]"},
+    {JSON, "null"},
+    {JSON, ""},
+    {"text/plain", "{\"name\":\"a\",\"age\":1}"},
+    {null, "{\"name\":\"a\",\"age\":\"not validated, without content type\"}"}
+  };
+
+  /** The entities that reached the cache, as maps, to tell an integer from a long of a value */
+  private final List<Map<String, Object>> added = new CopyOnWriteArrayList<>();
+
+  private HttpClient client;
+
+  @BeforeEach
+  void setUp(Vertx vertx) {
+    Codecs.register(vertx.eventBus());
+    vertx
+        .eventBus()
+        .<JsonObject>consumer(
+            Cache.ADD_TO_CACHE,
+            message -> {
+              added.add(message.body().getMap());
+              message.reply("OK");
+            });
+    client = vertx.createHttpClient();
+  }
+
+  @Test
+  @DisplayName("The fast path responds, and adds, exactly as the generic validation")
+  void testSameAsGeneric(Vertx vertx) throws Exception {
+    int generic = listen(vertx, false);
+    int fast = listen(vertx, true);
+
+    for (String[] request : REQUESTS) {
+      String description = request[0] + " " + request[1];
+      int expected = post(generic, request);
+      List<Map<String, Object>> expectedAdded = new ArrayList<>(added);
+      added.clear();
+
+      assertEquals(expected, post(fast, request), description);
+      assertEquals(expectedAdded, added, description);
+      added.clear();
+    }
+  }
+
+  private int listen(Vertx vertx, boolean fastValidation) throws Exception {
+    JsonObject config =
+        new JsonObject().put(EntityValidationHandler.FAST_VALIDATION, fastValidation);
+    return await(
+        ApiRouter.router(vertx, config)
+            .compose(router -> vertx.createHttpServer().requestHandler(router).listen(0))
+            .map(HttpServer::actualPort));
+  }
+
+  /** @return The status of the response, once the request is handled */
+  private int post(int port, String[] request) throws Exception {
+    return await(
+        client
+            .request(HttpMethod.POST, port, "localhost", "/api")
+            .compose(
+                req -> {
+                  if (request[0] != null) {
+                    req.putHeader(HttpHeaders.CONTENT_TYPE, request[0]);
+                  }
+                  return req.send(Buffer.buffer(request[1]));
+                })
+            .compose(response -> response.body().map(body -> response.statusCode())));
+  }
+
+  private static <T> T await(Future<T> future) throws Exception {
+    return future.toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+}
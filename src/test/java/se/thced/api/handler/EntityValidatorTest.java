@@ -0,0 +1,97 @@
+package se.thced.api.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.*;
+
+@DisplayName("EntityValidator")
+class EntityValidatorTest {
+
+  private static final JsonObject SCHEMA =
+      new JsonObject()
+          .put("type", "object")
+          .put("description", "An entity")
+          .put("required", new JsonArray().add("name").add("age"))
+          .put(
+              "properties",
+              new JsonObject()
+                  .put("name", new JsonObject().put("type", "string"))
+                  .put("gender", new JsonObject().put("type", "string"))
+                  .put("age", new JsonObject().put("type", "integer")));
+
+  private final EntityValidator validator = EntityValidator.compile(SCHEMA);
+
+  @Test
+  @DisplayName("A valid entity is produced as Vert.x would parse it")
+  void testValid() {
+    String json = "{\"name\":\"a\",\"age\":10000000000,\"other\":[1.5,{\"x\":null}]}";
+    JsonObject entity = validator.validate(Buffer.buffer(json));
+    assertEquals(new JsonObject(json).getMap(), entity.getMap());
+    assertEquals(Long.class, entity.getValue("age").getClass());
+  }
+
+  @Test
+  @DisplayName("Invalid entities, or JSON, are rejected")
+  void testInvalid() {
+    for (String json :
+        new String[] {
+          "",
+          "[]",
+          "null",
+          "{\"name\":\"a\"}",
+          "{\"name\":\"a\",\"age\":1.0}",
+          "{\"name\":\"a\",\"age\":99999999999999999999}",
+          "{\"name\":\"a\",\"age\":1,\"gender\":null}",
+          "{\"name\":\"a\",\"age\":1,\"age\":\"1\"}",
+          "{\"name\":\"a\",\"age\":1} {}",
+          "{\"name\":\"a\",\"age\":1,"
+        }) {
+      assertThrows(
+          IllegalArgumentException.class, () -> validator.validate(Buffer.buffer(json)), json);
+    }
+  }
+
+  @Test
+  @DisplayName("The last of duplicate properties decides")
+  void testDuplicates() {
+    String json = "{\"name\":\"a\",\"age\":\"1\",\"age\":2}";
+    assertEquals(2, validator.validate(Buffer.buffer(json)).getValue("age"));
+  }
+
+  @Test
+  @DisplayName("Entities that are already parsed are validated by the same rules")
+  void testParsed() {
+    assertTrue(validator.isValid(new JsonObject("{\"name\":\"a\",\"age\":10000000000}")));
+    for (String json :
+        new String[] {
+          "{\"name\":\"a\"}",
+          "{\"name\":\"a\",\"age\":1.0}",
+          "{\"name\":\"a\",\"age\":99999999999999999999}",
+          "{\"name\":\"a\",\"age\":1,\"gender\":null}"
+        }) {
+      assertFalse(validator.isValid(new JsonObject(json)), json);
+    }
+  }
+
+  @Test
+  @DisplayName("Schemas with keywords that are not supported fail to compile")
+  void testUnsupported() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> EntityValidator.compile(SCHEMA.copy().put("additionalProperties", false)));
+    JsonObject minimum = new JsonObject().put("type", "integer").put("minimum", 0);
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            EntityValidator.compile(
+                SCHEMA.copy().put("properties", new JsonObject().put("age", minimum))));
+    // Annotations and extensions do not take part in the validation
+    EntityValidator.compile(SCHEMA.copy().put("x-$id", "#/components/schemas/Entity"));
+  }
+}
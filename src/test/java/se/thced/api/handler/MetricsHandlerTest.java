@@ -0,0 +1,55 @@
+package se.thced.api.handler;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+
+import se.thced.OperationTimers;
+import se.thced.api.TestBase;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.Router;
+import io.vertx.junit5.*;
+import org.junit.jupiter.api.*;
+
+@DisplayName("MetricsHandler")
+class MetricsHandlerTest extends TestBase {
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    OperationTimers timers = new OperationTimers();
+    Router router = router(vertx);
+    router.route().handler(OperationMetricsHandler.create(timers));
+    router.get("/api").setName("return.entities").handler(ctx -> ctx.end("[]"));
+    router.get("/metrics").handler(MetricsHandler.create(vertx, timers));
+
+    vertx
+        .createHttpServer()
+        .requestHandler(router)
+        .listen(PORT)
+        .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  @DisplayName("Operations are timed, and exposed in Prometheus text format")
+  void testMetrics(VertxTestContext testContext) {
+    testContext.verify(
+        () -> {
+          given().when().get("/api").then().assertThat().statusCode(200);
+
+          given()
+              .when()
+              .get("/metrics")
+              .then()
+              .assertThat()
+              .statusCode(200)
+              .contentType(startsWith("text/plain"))
+              .body(containsString("# TYPE api_operation_duration_seconds summary"))
+              .body(
+                  containsString(
+                      "api_operation_duration_seconds_count"
+                          + "{operation=\"return.entities\",status=\"2xx\"} 1.0"));
+        });
+
+    testContext.completeNow();
+  }
+}
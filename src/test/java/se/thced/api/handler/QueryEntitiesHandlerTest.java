@@ -0,0 +1,86 @@
+package se.thced.api.handler;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.is;
+
+import se.thced.api.TestBase;
+import se.thced.api.example.Cache;
+import se.thced.api.example.Page;
+import se.thced.api.example.Query;
+import se.thced.eventbus.Codecs;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.*;
+import org.junit.jupiter.api.*;
+
+@DisplayName("QueryEntitiesHandler")
+class QueryEntitiesHandlerTest extends TestBase {
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    Codecs.register(vertx.eventBus());
+    Router router = router(vertx);
+
+    router.get().handler(new QueryEntitiesHandler());
+
+    vertx
+        .createHttpServer()
+        .requestHandler(router)
+        .listen(PORT)
+        .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  @Timeout(5000)
+  @DisplayName("Should pass on the query, and return the matching entities")
+  void testQuery(Vertx vertx, VertxTestContext testContext) {
+    // Mock the eventbus that the handler relies on (Cache implementation).
+    vertx
+        .eventBus()
+        .<JsonObject>consumer(
+            Cache.QUERY_CACHE,
+            message -> {
+              if (!new Query("female", null, 20, null).equals(new Query(message.body()))) {
+                message.fail(400, "Unexpected query: " + message.body());
+                return;
+              }
+              message.reply(
+                  new Page(
+                      new JsonArray().add(new JsonObject().put("name", "Alexa").put("age", 23)),
+                      new long[] {7},
+                      "7"));
+            });
+
+    testContext.verify(
+        () ->
+            given()
+                .queryParam("gender", "female")
+                .queryParam("minAge", 20)
+                .when()
+                .get()
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .header("Next-Cursor", "7")
+                .body("[0].name", is("Alexa")));
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @Timeout(5000)
+  @DisplayName("Should return '501 Not Implemented' when the cache has no indexes")
+  void testNotImplemented(Vertx vertx, VertxTestContext testContext) {
+    vertx
+        .eventBus()
+        .consumer(Cache.QUERY_CACHE, message -> message.fail(501, "No indexes"));
+
+    testContext.verify(
+        () -> given().queryParam("gender", "male").when().get().then().statusCode(501));
+
+    testContext.completeNow();
+  }
+}
@@ -2,28 +2,43 @@ package se.thced.api.handler;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
 
 import se.thced.api.TestBase;
 import se.thced.api.example.Cache;
+import se.thced.api.example.Page;
+import se.thced.eventbus.Codecs;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.junit5.Timeout;
 import io.vertx.junit5.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.jupiter.api.*;
 
 @DisplayName("ReturnEntitiesHandler")
 class ReturnEntitiesHandlerTest extends TestBase {
 
+  private static final int SOCKET_BUFFER = 64 * 1024;
+
   @BeforeEach
   void setUp(Vertx vertx, VertxTestContext testContext) {
+    Codecs.register(vertx.eventBus());
     Router router = router(vertx);
 
     router.get().handler(new ReturnEntitiesHandler());
 
+    // Small socket buffers, so that what a slow client leaves unread stays within a few pages
     vertx
-        .createHttpServer()
+        .createHttpServer(new HttpServerOptions().setSendBufferSize(SOCKET_BUFFER))
         .requestHandler(router)
         .listen(PORT)
         .onComplete(testContext.succeedingThenComplete());
@@ -40,9 +55,12 @@ class ReturnEntitiesHandlerTest extends TestBase {
             Cache.RETRIEVE_FROM_CACHE,
             message ->
                 message.reply(
-                    new JsonArray()
-                        .add(new JsonObject().put("name", "Justin").put("age", 15))
-                        .add(new JsonObject().put("name", "Alexa").put("age", 23))));
+                    new Page(
+                            new JsonArray()
+                                .add(new JsonObject().put("name", "Justin").put("age", 15))
+                                .add(new JsonObject().put("name", "Alexa").put("age", 23)),
+                            new long[] {1, 2},
+                            null)));
 
     testContext.verify(
         () ->
@@ -60,4 +78,278 @@ class ReturnEntitiesHandlerTest extends TestBase {
 
     testContext.completeNow();
   }
+
+  @Test
+  @Timeout(5000)
+  @DisplayName("Should answer '304' to an unchanged page, without retrieving it")
+  void testConditional(Vertx vertx, VertxTestContext testContext) {
+    // Mock the eventbus that the handler relies on (Cache implementation), and count retrievals
+    AtomicLong version = new AtomicLong(7);
+    AtomicInteger retrieved = new AtomicInteger();
+    vertx
+        .eventBus()
+        .consumer(Cache.VERSION_OF_CACHE, message -> message.reply(version.get()));
+    vertx
+        .eventBus()
+        .consumer(
+            Cache.RETRIEVE_FROM_CACHE,
+            message -> {
+              retrieved.incrementAndGet();
+              message.reply(
+                  new Page(
+                      new JsonArray().add(new JsonObject().put("name", "Alexa").put("age", 23)),
+                      new long[] {1},
+                      null));
+            });
+
+    testContext.verify(
+        () -> {
+          String etag =
+              given().when().get().then().assertThat().statusCode(200).extract().header("ETag");
+          assertThat(etag.startsWith("\""), is(true));
+
+          given()
+              .header("If-None-Match", etag)
+              .when()
+              .get()
+              .then()
+              .assertThat()
+              .statusCode(304)
+              .and()
+              .header("ETag", is(etag));
+          // Another limit is another page
+          given()
+              .headers("If-None-Match", etag, "Limit-Entities", 1)
+              .when()
+              .get()
+              .then()
+              .assertThat()
+              .statusCode(200);
+          assertThat(retrieved.get(), is(2));
+
+          version.incrementAndGet();
+          String changed =
+              given()
+                  .header("If-None-Match", "W/" + etag)
+                  .when()
+                  .get()
+                  .then()
+                  .assertThat()
+                  .statusCode(200)
+                  .extract()
+                  .header("ETag");
+          assertThat(changed.equals(etag), is(false));
+          assertThat(retrieved.get(), is(3));
+        });
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @Timeout(5000)
+  @DisplayName("Should pass on limit and cursor, and return the cursor to the next page")
+  void testPagination(Vertx vertx, VertxTestContext testContext) {
+    // Mock the eventbus that the handler relies on (Cache implementation).
+    vertx
+        .eventBus()
+        .consumer(
+            Cache.RETRIEVE_FROM_CACHE,
+            message -> {
+              testContext.verify(
+                  () -> {
+                    assertThat(message.headers().get(Cache.LIMIT), is("1"));
+                    assertThat(message.headers().get(Cache.CURSOR), is("4"));
+                  });
+              message.reply(
+                  new Page(
+                          new JsonArray().add(new JsonObject().put("name", "Alexa").put("age", 23)),
+                          new long[] {5},
+                          "5"));
+            });
+
+    testContext.verify(
+        () ->
+            given()
+                .headers("Accept", "application/json", "Limit-Entities", 1)
+                .queryParam("cursor", "4")
+                .when()
+                .get()
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .and()
+                .header("Next-Cursor", is("5"))
+                .and()
+                .body("size()", is(1)));
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @Timeout(5000)
+  @DisplayName("Should tag pages by the epoch of the caches, when they have one")
+  void testEpoch(Vertx vertx, VertxTestContext testContext) {
+    vertx
+        .eventBus()
+        .consumer(
+            Cache.VERSION_OF_CACHE,
+            message -> message.reply(7L, new DeliveryOptions().addHeader(Cache.EPOCH, "cluster")));
+    mockCache(vertx, 6);
+
+    testContext.verify(
+        () ->
+            given()
+                .when()
+                .get()
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .header("ETag", is("\"cluster-7-10\"")));
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @Timeout(5000)
+  @DisplayName("Should stream all entities as NDJSON, a page at a time")
+  void testStreamNdjson(Vertx vertx, VertxTestContext testContext) {
+    mockCache(vertx, 6);
+
+    testContext.verify(
+        () -> {
+          String body =
+              given()
+                  .headers("Accept", ReturnEntitiesHandler.NDJSON)
+                  .when()
+                  .get()
+                  .then()
+                  .assertThat()
+                  .statusCode(200)
+                  .contentType(ReturnEntitiesHandler.NDJSON)
+                  .header("Next-Cursor", nullValue())
+                  .extract()
+                  .asString();
+          String[] lines = body.split("\n");
+          assertThat(lines.length, is(6));
+          assertThat(new JsonObject(lines[5]).getInteger("age"), is(6));
+        });
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @Timeout(5000)
+  @DisplayName("Should return a page of JSON, not a stream, to a client that accepts anything")
+  void testAcceptWildcard(Vertx vertx, VertxTestContext testContext) {
+    mockCache(vertx, 6);
+
+    testContext.verify(
+        () ->
+            given()
+                .headers("Accept", "*/*")
+                .when()
+                .get()
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .contentType("application/json")
+                .header("Next-Cursor", is("2"))
+                .body("size()", is(2)));
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @Timeout(5000)
+  @DisplayName("Should stream entities as a JSON array, up to the limit")
+  void testStreamJsonArray(Vertx vertx, VertxTestContext testContext) {
+    mockCache(vertx, 6);
+
+    testContext.verify(
+        () ->
+            given()
+                .headers("Accept", "application/json", "Limit-Entities", 5)
+                .queryParam("stream", true)
+                .when()
+                .get()
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .and()
+                .body("size()", is(5))
+                .and()
+                .body("[4].age", is(5)));
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @Timeout(10000)
+  @DisplayName("Should stop retrieving pages while a slow client does not read")
+  void testBackpressure(Vertx vertx, VertxTestContext testContext) {
+    // An endless cache of large entities
+    AtomicInteger pages = new AtomicInteger();
+    String padding = "x".repeat(1024);
+    vertx
+        .eventBus()
+        .consumer(
+            Cache.RETRIEVE_FROM_CACHE,
+            message -> {
+              long cursor = Page.position(message.headers().get(Cache.CURSOR));
+              int limit = Integer.parseInt(message.headers().get(Cache.LIMIT));
+              JsonArray entities = new JsonArray();
+              long[] keys = new long[limit];
+              for (int i = 0; i < limit; i++) {
+                keys[i] = cursor + i + 1;
+                entities.add(new JsonObject().put("age", keys[i]).put("padding", padding));
+              }
+              pages.incrementAndGet();
+              message.reply(new Page(entities, keys, String.valueOf(keys[limit - 1])));
+            });
+
+    HttpClient client =
+        vertx.createHttpClient(new HttpClientOptions().setReceiveBufferSize(SOCKET_BUFFER));
+    client
+        .request(HttpMethod.GET, PORT, "localhost", "/")
+        .compose(request -> request.putHeader("Accept", ReturnEntitiesHandler.NDJSON).send())
+        .onComplete(
+            testContext.succeeding(
+                response -> {
+                  // Never read the body
+                  response.pause();
+                  vertx.setTimer(
+                      1000,
+                      id -> {
+                        int retrieved = pages.get();
+                        // A page of STREAM_PAGE_SIZE entities is far larger than the socket
+                        // buffers, so the first page fills the response. Allow one more
+                        testContext.verify(
+                            () -> assertThat("Pages retrieved", retrieved <= 2, is(true)));
+                        client.close();
+                        testContext.completeNow();
+                      });
+                }));
+  }
+
+  /** Mock a cache with entities of the ages 1 to size, that returns at most two per page */
+  private static void mockCache(Vertx vertx, int size) {
+    vertx
+        .eventBus()
+        .consumer(
+            Cache.RETRIEVE_FROM_CACHE,
+            message -> {
+              long cursor = Page.position(message.headers().get(Cache.CURSOR));
+              int limit = Integer.parseInt(message.headers().get(Cache.LIMIT));
+              assertThat(limit <= ReturnEntitiesHandler.STREAM_PAGE_SIZE, is(true));
+              int count = (int) Math.min(Math.min(2, limit), size - cursor);
+              JsonArray entities = new JsonArray();
+              long[] keys = new long[count];
+              for (int i = 0; i < count; i++) {
+                keys[i] = cursor + i + 1;
+                entities.add(new JsonObject().put("age", keys[i]));
+              }
+              long last = cursor + count;
+              message.reply(new Page(entities, keys, last < size ? String.valueOf(last) : null));
+            });
+  }
 }
@@ -0,0 +1,57 @@
+package se.thced.api.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+
+@DisplayName("TimeOrderedCorrelationIdGenerator")
+class TimeOrderedCorrelationIdGeneratorTest {
+
+  private static final int IDS = 10_000;
+
+  private final CorrelationIdGenerator generator = new TimeOrderedCorrelationIdGenerator();
+
+  @Test
+  @DisplayName("Ids are 26 characters of Crockford's base32")
+  void testFormat() {
+    String id = generator.generate();
+    assertEquals(TimeOrderedCorrelationIdGenerator.LENGTH, id.length());
+    assertTrue(id.matches("[0-9A-HJKMNP-TV-Z]+"), id);
+  }
+
+  @Test
+  @DisplayName("Ids from one thread sort in the order they were generated")
+  void testOrder() {
+    String previous = generator.generate();
+    for (int i = 0; i < IDS; i++) {
+      String id = generator.generate();
+      assertTrue(previous.compareTo(id) < 0, previous + " >= " + id);
+      previous = id;
+    }
+  }
+
+  @Test
+  @DisplayName("Ids from many threads are unique")
+  void testUnique() throws InterruptedException {
+    int threads = 4;
+    Set<String> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int t = 0; t < threads; t++) {
+      executor.execute(
+          () -> {
+            for (int i = 0; i < IDS; i++) {
+              ids.add(generator.generate());
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(threads * IDS, ids.size());
+  }
+}
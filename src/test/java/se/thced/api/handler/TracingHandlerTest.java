@@ -0,0 +1,97 @@
+package se.thced.api.handler;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import se.thced.api.TestBase;
+import se.thced.eventbus.InboundTracingHandler;
+import se.thced.eventbus.OutboundTracingHandler;
+import se.thced.tracing.Tracer;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.Router;
+import io.vertx.junit5.*;
+import org.junit.jupiter.api.*;
+
+@DisplayName("TracingHandler")
+class TracingHandlerTest extends TestBase {
+
+  private static final String ADDRESS = "test.address";
+
+  private final Tracer tracer = new Tracer(64);
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    vertx.eventBus().addInboundInterceptor(new InboundTracingHandler<>(tracer));
+    vertx.eventBus().addOutboundInterceptor(new OutboundTracingHandler<>());
+    vertx.eventBus().consumer(ADDRESS, message -> message.reply("pong"));
+
+    Router router = router(vertx);
+    router.route("/sampled/*").handler(TracingHandler.create(tracer, 1));
+    router.route("/unsampled/*").handler(TracingHandler.create(tracer, 0));
+    router
+        .get("/:sampling/op")
+        .setName("test.op")
+        .handler(
+            ctx ->
+                vertx
+                    .eventBus()
+                    .request(ADDRESS, "ping")
+                    .onSuccess(reply -> ctx.end())
+                    .onFailure(ctx::fail));
+    router.get("/debug/traces").handler(TracesHandler.create(tracer));
+
+    vertx
+        .createHttpServer()
+        .requestHandler(router)
+        .listen(PORT)
+        .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  @DisplayName("A sampled request is traced over the eventbus, and can be read back by trace id")
+  void testSampled(VertxTestContext testContext) {
+    testContext.verify(
+        () -> {
+          String traceId =
+              given()
+                  .when()
+                  .get("/sampled/op")
+                  .then()
+                  .assertThat()
+                  .statusCode(200)
+                  .header(Tracer.TRACE_ID, notNullValue())
+                  .extract()
+                  .header(Tracer.TRACE_ID);
+
+          given()
+              .queryParam(TracesHandler.TRACE, traceId)
+              .when()
+              .get("/debug/traces")
+              .then()
+              .assertThat()
+              .statusCode(200)
+              .body("name", hasItems("http test.op", "eventbus " + ADDRESS))
+              .body("tags.status", hasItems(200));
+        });
+
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("A request that is not sampled is not traced")
+  void testUnsampled(VertxTestContext testContext) {
+    testContext.verify(
+        () ->
+            given()
+                .when()
+                .get("/unsampled/op")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .header(Tracer.TRACE_ID, nullValue()));
+
+    testContext.completeNow();
+  }
+}
@@ -0,0 +1,144 @@
+package se.thced.eventbus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.junit5.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@DisplayName("EventBusInstrumentation")
+@ExtendWith(VertxExtension.class)
+class EventBusInstrumentationTest {
+
+  private static final String ADDRESS = "test.address";
+
+  private MetricRegistry registry;
+  private EventBusInstrumentation instrumentation;
+
+  @BeforeEach
+  void setUp(Vertx vertx) {
+    registry = new MetricRegistry();
+    instrumentation = EventBusInstrumentation.install(vertx, registry);
+  }
+
+  @Test
+  @DisplayName("Deliveries and replies are timed per address")
+  void testReply(Vertx vertx, VertxTestContext testContext) {
+    vertx.eventBus().consumer(ADDRESS, message -> message.reply("pong"));
+
+    vertx
+        .eventBus()
+        .request(ADDRESS, "ping")
+        .onComplete(
+            testContext.succeeding(
+                reply ->
+                    testContext.verify(
+                        () -> {
+                          assertEquals(1, timer("delivery"));
+                          assertEquals(1, timer("reply"));
+                          assertEquals(0L, inFlight());
+                          assertEquals(0, meter("failures"));
+                          testContext.completeNow();
+                        })));
+  }
+
+  @Test
+  @DisplayName("A message carries one send time, which only the sending node reads")
+  void testSent() {
+    MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+    long sent = EventBusInstrumentation.stamp(headers);
+    EventBusInstrumentation.stamp(headers);
+    assertEquals(1, headers.getAll(EventBusInstrumentation.SENT).size());
+    assertTrue(EventBusInstrumentation.sent(headers) >= sent);
+
+    headers.set(EventBusInstrumentation.SENT, "another-node/" + sent);
+    assertEquals(EventBusInstrumentation.NOT_SENT, EventBusInstrumentation.sent(headers));
+  }
+
+  @Test
+  @DisplayName("Failed replies are counted")
+  void testFailure(Vertx vertx, VertxTestContext testContext) {
+    vertx.eventBus().consumer(ADDRESS, message -> message.fail(500, "failed"));
+
+    vertx
+        .eventBus()
+        .request(ADDRESS, "ping")
+        .onComplete(
+            testContext.failing(
+                t ->
+                    testContext.verify(
+                        () -> {
+                          assertEquals(1, timer("reply"));
+                          assertEquals(1, meter("failures"));
+                          testContext.completeNow();
+                        })));
+  }
+
+  @Test
+  @DisplayName("Requests without a reply are in flight, until they are expired as timeouts")
+  void testTimeout(Vertx vertx, VertxTestContext testContext) {
+    Checkpoint received = testContext.checkpoint();
+    vertx
+        .eventBus()
+        .consumer(
+            ADDRESS,
+            message ->
+                testContext.verify(
+                    () -> {
+                      assertEquals(1L, inFlight());
+
+                      instrumentation.expire(System.nanoTime());
+                      assertEquals(1L, inFlight());
+
+                      long later = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+                      instrumentation.expire(later);
+                      assertEquals(0L, inFlight());
+                      assertEquals(1, meter("timeouts"));
+                      received.flag();
+                    }));
+
+    vertx.eventBus().request(ADDRESS, "ping", new DeliveryOptions().setSendTimeout(10_000));
+  }
+
+  @Test
+  @DisplayName("Requests are expired by their own send timeout")
+  void testSendTimeout(Vertx vertx, VertxTestContext testContext) {
+    Checkpoint received = testContext.checkpoint();
+    vertx
+        .eventBus()
+        .consumer(
+            ADDRESS,
+            message ->
+                testContext.verify(
+                    () -> {
+                      long now = System.nanoTime();
+                      instrumentation.expire(now + TimeUnit.SECONDS.toNanos(35));
+                      assertEquals(1L, inFlight());
+
+                      instrumentation.expire(now + TimeUnit.SECONDS.toNanos(62));
+                      assertEquals(0L, inFlight());
+                      assertEquals(1, meter("timeouts"));
+                      received.flag();
+                    }));
+
+    vertx.eventBus().request(ADDRESS, "ping", new DeliveryOptions().setSendTimeout(60_000));
+  }
+
+  private long timer(String name) {
+    return registry.timer("eventbus." + ADDRESS + "." + name).getCount();
+  }
+
+  private long meter(String name) {
+    return registry.meter("eventbus." + ADDRESS + "." + name).getCount();
+  }
+
+  private Object inFlight() {
+    return registry.getGauges().get("eventbus." + ADDRESS + ".in-flight").getValue();
+  }
+}
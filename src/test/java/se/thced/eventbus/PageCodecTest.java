@@ -0,0 +1,62 @@
+package se.thced.eventbus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.*;
+import se.thced.api.example.Page;
+
+@DisplayName("PageCodec")
+class PageCodecTest {
+
+  private static final int ENTITIES = 1_000;
+
+  private final Page page = page();
+
+  @Test
+  @DisplayName("A local send passes the page by reference")
+  void testTransform() {
+    assertSame(page, new PageCodec().transform(page));
+  }
+
+  @Test
+  @DisplayName("A page survives a round trip over the wire")
+  void testWire() {
+    PageCodec codec = new PageCodec();
+    Buffer buffer = Buffer.buffer().appendString("prefix");
+    codec.encodeToWire(buffer, page);
+
+    Page decoded = codec.decodeFromWire("prefix".length(), buffer);
+    assertEquals(page.entities(), decoded.entities());
+    assertEquals(page.cursor(), decoded.cursor());
+    assertEquals(page.key(ENTITIES - 1), decoded.key(ENTITIES - 1));
+  }
+
+  @Test
+  @DisplayName("An encoded page is sent over the wire without its encoding")
+  void testWireWithoutEncoding() {
+    PageCodec codec = new PageCodec();
+    Buffer plain = Buffer.buffer();
+    codec.encodeToWire(plain, page());
+
+    Buffer encoded = Buffer.buffer();
+    Page page = page();
+    page.encoded();
+    codec.encodeToWire(encoded, page);
+
+    assertEquals(plain.length(), encoded.length());
+    assertEquals(page.encoded(), codec.decodeFromWire(0, encoded).encoded());
+  }
+
+  private static Page page() {
+    JsonArray entities = new JsonArray();
+    for (int i = 0; i < ENTITIES; i++) {
+      entities.add(new JsonObject().put("name", "Name " + i).put("gender", "x").put("age", i));
+    }
+    return new Page(entities, LongStream.rangeClosed(1, ENTITIES).toArray(), "1000");
+  }
+}
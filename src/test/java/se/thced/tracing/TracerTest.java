@@ -0,0 +1,61 @@
+package se.thced.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.vertx.core.json.JsonObject;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.*;
+
+@DisplayName("Tracer")
+class TracerTest {
+
+  @Test
+  @DisplayName("Child spans are part of the trace of their parent")
+  void testChild() {
+    Tracer tracer = new Tracer(16);
+    Span root = tracer.trace("root");
+    Span child = root.child("child");
+    child.end();
+    root.end();
+
+    JsonObject json = child.toJson();
+    assertEquals(root.traceId(), json.getString("traceId"));
+    assertEquals(root.spanId(), json.getString("parentId"));
+    assertNotEquals(root.spanId(), child.spanId());
+    assertEquals(List.of(child, root), tracer.spans());
+  }
+
+  @Test
+  @DisplayName("Only the latest spans are kept")
+  void testRing() {
+    Tracer tracer = new Tracer(4);
+    for (int i = 0; i < 10; i++) {
+      tracer.trace("span " + i).end();
+    }
+
+    List<String> names =
+        tracer.spans().stream()
+            .map(span -> span.toJson().getString("name"))
+            .collect(Collectors.toList());
+    assertEquals(List.of("span 6", "span 7", "span 8", "span 9"), names);
+  }
+
+  @Test
+  @DisplayName("A span is only finished once")
+  void testEndTwice() {
+    Tracer tracer = new Tracer(4);
+    Span span = tracer.trace("span");
+    span.end();
+    span.end();
+    assertEquals(1, tracer.spans().size());
+  }
+
+  @Test
+  @DisplayName("The ring must be a power of two")
+  void testSize() {
+    assertThrows(IllegalArgumentException.class, () -> new Tracer(10));
+  }
+}